@@ -0,0 +1,38 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link ParserByteSource} that keeps the bytes it has read ahead in a {@link ByteBuffer} window.
+ * The parser uses the window to decode EBML ids and sizes directly, instead of pulling them one byte at a time.
+ */
+public interface BufferedParserByteSource extends ParserByteSource {
+    /**
+     * Get the window of bytes that can be read without blocking.
+     * The position of the window is the next byte to be read and its limit is the end of the buffered bytes.
+     * Callers should only peek into the window using absolute gets and should consume bytes using readBytes.
+     * @return The window of buffered bytes.
+     */
+    ByteBuffer peekBuffer();
+
+    /**
+     * Read up to numBytes from the window without copying them.
+     * The returned buffer shares its content with the window, so it is only valid until the window is refilled.
+     * @param numBytes The maximum number of bytes to read.
+     * @return A slice containing the bytes read or null if the end of the stream has been reached.
+     */
+    ByteBuffer readSlice(int numBytes);
+}
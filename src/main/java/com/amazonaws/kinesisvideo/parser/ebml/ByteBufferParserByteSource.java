@@ -0,0 +1,265 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * An implementation of ParserByteSource that reads the EBML stream into a reusable {@link ByteBuffer} window.
+ * The window can be a heap or a direct buffer. It is refilled from a {@link ReadableByteChannel} once all the bytes
+ * in it have been consumed. Since the window is exposed through {@link BufferedParserByteSource}, the parser can
+ * decode ids and sizes that are completely inside the window without copying them byte by byte.
+ *
+ * A source can also be created over a single ByteBuffer that already contains the complete EBML stream.
+ *
+ * available() never reads from the channel, it reports the bytes in the window plus the bytes that can be read
+ * without blocking when that is known: those available from the input stream of a source created over one, or the
+ * rest of the file of a {@link SeekableByteChannel}.
+ *
+ * Skipping and moving to a position within the window does not read anything. Moving beyond the window is only
+ * possible without reading if the channel is a {@link SeekableByteChannel}, such as a FileChannel, in which case
+ * isSeekable returns true. Otherwise moving forward beyond the window reads and discards the bytes in between, and
+ * moving back before the window is not possible.
+ */
+public class ByteBufferParserByteSource implements BufferedParserByteSource, SeekableParserByteSource {
+    private static final int DEFAULT_WINDOW_SIZE = 65536;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final ReadableByteChannel channel;
+    //The input stream the channel reads from, if the source was created over an input stream.
+    private final InputStream inputStream;
+    private final ByteBuffer window;
+    private boolean endOfChannel;
+    //Position in the source of the first byte in the window.
+    private long windowStartPosition;
+    //Position of the channel when the source was created, to convert positions in the source to channel positions.
+    private final long channelStartPosition;
+
+    public ByteBufferParserByteSource(final InputStream inputStream) {
+        this(Channels.newChannel(inputStream), inputStream, DEFAULT_WINDOW_SIZE, false);
+    }
+
+    public ByteBufferParserByteSource(final ReadableByteChannel channel, final int windowSize, final boolean direct) {
+        this(channel, null, windowSize, direct);
+    }
+
+    private ByteBufferParserByteSource(final ReadableByteChannel channel, final InputStream inputStream,
+            final int windowSize, final boolean direct) {
+        Validate.isTrue(windowSize > 0, "Window size should be positive");
+        this.channel = channel;
+        this.inputStream = inputStream;
+        this.window = direct ? ByteBuffer.allocateDirect(windowSize) : ByteBuffer.allocate(windowSize);
+        //The window is kept ready for reading, so it starts out empty.
+        this.window.flip();
+        this.endOfChannel = false;
+        this.channelStartPosition = getChannelPosition(channel);
+    }
+
+    /**
+     * Create a byte source over a buffer that contains the complete EBML stream.
+     * The bytes between the position and limit of the buffer are parsed, the buffer itself is not modified.
+     * @param data The buffer containing the EBML stream.
+     */
+    public ByteBufferParserByteSource(final ByteBuffer data) {
+        this.channel = null;
+        this.inputStream = null;
+        this.window = data.slice();
+        this.endOfChannel = true;
+        this.channelStartPosition = 0;
+    }
+
+    @Override
+    public int readByte() {
+        //A non blocking channel can read 0 bytes, only -1 is the end of the stream.
+        while (!window.hasRemaining()) {
+            if (refill() < 0) {
+                return -1;
+            }
+        }
+        return window.get() & BYTE_MASK;
+    }
+
+    @Override
+    public int available() {
+        final long numBytesInWindow = window.remaining();
+        try {
+            if (inputStream != null) {
+                return (int) Math.min(Integer.MAX_VALUE, numBytesInWindow + inputStream.available());
+            }
+            if (channel instanceof SeekableByteChannel && !endOfChannel) {
+                final SeekableByteChannel seekableChannel = (SeekableByteChannel) channel;
+                final long numBytesInChannel = Math.max(0, seekableChannel.size() - seekableChannel.position());
+                return (int) Math.min(Integer.MAX_VALUE, numBytesInWindow + numBytesInChannel);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException("Exception while getting available bytes from channel!", e);
+        }
+        return (int) numBytesInWindow;
+    }
+
+    @Override
+    public int readBytes(final ByteBuffer dest, final int numBytes) {
+        Validate.isTrue(dest.remaining() >= numBytes);
+        if (!window.hasRemaining() && refill() < 0) {
+            return -1;
+        }
+        final int numBytesRead = Math.min(numBytes, window.remaining());
+        final int limit = window.limit();
+        window.limit(window.position() + numBytesRead);
+        dest.put(window);
+        window.limit(limit);
+        return numBytesRead;
+    }
+
+    @Override
+    public boolean eof() {
+        if (!window.hasRemaining()) {
+            refill();
+        }
+        return !window.hasRemaining() && endOfChannel;
+    }
+
+    @Override
+    public ByteBuffer peekBuffer() {
+        return window;
+    }
+
+    @Override
+    public ByteBuffer readSlice(final int numBytes) {
+        if (!window.hasRemaining() && refill() < 0) {
+            return null;
+        }
+        final int numBytesRead = Math.min(numBytes, window.remaining());
+        final ByteBuffer slice = window.slice();
+        slice.limit(numBytesRead);
+        window.position(window.position() + numBytesRead);
+        return slice;
+    }
+
+    @Override
+    public long skip(final long numBytes) {
+        Validate.isTrue(numBytes >= 0, "Cannot skip a negative number of bytes %d", numBytes);
+        if (!window.hasRemaining() && endOfChannel) {
+            return numBytes == 0 ? 0 : -1;
+        }
+        final int numBytesInWindow = (int) Math.min(numBytes, window.remaining());
+        window.position(window.position() + numBytesInWindow);
+        if (numBytesInWindow == numBytes || !(channel instanceof SeekableByteChannel)) {
+            return numBytesInWindow;
+        }
+        final SeekableByteChannel seekableChannel = (SeekableByteChannel) channel;
+        try {
+            final long channelPosition = seekableChannel.position();
+            final long numBytesInChannel = Math.min(numBytes - numBytesInWindow,
+                    Math.max(0, seekableChannel.size() - channelPosition));
+            seekableChannel.position(channelPosition + numBytesInChannel);
+            emptyWindow(position() + numBytesInChannel);
+            return numBytesInWindow + numBytesInChannel;
+        } catch (final IOException e) {
+            throw new RuntimeException("Exception while skipping bytes in channel!", e);
+        }
+    }
+
+    @Override
+    public long position() {
+        return windowStartPosition + window.position();
+    }
+
+    @Override
+    public void position(final long newPosition) {
+        Validate.isTrue(newPosition >= 0, "Cannot move to negative position %d", newPosition);
+        if (newPosition >= windowStartPosition && newPosition <= windowStartPosition + window.limit()) {
+            window.position((int) (newPosition - windowStartPosition));
+            return;
+        }
+        if (!isSeekable()) {
+            moveForwardByReading(newPosition);
+            return;
+        }
+        try {
+            ((SeekableByteChannel) channel).position(channelStartPosition + newPosition);
+        } catch (final IOException e) {
+            throw new RuntimeException("Exception while moving position of channel!", e);
+        }
+        emptyWindow(newPosition);
+        endOfChannel = false;
+    }
+
+    @Override
+    public boolean isSeekable() {
+        //A source over a single buffer has the whole stream in its window.
+        return channel == null || channel instanceof SeekableByteChannel;
+    }
+
+    private void moveForwardByReading(final long newPosition) {
+        if (newPosition < windowStartPosition) {
+            throw new UnsupportedOperationException(
+                    "Cannot move back before the window of a channel that is not seekable");
+        }
+        while (windowStartPosition + window.limit() < newPosition) {
+            window.position(window.limit());
+            if (refill() < 0) {
+                throw new IllegalArgumentException("Cannot move beyond the end of the stream to " + newPosition);
+            }
+        }
+        window.position((int) (newPosition - windowStartPosition));
+    }
+
+    private void emptyWindow(final long newWindowStartPosition) {
+        window.clear();
+        window.flip();
+        windowStartPosition = newWindowStartPosition;
+    }
+
+    private static long getChannelPosition(final ReadableByteChannel channel) {
+        if (!(channel instanceof SeekableByteChannel)) {
+            return 0;
+        }
+        try {
+            return ((SeekableByteChannel) channel).position();
+        } catch (final IOException e) {
+            throw new RuntimeException("Exception while getting position of channel!", e);
+        }
+    }
+
+    /**
+     * Refill the window from the channel.
+     * @return The number of bytes read from the channel, or -1 if the channel has reached its end.
+     */
+    private int refill() {
+        if (endOfChannel) {
+            return -1;
+        }
+        try {
+            windowStartPosition += window.position();
+            window.compact();
+            final int numBytesRead = channel.read(window);
+            if (numBytesRead < 0) {
+                endOfChannel = true;
+            }
+            return numBytesRead;
+        } catch (final IOException e) {
+            throw new RuntimeException("Exception while reading bytes from channel!", e);
+        } finally {
+            window.flip();
+        }
+    }
+}
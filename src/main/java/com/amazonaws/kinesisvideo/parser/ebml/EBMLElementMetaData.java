@@ -13,25 +13,64 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.ebml;
 
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
+import org.apache.commons.lang3.Validate;
 
 
 /**
  * Class that represents the metadata of a single EBML element in an EBML stream.
  * It does not contain the actual data or content of the EBML element.
+ *
+ * An EBMLParser created with element recycling reuses the metadata objects passed to its callbacks.
+ * Such recycled metadata is only valid for the duration of the callback. Callbacks that retain the metadata
+ * (for example in the elements they return) should call retain() to get a stable copy.
  */
 @Getter
-@Builder
-@ToString
-@EqualsAndHashCode
+@ToString(exclude = "recycled")
+@EqualsAndHashCode(exclude = "recycled")
 public class EBMLElementMetaData {
-    private final EBMLTypeInfo typeInfo;
-    private final long elementNumber;
+    private EBMLTypeInfo typeInfo;
+    private long elementNumber;
+    @Getter(AccessLevel.NONE)
+    private final boolean recycled;
+
+    @Builder
+    EBMLElementMetaData(EBMLTypeInfo typeInfo, long elementNumber) {
+        this(typeInfo, elementNumber, false);
+    }
+
+    private EBMLElementMetaData(EBMLTypeInfo typeInfo, long elementNumber, boolean recycled) {
+        this.typeInfo = typeInfo;
+        this.elementNumber = elementNumber;
+        this.recycled = recycled;
+    }
+
+    static EBMLElementMetaData createRecycled() {
+        return new EBMLElementMetaData(null, -1, true);
+    }
+
+    void reset(EBMLTypeInfo typeInfoArg, long elementNumberArg) {
+        Validate.isTrue(recycled, "Only recycled metadata can be reset, element number %d", elementNumber);
+        this.typeInfo = typeInfoArg;
+        this.elementNumber = elementNumberArg;
+    }
 
     public boolean isMaster() {
         return typeInfo.getType() == EBMLTypeInfo.TYPE.MASTER;
     }
+
+    /**
+     * Get metadata that remains valid after the parser moves on to other elements.
+     * @return this if the metadata is not recycled by the parser, otherwise a copy of it.
+     */
+    public EBMLElementMetaData retain() {
+        if (!recycled) {
+            return this;
+        }
+        return new EBMLElementMetaData(typeInfo, elementNumber);
+    }
 }
@@ -0,0 +1,121 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.AbstractList;
+import java.util.NoSuchElementException;
+
+/**
+ * The path of master elements that are the ancestors of an EBML element, starting with the root.
+ * A path is a parent-linked list, so paths of sibling elements share the path of their parent
+ * and the parser only creates one path node for each master element.
+ * A path is immutable unless it was created by an EBMLParser that recycles elements.
+ * Such recycled paths are only valid for the duration of the callback they were passed to and
+ * should be retained with retain() if needed after that.
+ */
+public final class EBMLElementPath extends AbstractList<EBMLElementMetaData> {
+    private static final EBMLElementPath EMPTY = new EBMLElementPath(null, null, false);
+
+    private EBMLElementPath parent;
+    private final EBMLElementMetaData lastElement;
+    private int size;
+    private final boolean recycled;
+
+    private EBMLElementPath(EBMLElementPath parent, EBMLElementMetaData lastElement, boolean recycled) {
+        this.parent = parent;
+        this.lastElement = lastElement;
+        this.size = parent == null ? 0 : parent.size + 1;
+        this.recycled = recycled;
+    }
+
+    public static EBMLElementPath empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create a path node for a master element, that is relinked each time the recycled element is reused.
+     */
+    static EBMLElementPath createRecycled(EBMLElementMetaData elementMetaData) {
+        return new EBMLElementPath(EMPTY, elementMetaData, true);
+    }
+
+    /**
+     * Get the path of the children of an element with this path.
+     * @param elementMetaData The metadata of the element at the end of the new path.
+     * @return The new path, which shares this path as its parent.
+     */
+    public EBMLElementPath append(EBMLElementMetaData elementMetaData) {
+        Validate.notNull(elementMetaData, "Cannot append a null element to a path");
+        return new EBMLElementPath(this, elementMetaData, false);
+    }
+
+    EBMLElementPath relink(EBMLElementPath parentPath) {
+        Validate.isTrue(recycled, "Only recycled paths can be relinked, size %d", size);
+        this.parent = parentPath;
+        this.size = parentPath.size + 1;
+        return this;
+    }
+
+    /**
+     * Get the path without its last element.
+     * @return the parent path.
+     */
+    public EBMLElementPath getParent() {
+        if (size == 0) {
+            throw new NoSuchElementException("The empty path has no parent");
+        }
+        return parent;
+    }
+
+    /**
+     * Get the last element in the path, which is the parent of the element the path belongs to.
+     * @return The metadata of the last element.
+     */
+    public EBMLElementMetaData getLast() {
+        if (size == 0) {
+            throw new NoSuchElementException("The empty path has no last element");
+        }
+        return lastElement;
+    }
+
+    /**
+     * Get a path that remains valid after the parser moves on to other elements.
+     * @return this if the path is not recycled by the parser, otherwise a copy of it.
+     */
+    public EBMLElementPath retain() {
+        if (!recycled) {
+            return this;
+        }
+        return parent.retain().append(lastElement.retain());
+    }
+
+    @Override
+    public EBMLElementMetaData get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for path of size " + size);
+        }
+        EBMLElementPath path = this;
+        for (int i = size - 1; i > index; i--) {
+            path = path.parent;
+        }
+        return path.lastElement;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
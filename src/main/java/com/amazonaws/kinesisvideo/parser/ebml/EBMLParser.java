@@ -15,16 +15,17 @@ package com.amazonaws.kinesisvideo.parser.ebml;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
 
 import java.io.Closeable;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Stack;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 /**
  * This class is used to parse a stream of EBML.
@@ -41,6 +42,20 @@ import java.util.stream.Collectors;
  * Once all the data in an EBML stream has being sent to the parser, the method closeParser is called to shutdown
  * the parser.
  *
+ * Alternatively, data can be pushed into the parser as it arrives using feed. This is suitable for
+ * NIO or async clients that receive the EBML stream as a sequence of ByteBuffers on an event loop.
+ * Once all the data has been fed, endOfInput is called to shutdown the parser.
+ *
+ * A parser created with recycleElements set reuses its internal element records and the
+ * {@link EBMLElementMetaData} passed to the callbacks once an element is finished, so that parsing does not allocate
+ * per element. The metadata, element paths and id and size buffers passed to the callbacks are then only valid for
+ * the duration of the callback. Callbacks that keep the metadata or path should call
+ * {@link EBMLElementMetaData#retain()} or {@link EBMLElementPath#retain()}.
+ *
+ * Between two elements, the state of the parser can be saved as an {@link EBMLParserCheckpoint} using checkpoint.
+ * A new parser restored from the checkpoint resumes parsing from a byte source positioned at the offset of the
+ * checkpoint, such as a ranged read of a local file, without parsing the bytes before it again.
+ *
  * TODO: add implementation details.
  *
  */
@@ -51,12 +66,23 @@ public class EBMLParser {
     private static final int BYTE_MASK = 0xFF;
     //TODO: have it be an argument, either constructor or method
     private static final int DEFAULT_MAX_CONTENT_BYTES_IN_ONE_PASS = 8192;
+    private static final int INITIAL_MASTER_ELEMENT_DEPTH = 8;
 
     private final EBMLTypeInfoProvider typeInfoProvider;
-    private final Stack<EBMLParserInternalElement> masterElements;
+    //Stack of the master elements whose contents are currently being read, the top is at masterElementDepth - 1.
+    private EBMLParserInternalElement[] masterElements;
+    private int masterElementDepth;
+    //Path of the master elements on the stack, shared by the callbacks for all their children.
+    private EBMLElementPath currentPath = EBMLElementPath.empty();
     private final EBMLParserCallbacks callbacks;
     private final int maxContentBytesInOnePass;
     private final ByteBuffer skipBuffer;
+    private final boolean recycleElements;
+    //Finished element records available for reuse. It grows up to the depth of the master elements plus one.
+    private final ArrayDeque<EBMLParserInternalElement> elementPool = new ArrayDeque<>();
+    private final EBMLParserCallbacks.ElementPathSupplier pathSupplier = this::currentElementPath;
+    //The state of a parse call is reused by all the calls, since each pass over a byte source may be short.
+    private final CallState callState = new CallState();
 
     private long elementCount = 0;
     private long totalBytesRead = 0;
@@ -77,19 +103,30 @@ public class EBMLParser {
     public EBMLParser(EBMLTypeInfoProvider typeInfoProvider,
             EBMLParserCallbacks callbacks,
             int maxContentBytesInOnePass) {
+        this(typeInfoProvider, callbacks, maxContentBytesInOnePass, false);
+    }
+
+    public EBMLParser(EBMLTypeInfoProvider typeInfoProvider,
+            EBMLParserCallbacks callbacks,
+            int maxContentBytesInOnePass,
+            boolean recycleElements) {
         this.typeInfoProvider = typeInfoProvider;
         this.callbacks = callbacks;
+        this.recycleElements = recycleElements;
         this.replayIdAndSizeBuffer =
                 new ReplayIdAndSizeBuffer(EBMLUtils.EBML_ID_MAX_BYTES + EBMLUtils.EBML_SIZE_MAX_BYTES);
         createNewCurrentElementInfo();
-        this.masterElements = new Stack<>();
+        this.masterElements = new EBMLParserInternalElement[INITIAL_MASTER_ELEMENT_DEPTH];
         this.maxContentBytesInOnePass = maxContentBytesInOnePass;
-        this.skipBuffer = ByteBuffer.allocate(maxContentBytesInOnePass);
-        log.debug("Creating EBMLParser with maxContentBytesInOnePass {}", this.maxContentBytesInOnePass);
+        this.skipBuffer = ByteBuffer.allocate(Math.min(maxContentBytesInOnePass, DEFAULT_MAX_CONTENT_BYTES_IN_ONE_PASS));
+        log.debug("Creating EBMLParser with maxContentBytesInOnePass {} recycleElements {}",
+                this.maxContentBytesInOnePass,
+                this.recycleElements);
     }
 
     public void parse(ParserByteSource byteSource) {
-        try (CallState callState = new CallState(byteSource)) {
+        Validate.validState(!callState.isActive(), "The parse method cannot be called from the callbacks");
+        try (CallState callState = this.callState.start(byteSource)) {
             while (callState.shouldContinueParsing()) {
                 if (log.isDebugEnabled()) {
                     log.debug("Current element read state {}", currentElement.currentElementReadState);
@@ -110,34 +147,41 @@ public class EBMLParser {
                         //element is reached.
                         removeMasterElementsBasedOnLevel();
 
+                        if (shouldSkipCurrentElement()) {
+                            startSkippingContent();
+                            break;
+                        }
 
                         //Call onstartForElement();
-                        if (currentElement.isKnownType()) {
-                            log.debug("Invoking onStartElement for current element {}", currentElement);
-                            callbacks.onStartElement(currentElement.getMetadata(),
-                                    currentElement.getDataSize(),
-                                    replayIdAndSizeBuffer.getByteBuffer(),
-                                    this::currentElementPath);
-                        }
+                        log.debug("Invoking onStartElement for current element {}", currentElement);
+                        callbacks.onStartElement(currentElement.getMetadata(),
+                                currentElement.getDataSize(),
+                                recycleElements ?
+                                        replayIdAndSizeBuffer.getReusableByteBuffer() :
+                                        replayIdAndSizeBuffer.getByteBuffer(),
+                                pathSupplier);
 
                         startReadingContentBasedOnType();
                         break;
                     case CONTENT_READING:
                         Validate.isTrue(currentElement.isKnownType(),
-                                "We should read only from elements with known types");
+                                "We should read only from elements with known types, id %d",
+                                currentElement.getId());
                         currentElement.readContent(callState, callState, callbacks, maxContentBytesInOnePass);
                         break;
                     case CONTENT_SKIPPING:
-                        Validate.isTrue(!currentElement.isKnownType(), "We should skip data for unknown elements only");
-                        skipBuffer.rewind();
-                        currentElement.skipContent(callState, callState, skipBuffer);
+                        Validate.isTrue(!currentElement.hasCallbacks(),
+                                "We should skip data only for unknown elements or elements not read by the callbacks,"
+                                        + " id %d",
+                                currentElement.getId());
+                        currentElement.skipContent(callState);
                         break;
                     case FINISHED:
                         invokeOnEndElementCallback(currentElement);
                         //check if any master elements are done because their end offset has been reached.
                         removeMasterElementsBasedOnSizeEnd();
 
-
+                        releaseElement(currentElement);
                         createNewCurrentElementInfo();
                         break;
                     default:
@@ -153,11 +197,79 @@ public class EBMLParser {
     }
 
 
+    /**
+     * Save the state of the parser, if it is between two elements.
+     * The bytes of an element that has only been partly parsed are not part of a checkpoint, so none is available
+     * until that element is finished.
+     * @return The checkpoint, or empty if the parser is in the middle of an element or is closed.
+     */
+    public Optional<EBMLParserCheckpoint> checkpoint() {
+        if (closed || currentElement.currentElementReadState != EBMLParserInternalElement.ElementReadState.NEW
+                || currentElement.getStartingOffset() != totalBytesRead) {
+            return Optional.empty();
+        }
+        List<EBMLParserCheckpoint.MasterElement> openMasterElements = new ArrayList<>(masterElementDepth);
+        for (int i = 0; i < masterElementDepth; i++) {
+            openMasterElements.add(masterElements[i].toCheckpointMasterElement());
+        }
+        return Optional.of(new EBMLParserCheckpoint(totalBytesRead,
+                currentElement.getElementCount(),
+                openMasterElements));
+    }
+
+    /**
+     * Restore the state saved in a checkpoint into a parser that has not parsed anything yet.
+     * The byte source passed to parse, or the chunks passed to feed, must then start at the offset of the checkpoint.
+     * @param checkpoint The checkpoint.
+     */
+    public void restore(EBMLParserCheckpoint checkpoint) {
+        Validate.validState(totalBytesRead == 0 && masterElementDepth == 0 && !closed,
+                "A checkpoint can only be restored into a new parser");
+        totalBytesRead = checkpoint.getOffset();
+        for (EBMLParserCheckpoint.MasterElement masterElement : checkpoint.getOpenMasterElements()) {
+            elementCount = masterElement.getElementNumber();
+            createNewCurrentElementInfo();
+            //The start of the element is before the offset of the checkpoint.
+            currentElement.reset(masterElement.getStartingOffset(), masterElement.getElementNumber());
+            currentElement.restoreMasterElement(masterElement, typeInfoProvider);
+            pushMasterElement(currentElement);
+        }
+        elementCount = checkpoint.getNextElementNumber();
+        createNewCurrentElementInfo();
+        log.debug("Restored EBMLParser at offset {} with {} open master elements",
+                totalBytesRead,
+                masterElementDepth);
+    }
+
+    /**
+     * Push a chunk of the EBML stream into the parser.
+     * The parser consumes the bytes between the position and limit of the chunk and never reads beyond them or blocks.
+     * Partially received elements are completed by the following chunks.
+     * If the callbacks stop the parsing through continueParsing, the bytes that were not consumed are left in the chunk
+     * and should be fed again once the callbacks are ready to continue.
+     *
+     * @param chunk The chunk of the EBML stream. Its position is advanced past the bytes consumed.
+     */
+    public void feed(ByteBuffer chunk) {
+        Validate.isTrue(!closed, "Cannot feed data to a closed parser");
+        ByteBufferParserByteSource chunkSource = new ByteBufferParserByteSource(chunk);
+        int chunkSize = chunk.remaining();
+        parse(chunkSource);
+        chunk.position(chunk.position() + chunkSize - chunkSource.available());
+    }
+
+    /**
+     * Signal that all the data in the EBML stream has been fed to the parser.
+     */
+    public void endOfInput() {
+        closeParser();
+    }
+
     public void closeParser() {
         if (!closed) {
             log.debug("Closing EBMLParser");
             //close current element
-            if (currentElement != null && currentElement.isKnownType()) {
+            if (currentElement != null && currentElement.hasCallbacks()) {
                 log.debug("Closing with currentElement {} still set, invoking end element callback on it",
                         currentElement);
                 invokeOnEndElementCallback(currentElement);
@@ -165,9 +277,9 @@ public class EBMLParser {
             }
 
             log.debug("Closing with {} master elements on stack, invoking end element callback on them",
-                    masterElements.size());
-            while (!masterElements.isEmpty()) {
-                EBMLParserInternalElement top = masterElements.pop();
+                    masterElementDepth);
+            while (masterElementDepth > 0) {
+                EBMLParserInternalElement top = popMasterElement();
                 //TODO: see if we need to add a flag to indicate unclean close
                 invokeOnEndElementCallback(top);
             }
@@ -175,31 +287,47 @@ public class EBMLParser {
         closed = true;
     }
 
-    private void startReadingContentBasedOnType() {
+    private boolean shouldSkipCurrentElement() {
+        if (!currentElement.isKnownType()) {
+            return true;
+        }
+        EBMLTypeInfo typeInfo = currentElement.getTypeInfo();
+        return typeInfo.getType() != EBMLTypeInfo.TYPE.MASTER && !callbacks.shouldReadElement(typeInfo);
+    }
+
+    private void startSkippingContent() {
+        Validate.isTrue(!currentElement.isUnknownLength(), "Cannot skip element of unknown length");
+        currentElement.startSkippingContent();
         if (!currentElement.isKnownType()) {
-            Validate.isTrue(!currentElement.isUnknownLength(), "Cannot skip element of unknown length");
-            currentElement.startSkippingContent();
             log.warn("Will skip content for element number {} with unknown id {} datasize {}",
                     currentElement.getElementCount(),
                     currentElement.getId(),
                     currentElement.getDataSize());
-        } else {
-            if (currentElement.getTypeInfo().getType() == EBMLTypeInfo.TYPE.MASTER) {
-                //Mark the master element as started although it will consist of
-                //child elements. So, push it into the stack of master elements whose
-                //contents are currently being read.
-                currentElement.startReadingContent();
-                masterElements.push(currentElement);
-                createNewCurrentElementInfo();
-            } else {
-                //A non-master element should not have unknown or infinite length
-                //as that prevents the parser finding the end of the element.
-                Validate.isTrue(!currentElement.isUnknownLength(),
-                        "A non-master element should not have unknown length");
+        } else if (log.isDebugEnabled()) {
+            log.debug("Will skip content for element number {} of type {} not read by the callbacks datasize {}",
+                    currentElement.getElementCount(),
+                    currentElement.getTypeInfo().getName(),
+                    currentElement.getDataSize());
+        }
+    }
 
-                //start reading contents.
-                currentElement.startReadingContent();
-            }
+    private void startReadingContentBasedOnType() {
+        if (currentElement.getTypeInfo().getType() == EBMLTypeInfo.TYPE.MASTER) {
+            //Mark the master element as started although it will consist of
+            //child elements. So, push it into the stack of master elements whose
+            //contents are currently being read.
+            currentElement.startReadingContent();
+            pushMasterElement(currentElement);
+            createNewCurrentElementInfo();
+        } else {
+            //A non-master element should not have unknown or infinite length
+            //as that prevents the parser finding the end of the element.
+            Validate.isTrue(!currentElement.isUnknownLength(),
+                    "A non-master element should not have unknown length, id %d",
+                    currentElement.getId());
+
+            //start reading contents.
+            currentElement.startReadingContent();
         }
     }
 
@@ -208,8 +336,8 @@ public class EBMLParser {
             return;
         }
         if (!currentElement.getTypeInfo().isGlobal()) {
-            while (!masterElements.isEmpty()) {
-                EBMLParserInternalElement top = masterElements.peek();
+            while (masterElementDepth > 0) {
+                EBMLParserInternalElement top = peekMasterElement();
                 //For handling master elements with the wrong size (such as segments)
                 //We should finish master elements of known size is another element of the same or
                 //lower level is found.
@@ -217,8 +345,9 @@ public class EBMLParser {
                 Validate.isTrue(currentElement.getElementCount() != top.getElementCount());
                 if (currentElement.getTypeInfo().getLevel() <= top.getTypeInfo().getLevel()) {
                     log.debug("Removing master element {} based on level of current element {}", top, currentElement);
-                    masterElements.pop();
+                    popMasterElement();
                     invokeOnEndElementCallback(top);
+                    releaseElement(top);
                 } else {
                     break;
                 }
@@ -231,13 +360,16 @@ public class EBMLParser {
         if (!currentElement.isKnownType()) {
             return;
         }
-        while (!masterElements.isEmpty()) {
-            EBMLParserInternalElement top = masterElements.peek();
+        while (masterElementDepth > 0) {
+            EBMLParserInternalElement top = peekMasterElement();
             if (!top.isUnknownLength()) {
                 if (top.endOffSet() <= totalBytesRead) {
-                    log.debug("Removing master element {} based on size end {}", top, totalBytesRead);
-                    masterElements.pop();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Removing master element {} based on size end {}", top, totalBytesRead);
+                    }
+                    popMasterElement();
                     invokeOnEndElementCallback(top);
+                    releaseElement(top);
                 } else {
                     break;
                 }
@@ -247,34 +379,81 @@ public class EBMLParser {
         }
     }
 
-    private List<EBMLElementMetaData> currentElementPath() {
-        return masterElements.stream().map(EBMLParserInternalElement::getMetadata).collect(Collectors.toList());
+    private EBMLElementPath currentElementPath() {
+        return currentPath;
+    }
+
+    private void pushMasterElement(EBMLParserInternalElement masterElement) {
+        if (masterElementDepth == masterElements.length) {
+            masterElements = Arrays.copyOf(masterElements, masterElements.length * 2);
+        }
+        masterElements[masterElementDepth++] = masterElement;
+        if (recycleElements) {
+            currentPath = masterElement.getRecycledPathNode().relink(currentPath);
+        } else {
+            currentPath = currentPath.append(masterElement.getMetadata());
+        }
+    }
+
+    private EBMLParserInternalElement peekMasterElement() {
+        return masterElements[masterElementDepth - 1];
+    }
+
+    private EBMLParserInternalElement popMasterElement() {
+        EBMLParserInternalElement top = masterElements[--masterElementDepth];
+        masterElements[masterElementDepth] = null;
+        currentPath = currentPath.getParent();
+        return top;
     }
 
     private void invokeOnEndElementCallback(EBMLParserInternalElement finishedElement) {
-        if (finishedElement.isKnownType()) {
+        if (finishedElement.hasCallbacks()) {
             log.debug("Invoking onStartElement for current element {}", finishedElement);
-            callbacks.onEndElement(finishedElement.getMetadata(), this::currentElementPath);
+            callbacks.onEndElement(finishedElement.getMetadata(), pathSupplier);
         }
     }
 
 
+    private void releaseElement(EBMLParserInternalElement finishedElement) {
+        if (recycleElements) {
+            elementPool.push(finishedElement);
+        }
+    }
+
     private void createNewCurrentElementInfo() {
-        currentElement = new EBMLParserInternalElement(totalBytesRead, elementCount);
+        if (!recycleElements) {
+            currentElement = new EBMLParserInternalElement(totalBytesRead, elementCount);
+        } else if (elementPool.isEmpty()) {
+            currentElement = new EBMLParserInternalElement(totalBytesRead, elementCount, true);
+        } else {
+            currentElement = elementPool.pop();
+            currentElement.reset(totalBytesRead, elementCount);
+        }
         elementCount++;
         replayIdAndSizeBuffer.init(totalBytesRead);
     }
 
     /**
      * This internal class maintains state for each parse call.
+     * A single instance is started at the beginning of each call and closed at the end of it.
      */
-    @RequiredArgsConstructor
     private class CallState implements Closeable, TrackingReplayableIdAndSizeByteSource, ParserBulkByteSource {
-        private boolean parseMore = true;
-        private final ParserByteSource byteSource;
+        private boolean parseMore;
+        private ParserByteSource byteSource;
         @Setter
         private long readOffsetForReplayBuffer;
 
+        CallState start(ParserByteSource byteSource) {
+            this.parseMore = true;
+            this.byteSource = byteSource;
+            this.readOffsetForReplayBuffer = 0;
+            return this;
+        }
+
+        boolean isActive() {
+            return byteSource != null;
+        }
+
         @Override
         public long getTotalBytesRead() {
             return totalBytesRead;
@@ -282,6 +461,7 @@ public class EBMLParser {
 
         @Override
         public void close() {
+            byteSource = null;
         }
 
         boolean shouldContinueParsing() {
@@ -321,6 +501,72 @@ public class EBMLParser {
             }
         }
 
+        @Override
+        public long skipBytes(long numBytes) {
+            //Stop this pass instead of waiting for bytes the byte source does not have yet.
+            int availableBytes = availableForContent();
+            if (availableBytes == 0) {
+                return 0;
+            }
+            long skippedBytes;
+            if (byteSource instanceof SeekableParserByteSource
+                    && ((SeekableParserByteSource) byteSource).isSeekable()) {
+                //Jump over all the bytes, even those beyond the bytes currently available.
+                skippedBytes = ((SeekableParserByteSource) byteSource).skip(numBytes);
+            } else if (byteSource instanceof BufferedParserByteSource) {
+                //Skip the bytes in the window without copying them.
+                ByteBuffer skippedSlice = ((BufferedParserByteSource) byteSource)
+                        .readSlice((int) Math.min(numBytes, availableBytes));
+                skippedBytes = skippedSlice == null ? -1 : skippedSlice.remaining();
+            } else {
+                skipBuffer.clear();
+                skippedBytes = byteSource.readBytes(skipBuffer,
+                        (int) Math.min(Math.min(numBytes, availableBytes), skipBuffer.capacity()));
+            }
+            if (skippedBytes == -1) {
+                markAsEndofStream();
+                return skippedBytes;
+            }
+            Validate.isTrue(skippedBytes >= 0);
+            totalBytesRead += skippedBytes;
+            return skippedBytes;
+        }
+
+        @Override
+        public ByteBuffer readResidentBytes(int numBytes) {
+            if (!(byteSource instanceof BufferedParserByteSource)) {
+                return null;
+            }
+            BufferedParserByteSource bufferedByteSource = (BufferedParserByteSource) byteSource;
+            if (bufferedByteSource.peekBuffer().remaining() < numBytes) {
+                return null;
+            }
+            ByteBuffer slice = bufferedByteSource.readSlice(numBytes);
+            Validate.isTrue(slice.remaining() == numBytes, "Could not read %d bytes from the window", numBytes);
+            totalBytesRead += numBytes;
+            return slice.isReadOnly() ? slice : slice.asReadOnlyBuffer();
+        }
+
+        @Override
+        public ByteBuffer peekWindow() {
+            if (!parseMore || !(byteSource instanceof BufferedParserByteSource)) {
+                return null;
+            }
+            if (replayIdAndSizeBuffer.availableAfter(readOffsetForReplayBuffer) > 0) {
+                //Part of the id or size has already been read into the replay buffer in an earlier pass.
+                return null;
+            }
+            return ((BufferedParserByteSource) byteSource).peekBuffer();
+        }
+
+        @Override
+        public void consumeFromWindow(int len) {
+            int readBytes = replayIdAndSizeBuffer.addBytes(byteSource, len);
+            Validate.isTrue(readBytes == len, "Could not consume %d bytes from the byte source window", len);
+            totalBytesRead += len;
+            readOffsetForReplayBuffer += len;
+        }
+
         private int readFromByteSourceIntoReplayBuffer() {
             int result = byteSource.readByte();
             if (result == -1) {
@@ -33,9 +33,37 @@ public interface EBMLParserCallbacks {
         return true;
     }
 
+    /**
+     * Checked before the start of each non-master element to find out if the callbacks need the element.
+     * The content of elements that are not needed is skipped by the parser, without invoking any callbacks for them.
+     * @param typeInfo The type information of the element.
+     * @return true if the callbacks should be invoked for the element.
+     */
+    default boolean shouldReadElement(EBMLTypeInfo typeInfo) {
+        return true;
+    }
+
     @FunctionalInterface
     interface ElementPathSupplier {
+        /**
+         * Get the master elements that are the ancestors of the current element.
+         * The EBMLParser returns an {@link EBMLElementPath} that is shared and cheap to get,
+         * it is not copied for each call.
+         * @return The path of the current element.
+         */
         List<EBMLElementMetaData> getAncestors();
+
+        /**
+         * Get the ancestors of the current element in a form that remains valid after the callback returns.
+         * @return The retained path if the ancestors are an {@link EBMLElementPath}, otherwise the ancestors.
+         */
+        default List<EBMLElementMetaData> retainAncestors() {
+            List<EBMLElementMetaData> ancestors = getAncestors();
+            if (ancestors instanceof EBMLElementPath) {
+                return ((EBMLElementPath) ancestors).retain();
+            }
+            return ancestors;
+        }
     }
 
 }
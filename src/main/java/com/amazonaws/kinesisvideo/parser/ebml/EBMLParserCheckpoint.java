@@ -0,0 +1,60 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A serializable snapshot of the state of an {@link EBMLParser} between two elements.
+ * It holds the absolute offset of the next element in the EBML stream, the number of that element and the master
+ * elements that are open at that offset. A new parser restored from a checkpoint continues parsing from a byte source
+ * positioned at the offset, as if it had parsed all the bytes before it.
+ */
+@Getter
+@ToString
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class EBMLParserCheckpoint implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The absolute offset in the EBML stream at which parsing resumes.
+     */
+    private final long offset;
+    private final long nextElementNumber;
+    @Getter(AccessLevel.PACKAGE)
+    private final List<MasterElement> openMasterElements;
+
+    /**
+     * The id and size of a master element that is open at the offset of a checkpoint.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @ToString
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    static final class MasterElement implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+        private final long startingOffset;
+        private final long elementNumber;
+        private final long idNumBytes;
+        private final long dataSize;
+        private final long dataSizeNumBytes;
+    }
+}
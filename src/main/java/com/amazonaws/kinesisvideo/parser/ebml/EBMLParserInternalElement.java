@@ -13,28 +13,32 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.ebml;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 import org.apache.commons.lang3.Validate;
 
-import java.nio.ByteBuffer;
-import java.util.Optional;
-
 import static com.amazonaws.kinesisvideo.parser.ebml.EBMLUtils.UNKNOWN_LENGTH_VALUE;
 
 /**
  * This class is used by the parser to represent an EBML Element internally.
+ * When the parser recycles elements, an instance is reset and reused for another element once the parser is
+ * done with it, so it holds no per element objects other than a recycled metadata instance.
  */
 @ToString
 class EBMLParserInternalElement {
     enum ElementReadState { NEW, ID_DONE, SIZE_DONE, CONTENT_READING, CONTENT_SKIPPING, FINISHED }
 
-    private final long startingOffset;
+    @Getter(AccessLevel.PACKAGE)
+    private long startingOffset;
     @Getter
-    private final long elementCount;
+    private long elementCount;
 
     ElementReadState currentElementReadState = ElementReadState.NEW;
 
+    @Getter
+    private boolean skipped;
+
     @Getter
     private int id;
     private long idNumBytes;
@@ -42,45 +46,114 @@ class EBMLParserInternalElement {
     private long dataSize;
     private long dataSizeNumBytes;
 
-    private Optional<EBMLElementMetaData> elementMetaData = Optional.empty();
+    @ToString.Exclude
+    private final boolean recycled;
+    private EBMLElementMetaData elementMetaData;
+    //Path node linked into the parser's current path while a recycled master element is being read.
+    @ToString.Exclude
+    @Getter(AccessLevel.PACKAGE)
+    private final EBMLElementPath recycledPathNode;
+
+    @ToString.Exclude
+    private final EBMLUtils.IdConsumer idConsumer = this::setId;
+    @ToString.Exclude
+    private final EBMLUtils.SizeConsumer sizeConsumer = this::setSize;
 
 
     public EBMLParserInternalElement(long startingOffset, long elementCount) {
-        this.startingOffset = startingOffset;
-        this.elementCount = elementCount;
+        this(startingOffset, elementCount, false);
+    }
+
+    EBMLParserInternalElement(long startingOffset, long elementCount, boolean recycled) {
+        this.recycled = recycled;
+        this.elementMetaData = recycled ? EBMLElementMetaData.createRecycled() : null;
+        this.recycledPathNode = recycled ? EBMLElementPath.createRecycled(elementMetaData) : null;
+        reset(startingOffset, elementCount);
+    }
+
+    /**
+     * Reset a recycled element so that it represents a new element starting at the given offset.
+     */
+    void reset(long startingOffsetArg, long elementCountArg) {
+        this.startingOffset = startingOffsetArg;
+        this.elementCount = elementCountArg;
+        this.currentElementReadState = ElementReadState.NEW;
+        this.skipped = false;
+        this.id = 0;
+        this.idNumBytes = 0;
+        this.dataSize = 0;
+        this.dataSizeNumBytes = 0;
+        if (recycled) {
+            elementMetaData.reset(null, elementCountArg);
+        } else {
+            elementMetaData = null;
+        }
+    }
+
+    /**
+     * Record the id and size of a master element whose content is being read, for a checkpoint of the parser.
+     */
+    EBMLParserCheckpoint.MasterElement toCheckpointMasterElement() {
+        Validate.isTrue(currentElementReadState == ElementReadState.CONTENT_READING);
+        return new EBMLParserCheckpoint.MasterElement(id,
+                startingOffset,
+                elementCount,
+                idNumBytes,
+                dataSize,
+                dataSizeNumBytes);
+    }
+
+    /**
+     * Make a reset element represent a master element from a checkpoint, whose content is being read.
+     */
+    void restoreMasterElement(EBMLParserCheckpoint.MasterElement masterElement,
+            EBMLTypeInfoProvider typeInfoProvider) {
+        Validate.isTrue(currentElementReadState == ElementReadState.NEW);
+        setId(masterElement.getId(), masterElement.getIdNumBytes());
+        setSize(masterElement.getDataSize(), masterElement.getDataSizeNumBytes());
+        updateTypeInfo(typeInfoProvider);
+        Validate.isTrue(isKnownType() && getTypeInfo().getType() == EBMLTypeInfo.TYPE.MASTER,
+                "Checkpoint has an open element that is not a known master element, id %d",
+                masterElement.getId());
+        startReadingContent();
     }
 
     public void readId(TrackingReplayableIdAndSizeByteSource idAndSizeByteSource) {
         Validate.isTrue(currentElementReadState == ElementReadState.NEW);
         idAndSizeByteSource.setReadOffsetForReplayBuffer(startingOffset);
-        EBMLUtils.readId(idAndSizeByteSource, this::setId);
+        EBMLUtils.readId(idAndSizeByteSource, idConsumer);
     }
 
     public void readSize(TrackingReplayableIdAndSizeByteSource idAndSizeByteSource) {
         Validate.isTrue(currentElementReadState == ElementReadState.ID_DONE);
         idAndSizeByteSource.setReadOffsetForReplayBuffer(startingOffset + idNumBytes);
-        EBMLUtils.readSize(idAndSizeByteSource, this::setSize);
+        EBMLUtils.readSize(idAndSizeByteSource, sizeConsumer);
     }
 
     public void updateTypeInfo(EBMLTypeInfoProvider typeInfoProvider) {
         Validate.isTrue(currentElementReadState == ElementReadState.SIZE_DONE);
-        Optional<EBMLTypeInfo> typeInfo = typeInfoProvider.getType(id);
-        if (typeInfo.isPresent()) {
-            elementMetaData = Optional.of(new EBMLElementMetaData(typeInfo.get(), elementCount));
+        EBMLTypeInfo typeInfo = typeInfoProvider.getTypeOrNull(id);
+        if (typeInfo != null) {
+            if (recycled) {
+                elementMetaData.reset(typeInfo, elementCount);
+            } else {
+                elementMetaData = new EBMLElementMetaData(typeInfo, elementCount);
+            }
         }
     }
 
     public boolean isKnownType() {
-        return elementMetaData.isPresent();
+        return elementMetaData != null && elementMetaData.getTypeInfo() != null;
     }
 
     public EBMLTypeInfo getTypeInfo() {
-        return elementMetaData.get().getTypeInfo();
+        Validate.isTrue(isKnownType(), "EBML element type info requested for unknown id %d", id);
+        return elementMetaData.getTypeInfo();
     }
 
     public EBMLElementMetaData getMetadata() {
-        Validate.isTrue(elementMetaData.isPresent(), "EBML element metadata ");
-        return elementMetaData.get();
+        Validate.isTrue(isKnownType(), "EBML element metadata requested for unknown id %d", id);
+        return elementMetaData;
     }
 
     public void startReadingContent() {
@@ -91,6 +164,16 @@ class EBMLParserInternalElement {
     public void startSkippingContent() {
         Validate.isTrue(currentElementReadState == ElementReadState.SIZE_DONE);
         currentElementReadState = ElementReadState.CONTENT_SKIPPING;
+        skipped = true;
+    }
+
+    /**
+     * Check if the callbacks should be invoked for this element.
+     * Callbacks are not invoked for elements of unknown type or elements whose content is skipped.
+     * @return true if the callbacks should be invoked for this element.
+     */
+    public boolean hasCallbacks() {
+        return isKnownType() && !skipped;
     }
 
     public void readContent(TrackingReplayableIdAndSizeByteSource idAndSizeByteSource,
@@ -102,7 +185,7 @@ class EBMLParserInternalElement {
 
         //Call onPartialContent if bytesToRead > 0.
         if (bytesToRead > 0) {
-            callbacks.onPartialContent(elementMetaData.get(), bulkByteSource, (int) bytesToRead);
+            callbacks.onPartialContent(elementMetaData, bulkByteSource, (int) bytesToRead);
         }
 
         if (!isUnknownLength() && idAndSizeByteSource.getTotalBytesRead() >= getContentStartOffset() + dataSize) {
@@ -110,14 +193,12 @@ class EBMLParserInternalElement {
         }
     }
 
-    public void skipContent(TrackingReplayableIdAndSizeByteSource idAndSizeByteSource,
-            ParserBulkByteSource bulkByteSource,
-            ByteBuffer skipBuffer) {
+    public void skipContent(TrackingReplayableIdAndSizeByteSource idAndSizeByteSource) {
         Validate.isTrue(currentElementReadState == ElementReadState.CONTENT_SKIPPING);
-        long bytesToRead = getBytesToRead(idAndSizeByteSource, skipBuffer.remaining());
+        long bytesToSkip = dataSize + getContentStartOffset() - idAndSizeByteSource.getTotalBytesRead();
 
-        if (bytesToRead > 0) {
-            bulkByteSource.readBytes(skipBuffer, (int )bytesToRead);
+        if (bytesToSkip > 0) {
+            idAndSizeByteSource.skipBytes(bytesToSkip);
         }
 
         if (idAndSizeByteSource.getTotalBytesRead() >= getContentStartOffset() + dataSize) {
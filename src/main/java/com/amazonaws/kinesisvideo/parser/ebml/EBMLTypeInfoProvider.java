@@ -20,4 +20,14 @@ import java.util.Optional;
  */
 public interface EBMLTypeInfoProvider {
     Optional<EBMLTypeInfo> getType(int id);
+
+    /**
+     * Get the type information for an id without wrapping it in an Optional.
+     * This is used by the parser for every element, so providers should override it to avoid allocations.
+     * @param id The EBML id.
+     * @return The type information or null if the id is not known.
+     */
+    default EBMLTypeInfo getTypeOrNull(int id) {
+        return getType(id).orElse(null);
+    }
 }
@@ -0,0 +1,56 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable set of type information that is checked by index instead of by hashing the type information.
+ * Members that have an equal instance in the {@link EBMLTypeInfoTable} are stored as bits keyed by their index in
+ * the table, other members are stored in a hash set.
+ * Membership has the same semantics as a {@link Set} of type information, a user constructed instance is
+ * contained if an equal instance is.
+ */
+public final class EBMLTypeInfoSet {
+    private final EBMLTypeInfoTable typeInfoTable;
+    private final BitSet indexes = new BitSet();
+    private final Set<EBMLTypeInfo> nonCanonicalTypeInfos = new HashSet<>();
+
+    EBMLTypeInfoSet(EBMLTypeInfoTable typeInfoTable, Collection<EBMLTypeInfo> typeInfos) {
+        this.typeInfoTable = typeInfoTable;
+        for (EBMLTypeInfo typeInfo : typeInfos) {
+            int index = typeInfoTable.indexOf(typeInfo);
+            if (index != EBMLTypeInfoTable.NO_INDEX) {
+                indexes.set(index);
+            } else {
+                nonCanonicalTypeInfos.add(typeInfo);
+            }
+        }
+    }
+
+    public boolean contains(EBMLTypeInfo typeInfo) {
+        int index = typeInfoTable.indexOf(typeInfo);
+        if (index == EBMLTypeInfoTable.NO_INDEX) {
+            return nonCanonicalTypeInfos.contains(typeInfo);
+        }
+        return indexes.get(index);
+    }
+
+    public boolean isEmpty() {
+        return indexes.isEmpty() && nonCanonicalTypeInfos.isEmpty();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * An immutable {@link EBMLTypeInfoProvider} that stores type information in an open addressing table keyed by the
+ * primitive EBML id.
+ * Lookups do not box the id and getTypeOrNull does not allocate, so a table can be built once and shared by all
+ * the parsers for a document type.
+ * The type infos in a table are its canonical instances. Each of them has an index in the table, a small dense
+ * integer that can key arrays and bit sets instead of hashing the type information.
+ */
+public final class EBMLTypeInfoTable implements EBMLTypeInfoProvider {
+    /**
+     * The index of type information that is not in a table.
+     */
+    public static final int NO_INDEX = -1;
+
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    private final int[] ids;
+    private final EBMLTypeInfo[] typeInfos;
+    private final int[] indexes;
+    private final int mask;
+    private final int shift;
+    private final int size;
+
+    private EBMLTypeInfoTable(Collection<EBMLTypeInfo> typeInfosToAdd) {
+        //Keep the table at most half full so that probe sequences stay short.
+        int capacity = Integer.highestOneBit(Math.max(1, typeInfosToAdd.size()) * 2) << 1;
+        this.ids = new int[capacity];
+        this.typeInfos = new EBMLTypeInfo[capacity];
+        this.indexes = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        int index = 0;
+        for (EBMLTypeInfo typeInfo : typeInfosToAdd) {
+            Validate.isTrue(getTypeOrNull(typeInfo.getId()) == null, "Duplicate type info for id " + typeInfo.getId());
+            int slot = slot(typeInfo.getId());
+            while (typeInfos[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = typeInfo.getId();
+            typeInfos[slot] = typeInfo;
+            indexes[slot] = index++;
+        }
+        this.size = index;
+    }
+
+    public static EBMLTypeInfoTable of(Collection<EBMLTypeInfo> typeInfos) {
+        return new EBMLTypeInfoTable(typeInfos);
+    }
+
+    @Override
+    public Optional<EBMLTypeInfo> getType(int id) {
+        return Optional.ofNullable(getTypeOrNull(id));
+    }
+
+    @Override
+    public EBMLTypeInfo getTypeOrNull(int id) {
+        int slot = findSlot(id);
+        return slot < 0 ? null : typeInfos[slot];
+    }
+
+    /**
+     * Get the index of type information in this table.
+     * Indexes are assigned in the order in which the type information was added, from 0 to size() - 1, so they can
+     * index arrays and bit sets. A user constructed instance has the index of the equal instance in the table.
+     * @param typeInfo The type information.
+     * @return The index, or {@link #NO_INDEX} if there is no equal instance in this table.
+     */
+    public int indexOf(EBMLTypeInfo typeInfo) {
+        int slot = findSlot(typeInfo.getId());
+        if (slot < 0) {
+            return NO_INDEX;
+        }
+        EBMLTypeInfo canonicalTypeInfo = typeInfos[slot];
+        return canonicalTypeInfo == typeInfo || canonicalTypeInfo.equals(typeInfo) ? indexes[slot] : NO_INDEX;
+    }
+
+    /**
+     * Get the canonical instance for the type information.
+     * @param typeInfo The type information, which may be constructed by the user.
+     * @return The instance in this table that equals typeInfo, or typeInfo itself if there is no such instance.
+     */
+    public EBMLTypeInfo canonical(EBMLTypeInfo typeInfo) {
+        EBMLTypeInfo canonicalTypeInfo = getTypeOrNull(typeInfo.getId());
+        if (canonicalTypeInfo == typeInfo || (canonicalTypeInfo != null && canonicalTypeInfo.equals(typeInfo))) {
+            return canonicalTypeInfo;
+        }
+        return typeInfo;
+    }
+
+    /**
+     * Create a set of type information that uses the indexes of the type information in this table.
+     * @param typeInfos The type information in the set.
+     * @return The set.
+     */
+    public EBMLTypeInfoSet newSet(Collection<EBMLTypeInfo> typeInfos) {
+        return new EBMLTypeInfoSet(this, typeInfos);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int findSlot(int id) {
+        int slot = slot(id);
+        while (typeInfos[slot] != null) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(int id) {
+        //Fibonacci hashing spreads the ids, which share most of their bits, over the table.
+        return (id * HASH_MULTIPLIER) >>> shift;
+    }
+}
@@ -44,6 +44,9 @@ public class EBMLUtils {
     private static final int BYTE_WITH_FIRST_BIT_SET = 0b10000000;
 
     static void readId(final TrackingReplayableIdAndSizeByteSource source, IdConsumer resultAcceptor) {
+        if (readIdFromWindow(source, resultAcceptor)) {
+            return;
+        }
         if (!isEnoughBytes(source, 1)) {
             return;
         }
@@ -52,7 +55,7 @@ public class EBMLUtils {
         if (firstByte == -1) {
             resultAcceptor.accept(firstByte, 1);
         }
-        Validate.isTrue(firstByte >= 0, "EBML Id has negative firstByte" + firstByte);
+        Validate.isTrue(firstByte >= 0, "EBML Id has negative firstByte %d", firstByte);
 
         final int numAdditionalBytes = getNumLeadingZeros(firstByte);
         if (!isEnoughBytes(source, numAdditionalBytes)) {
@@ -112,11 +115,14 @@ public class EBMLUtils {
      * @see "http://www.matroska.org/technical/specs/rfc/index.html"
      */
     private static void readEbmlInt(final TrackingReplayableIdAndSizeByteSource source, SizeConsumer resultAcceptor) {
+        if (readEbmlIntFromWindow(source, resultAcceptor)) {
+            return;
+        }
         if (!isEnoughBytes(source, 1)) {
             return;
         }
         final int firstByte = readByte(source);
-        Validate.isTrue(firstByte >= 0, "EBML Int has negative firstByte" + firstByte);
+        Validate.isTrue(firstByte >= 0, "EBML Int has negative firstByte %d", firstByte);
 
         final int size = getNumLeadingZeros(firstByte);
         if (!isEnoughBytes(source, size)) {
@@ -126,6 +132,11 @@ public class EBMLUtils {
         // Read the rest of the bytes
         final long rest = readEbmlValueNumber(source, size);
 
+        resultAcceptor.accept(getEbmlIntValue(firstByte, size, rest), size + 1);
+    }
+
+    private static long getEbmlIntValue(final int firstByte, final int size, final long rest) {
+        // Slap the first byte's value onto the front (with the first one-bit unset)
         long value = (firstByte & ~((byte) BYTE_WITH_FIRST_BIT_SET >> size)) << (size * Byte.SIZE) | rest;
 
         long unknownValue = (0xff >> (size + 1));
@@ -136,9 +147,67 @@ public class EBMLUtils {
         if (value == unknownValue) {
             value = -1;
         }
+        return value;
+    }
 
-        // Slap the first byte's value onto the front (with the first one-bit unset)
-        resultAcceptor.accept(value, size + 1);
+    /**
+     * Fast path for reading an EBML id that is completely available in the window of the byte source.
+     * Ids that are invalid or cross the end of the window are left to the byte by byte path.
+     *
+     * @param source buffer containing chunks of data
+     * @param resultAcceptor the callback called when the id of an ebml element is identified.
+     * @return true if the id was read from the window.
+     */
+    private static boolean readIdFromWindow(final TrackingReplayableIdAndSizeByteSource source,
+            IdConsumer resultAcceptor) {
+        final ByteBuffer window = source.peekWindow();
+        if (window == null || !window.hasRemaining()) {
+            return false;
+        }
+        final int position = window.position();
+        final int firstByte = window.get(position) & BYTE_MASK;
+        final int numAdditionalBytes = getNumLeadingZeros(firstByte);
+        if (numAdditionalBytes > EBML_ID_MAX_BYTES - 1 || window.remaining() <= numAdditionalBytes) {
+            return false;
+        }
+
+        int value = firstByte;
+        for (int i = 1; i <= numAdditionalBytes; i++) {
+            value = (value << Byte.SIZE) | (window.get(position + i) & BYTE_MASK);
+        }
+        source.consumeFromWindow(numAdditionalBytes + 1);
+        resultAcceptor.accept(value, numAdditionalBytes + 1);
+        return true;
+    }
+
+    /**
+     * Fast path for reading an EBML size that is completely available in the window of the byte source.
+     * Sizes that are invalid or cross the end of the window are left to the byte by byte path.
+     *
+     * @param source buffer containing chunks of data
+     * @param resultAcceptor the callback called when the size of an ebml element is identified.
+     * @return true if the size was read from the window.
+     */
+    private static boolean readEbmlIntFromWindow(final TrackingReplayableIdAndSizeByteSource source,
+            SizeConsumer resultAcceptor) {
+        final ByteBuffer window = source.peekWindow();
+        if (window == null || !window.hasRemaining()) {
+            return false;
+        }
+        final int position = window.position();
+        final int firstByte = window.get(position) & BYTE_MASK;
+        final int size = getNumLeadingZeros(firstByte);
+        if (size > EBML_SIZE_MAX_BYTES - 1 || window.remaining() <= size) {
+            return false;
+        }
+
+        long rest = 0;
+        for (int i = 1; i <= size; i++) {
+            rest = (rest << Byte.SIZE) | (window.get(position + i) & BYTE_MASK);
+        }
+        source.consumeFromWindow(size + 1);
+        resultAcceptor.accept(getEbmlIntValue(firstByte, size, rest), size + 1);
+        return true;
     }
 
     /**
@@ -149,7 +218,7 @@ public class EBMLUtils {
      */
     public static long readEbmlInt(final ByteBuffer byteBuffer) {
         final int firstByte =  byteBuffer.get() & BYTE_MASK;
-        Validate.isTrue(firstByte >= 0, "EBML Int has negative firstByte" + firstByte);
+        Validate.isTrue(firstByte >= 0, "EBML Int has negative firstByte %d", firstByte);
 
         final int size = getNumLeadingZeros(firstByte);
         // Read the rest of the bytes
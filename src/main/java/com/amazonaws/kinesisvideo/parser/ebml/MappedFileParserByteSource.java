@@ -0,0 +1,189 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An implementation of ParserByteSource that memory maps a local mkv file instead of reading it through a stream.
+ * The file is mapped one window at a time with {@link FileChannel#map}, so files larger than 2 GB can be parsed.
+ * When all the bytes of a window have been consumed the window is rolled to the next region of the file and the old
+ * mapping is released once it is no longer referenced.
+ *
+ * Slices returned by readSlice share their content with the mapped file, they remain valid even after the window
+ * has been rolled.
+ * The file channel is closed once the last window of the file has been mapped or when close is called.
+ *
+ * Skipping or moving the position does not map the bytes in between. The window at the new position is mapped
+ * when it is read. Once the channel has been closed the position can only be moved within the last window.
+ */
+@Slf4j
+public class MappedFileParserByteSource implements BufferedParserByteSource, SeekableParserByteSource, Closeable {
+    private static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final FileChannel fileChannel;
+    private final ByteBuffer emptyWindow = ByteBuffer.allocate(0);
+    private final long startOffset;
+    private final long fileSize;
+    private final int windowSize;
+    private ByteBuffer window;
+    private long windowStartOffset;
+
+    public MappedFileParserByteSource(final Path path) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileParserByteSource(final FileChannel fileChannel, final int windowSize) throws IOException {
+        Validate.isTrue(windowSize > 0, "Window size should be positive");
+        this.fileChannel = fileChannel;
+        this.fileSize = fileChannel.size();
+        this.windowSize = windowSize;
+        this.window = emptyWindow;
+        this.startOffset = fileChannel.position();
+        this.windowStartOffset = startOffset;
+    }
+
+    @Override
+    public int readByte() {
+        if (!window.hasRemaining() && !rollWindow()) {
+            return -1;
+        }
+        return window.get() & BYTE_MASK;
+    }
+
+    @Override
+    public int available() {
+        if (!window.hasRemaining()) {
+            rollWindow();
+        }
+        return window.remaining();
+    }
+
+    @Override
+    public int readBytes(final ByteBuffer dest, final int numBytes) {
+        Validate.isTrue(dest.remaining() >= numBytes);
+        final ByteBuffer slice = readSlice(numBytes);
+        if (slice == null) {
+            return -1;
+        }
+        final int numBytesRead = slice.remaining();
+        dest.put(slice);
+        return numBytesRead;
+    }
+
+    @Override
+    public boolean eof() {
+        return !window.hasRemaining() && currentOffset() >= fileSize;
+    }
+
+    @Override
+    public ByteBuffer peekBuffer() {
+        return window;
+    }
+
+    @Override
+    public ByteBuffer readSlice(final int numBytes) {
+        if (!window.hasRemaining() && !rollWindow()) {
+            return null;
+        }
+        final int numBytesRead = Math.min(numBytes, window.remaining());
+        final ByteBuffer slice = window.slice();
+        slice.limit(numBytesRead);
+        window.position(window.position() + numBytesRead);
+        return slice;
+    }
+
+    @Override
+    public long skip(final long numBytes) {
+        Validate.isTrue(numBytes >= 0, "Cannot skip a negative number of bytes %d", numBytes);
+        final long offset = currentOffset();
+        if (offset >= fileSize) {
+            return numBytes == 0 ? 0 : -1;
+        }
+        final long numBytesSkipped = Math.min(numBytes, fileSize - offset);
+        moveToOffset(offset + numBytesSkipped);
+        return numBytesSkipped;
+    }
+
+    @Override
+    public long position() {
+        return currentOffset() - startOffset;
+    }
+
+    @Override
+    public void position(final long newPosition) {
+        Validate.isTrue(newPosition >= 0, "Cannot move to negative position %d", newPosition);
+        moveToOffset(Math.min(startOffset + newPosition, fileSize));
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    private long currentOffset() {
+        return windowStartOffset + window.position();
+    }
+
+    /**
+     * Move to an offset in the file. If the offset is outside the current window, the window is unmapped
+     * and the window at the offset is mapped on the next read.
+     */
+    private void moveToOffset(final long offset) {
+        if (offset >= windowStartOffset && offset <= windowStartOffset + window.limit()) {
+            window.position((int) (offset - windowStartOffset));
+            return;
+        }
+        Validate.validState(fileChannel.isOpen() || offset >= fileSize,
+                "Cannot move outside the last mapped window after the file has been closed");
+        window = emptyWindow;
+        windowStartOffset = offset;
+    }
+
+    /**
+     * Map the next window of the file, starting at the first byte that has not been consumed yet.
+     * @return true if a non-empty window was mapped.
+     */
+    private boolean rollWindow() {
+        final long nextOffset = currentOffset();
+        if (nextOffset >= fileSize) {
+            return false;
+        }
+        final long nextWindowSize = Math.min(windowSize, fileSize - nextOffset);
+        try {
+            final MappedByteBuffer mappedWindow =
+                    fileChannel.map(FileChannel.MapMode.READ_ONLY, nextOffset, nextWindowSize);
+            log.debug("Mapped window of {} bytes at offset {}", nextWindowSize, nextOffset);
+            window = mappedWindow;
+            windowStartOffset = nextOffset;
+            if (nextOffset + nextWindowSize >= fileSize) {
+                //The mapping stays valid after the channel is closed, so release the file as early as possible.
+                fileChannel.close();
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException("Exception while mapping file window at offset " + nextOffset, e);
+        }
+        return true;
+    }
+}
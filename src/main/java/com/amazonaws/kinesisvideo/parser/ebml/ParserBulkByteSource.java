@@ -22,4 +22,31 @@ public interface ParserBulkByteSource {
 
     int readBytes(ByteBuffer dest, int numBytes);
 
+    /**
+     * Skip bytes without returning them.
+     * By default the bytes are read into a scratch buffer. The byte source the parser passes to its callbacks
+     * overrides this to skip them without copying when its underlying byte source allows it.
+     * @param numBytes The number of bytes to skip.
+     * @return The number of bytes skipped, which can be fewer than numBytes, or -1 at the end of the stream.
+     */
+    default long skipBytes(long numBytes) {
+        if (numBytes <= 0) {
+            return 0;
+        }
+        ByteBuffer scratchBuffer = ByteBuffer.allocate((int) Math.min(numBytes, 8192));
+        return readBytes(scratchBuffer, scratchBuffer.capacity());
+    }
+
+    /**
+     * Read bytes without copying them, if they are already contiguous in the memory of the byte source.
+     * The returned buffer is a read only view that shares its content with the byte source,
+     * so it is only valid until more bytes are read from the byte source.
+     * @param numBytes The number of bytes to read.
+     * @return A read only buffer with numBytes remaining, or null if the bytes cannot be read without copying,
+     * in which case no bytes are read.
+     */
+    default ByteBuffer readResidentBytes(int numBytes) {
+        return null;
+    }
+
 }
@@ -23,10 +23,14 @@ import java.nio.ByteBuffer;
 class ReplayIdAndSizeBuffer {
     private int count;
     private final byte[] buffer;
+    private final ByteBuffer appendBuffer;
+    private final ByteBuffer reusableView;
     private long startingOffset;
 
     ReplayIdAndSizeBuffer(int length) {
         buffer = new byte[length];
+        appendBuffer = ByteBuffer.wrap(buffer);
+        reusableView = ByteBuffer.wrap(buffer);
     }
 
     void init(long startingOffset) {
@@ -35,11 +39,22 @@ class ReplayIdAndSizeBuffer {
     }
 
     void addByte(byte val) {
-        Validate.isTrue(count < buffer.length, "Too many bytes being added to replay buffer " + count);
+        Validate.isTrue(count < buffer.length, "Too many bytes being added to replay buffer %d", count);
         buffer[count] = val;
         count++;
     }
 
+    int addBytes(ParserBulkByteSource source, int len) {
+        Validate.isTrue(count + len <= buffer.length, "Too many bytes being added to replay buffer %d", count);
+        appendBuffer.limit(count + len);
+        appendBuffer.position(count);
+        int numBytesRead = source.readBytes(appendBuffer, len);
+        if (numBytesRead > 0) {
+            count += numBytesRead;
+        }
+        return numBytesRead;
+    }
+
     boolean inReplayBuffer(long readOffset) {
         return (readOffset - startingOffset) < count;
     }
@@ -58,4 +73,14 @@ class ReplayIdAndSizeBuffer {
     ByteBuffer getByteBuffer() {
         return ByteBuffer.wrap(buffer, 0, count);
     }
+
+    /**
+     * Get a view of the replay buffer without allocating.
+     * The same view is returned on every call, so it is only valid until the buffer is next modified.
+     */
+    ByteBuffer getReusableByteBuffer() {
+        reusableView.clear();
+        reusableView.limit(count);
+        return reusableView;
+    }
 }
@@ -0,0 +1,54 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+/**
+ * A {@link ParserByteSource} that can move to another position in the EBML stream without reading the bytes
+ * in between, such as a local file or a source that supports range requests.
+ * The parser uses skip to jump over the content of unknown elements and elements that are not read by the
+ * callbacks in a single call. Sources that are not seekable have the skipped bytes copied and discarded.
+ * A source whose seekability depends on what it reads from, such as a window over a channel, reports it with
+ * isSeekable, the parser falls back to reading and discarding the skipped bytes when it returns false.
+ */
+public interface SeekableParserByteSource extends ParserByteSource {
+    /**
+     * Skip bytes of the stream without reading them.
+     * @param numBytes The number of bytes to skip.
+     * @return The number of bytes skipped, which is less than numBytes if the source does not have them yet or
+     * the end of the stream is reached. -1 if the end of the stream has already been reached.
+     */
+    long skip(long numBytes);
+
+    /**
+     * Get the position of the next byte to be read, relative to the start of the source.
+     * @return The position.
+     */
+    long position();
+
+    /**
+     * Move to a position relative to the start of the source, so that the next byte read is the one at that position.
+     * @param newPosition The new position.
+     */
+    void position(long newPosition);
+
+    /**
+     * Check whether the source can skip and move beyond the bytes it has already read.
+     * When it cannot, skip only skips the bytes it has already read and position can only move back within them
+     * or forward by reading and discarding the bytes in between.
+     * @return true if the source is seekable.
+     */
+    default boolean isSeekable() {
+        return true;
+    }
+}
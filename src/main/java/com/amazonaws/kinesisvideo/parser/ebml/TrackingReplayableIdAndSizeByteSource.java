@@ -13,6 +13,8 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.ebml;
 
+import java.nio.ByteBuffer;
+
 /**
  * An interface representing a byte source that can replay the bytes for ebml id and size.
  * It also keeps track of the total number of bytes read by the parser from the underlying
@@ -24,8 +26,29 @@ interface TrackingReplayableIdAndSizeByteSource {
 
     int readByte();
 
+    /**
+     * Get a window into the underlying byte source that starts at the current read offset.
+     * @return The window or null if the bytes at the current read offset cannot be read from a window.
+     */
+    ByteBuffer peekWindow();
+
+    /**
+     * Consume bytes from the window returned by peekWindow, as if they were read through readByte.
+     * @param len The number of bytes to consume.
+     */
+    void consumeFromWindow(int len);
+
     int availableForContent();
 
+    /**
+     * Skip content bytes without passing them to the callbacks.
+     * Seekable byte sources can skip all the bytes in one call, other byte sources skip at most
+     * the bytes available for content.
+     * @param numBytes The maximum number of bytes to skip.
+     * @return The number of bytes skipped or -1 if the end of stream has been reached.
+     */
+    long skipBytes(long numBytes);
+
     void setReadOffsetForReplayBuffer(long readOffset);
 
     long getTotalBytesRead();
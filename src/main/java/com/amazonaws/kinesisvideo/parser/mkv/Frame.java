@@ -23,17 +23,22 @@ import lombok.ToString;
 import org.apache.commons.lang3.Validate;
 
 import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 
 
 /**
  * Class that captures the meta-data and data for a frame in a Kinesis Video Stream.
  * This is based on the content of a SimpleBlock in Mkv.
+ * A frame created with readOnlyView shares the data buffer of its SimpleBlock, so it is only valid as long as that
+ * data buffer is. Call retain() to get a frame that can be kept.
+ * The frame data of a laced SimpleBlock holds several frames, use laceIterator() to get each of them.
  */
 @Getter
 @AllArgsConstructor(access=AccessLevel.PRIVATE)
 @Builder(toBuilder = true)
-@ToString(exclude = {"frameData"})
+@ToString(exclude = {"frameData", "view"})
 public class Frame {
     private final long trackNumber;
     private final int timeCode;
@@ -42,9 +47,14 @@ public class Frame {
     private final boolean discardable;
     private final Lacing lacing;
     private final ByteBuffer frameData;
+    @Getter(AccessLevel.NONE)
+    private final boolean view;
 
     public enum Lacing { NO, XIPH, EBML, FIXED_SIZE}
 
+    private static final int SIMPLE_BLOCK_TIMECODE_AND_FLAGS_SIZE = 3;
+    private static final int XIPH_LACE_SIZE_CONTINUES = 0xFF;
+
     /**
      * Create a frame object for the provided data buffer.
      * Do not create a copy of the data buffer while creating the frame object.
@@ -58,6 +68,19 @@ public class Frame {
         return builder.frameData(frameData).build();
     }
 
+    /**
+     * Create a frame object whose frame data is a read only view of the provided data buffer.
+     * The position of the data buffer is not changed. The frame is only valid as long as the content of the data
+     * buffer is, use retain() to keep it.
+     * @param simpleBlockDataBuffer The data buffer.
+     * @return A frame containing a read only view of the data buffer.
+     */
+    public static Frame readOnlyView(ByteBuffer simpleBlockDataBuffer) {
+        ByteBuffer readOnlyBuffer = simpleBlockDataBuffer.asReadOnlyBuffer();
+        FrameBuilder builder = getBuilderWithCommonParams(readOnlyBuffer);
+        return builder.frameData(readOnlyBuffer.slice()).view(true).build();
+    }
+
     /**
      * Create a frame object for the provided data buffer.
      * Create a copy of the data buffer while creating the frame object.
@@ -72,6 +95,53 @@ public class Frame {
         return builder.frameData(frameData).build();
     }
 
+    /**
+     * Get a frame that remains valid after the data buffer of its SimpleBlock is reused.
+     * A frame created with readOnlyView is copied, any other frame is returned as is.
+     * @return A frame that owns its frame data.
+     */
+    public Frame retain() {
+        if (!view) {
+            return this;
+        }
+        ByteBuffer frameDataCopy = ByteBuffer.allocate(frameData.remaining());
+        frameDataCopy.put(frameData.duplicate());
+        frameDataCopy.flip();
+        return toBuilder().frameData(frameDataCopy).view(false).build();
+    }
+
+    /**
+     * Get an iterator over the frames laced in the frame data.
+     * Each laced frame is a slice of the frame data, so it is only valid as long as the frame data is.
+     * The frame data of a frame without lacing is a single laced frame.
+     * @return An iterator over the laced frames.
+     */
+    public LaceIterator laceIterator() {
+        Validate.notNull(frameData, "The frame does not have frame data");
+        return new LaceIterator(frameData, lacing);
+    }
+
+    /**
+     * Create a frame object from the header of a SimpleBlock, before the rest of the SimpleBlock has been read.
+     * The frame does not have any frame data.
+     * @param simpleBlockHeaderBuffer The buffer containing the header of the SimpleBlock.
+     * @return A frame containing the values from the header.
+     */
+    public static Frame headerOnly(ByteBuffer simpleBlockHeaderBuffer) {
+        return getBuilderWithCommonParams(simpleBlockHeaderBuffer).build();
+    }
+
+    /**
+     * Get the size of the header of a SimpleBlock, which is made of the track number, the timecode and the flags.
+     * @param firstByte The first byte of the SimpleBlock, which determines the size of the track number.
+     * @return The size of the header in bytes.
+     */
+    public static int getHeaderSize(byte firstByte) {
+        int trackNumberSize = Integer.numberOfLeadingZeros(firstByte & 0xFF) - (Integer.SIZE - Byte.SIZE) + 1;
+        Validate.isTrue(trackNumberSize <= Long.BYTES, "Invalid first byte of SimpleBlock %d", firstByte);
+        return trackNumberSize + SIMPLE_BLOCK_TIMECODE_AND_FLAGS_SIZE;
+    }
+
     /**
      * Create a FrameBuilder
      * @param simpleBlockDataBuffer
@@ -100,12 +170,111 @@ public class Frame {
             case 1:
                 return Lacing.XIPH;
             case 2:
-                return Lacing.EBML;
-            case 3:
                 return Lacing.FIXED_SIZE;
+            case 3:
+                return Lacing.EBML;
             default:
                 Validate.isTrue(false, "Invalid value of lacing "+laceValue);
         }
         throw new IllegalArgumentException("Invalid value of lacing "+laceValue);
     }
+
+    /**
+     * An iterator over the frames laced in the frame data of a SimpleBlock.
+     * The lace sizes are decoded as the iterator advances, according to the Xiph, EBML or fixed size lacing of the
+     * SimpleBlock. The laced frames are returned as slices of the frame data, they are not copied.
+     */
+    public static final class LaceIterator implements Iterator<ByteBuffer> {
+        private final ByteBuffer frameData;
+        private final Lacing lacing;
+        //Reads the lace sizes that follow the number of laces at the start of the frame data.
+        private final ByteBuffer laceSizes;
+        @Getter
+        private final int numLaces;
+        private final int fixedLaceSize;
+        private int laceDataOffset;
+        private int lacesReturned;
+        private long previousLaceSize;
+
+        private LaceIterator(ByteBuffer frameData, Lacing lacing) {
+            this.frameData = frameData;
+            this.lacing = lacing;
+            this.laceSizes = frameData.duplicate();
+            if (lacing == Lacing.NO) {
+                this.numLaces = 1;
+                this.laceDataOffset = frameData.position();
+                this.fixedLaceSize = frameData.remaining();
+                return;
+            }
+            this.numLaces = (laceSizes.get() & 0xFF) + 1;
+            //Read past the lace sizes to find where the laced frames start, then rewind to the first lace size.
+            int laceSizesOffset = laceSizes.position();
+            for (int i = 0; i < numLaces - 1 && lacing != Lacing.FIXED_SIZE; i++) {
+                readLaceSize(i);
+            }
+            this.laceDataOffset = laceSizes.position();
+            laceSizes.position(laceSizesOffset);
+            this.previousLaceSize = 0;
+            if (lacing == Lacing.FIXED_SIZE) {
+                int laceDataSize = frameData.limit() - laceDataOffset;
+                Validate.isTrue(laceDataSize % numLaces == 0,
+                        "Fixed size lacing data size %d is not a multiple of the number of laces", laceDataSize);
+                this.fixedLaceSize = laceDataSize / numLaces;
+            } else {
+                this.fixedLaceSize = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return lacesReturned < numLaces;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final long laceSize;
+            if (lacesReturned == numLaces - 1) {
+                //The size of the last laced frame is whatever remains of the frame data.
+                laceSize = frameData.limit() - laceDataOffset;
+            } else if (lacing == Lacing.FIXED_SIZE) {
+                laceSize = fixedLaceSize;
+            } else {
+                laceSize = readLaceSize(lacesReturned);
+            }
+            Validate.isTrue(laceSize >= 0 && laceDataOffset + laceSize <= frameData.limit(),
+                    "Invalid lace size %d", laceSize);
+            ByteBuffer lace = frameData.duplicate();
+            lace.position(laceDataOffset);
+            lace.limit(laceDataOffset + (int) laceSize);
+            laceDataOffset += (int) laceSize;
+            lacesReturned++;
+            return lace.slice();
+        }
+
+        private long readLaceSize(int laceIndex) {
+            long laceSize;
+            if (lacing == Lacing.XIPH) {
+                laceSize = 0;
+                int sizeByte;
+                do {
+                    sizeByte = laceSizes.get() & 0xFF;
+                    laceSize += sizeByte;
+                } while (sizeByte == XIPH_LACE_SIZE_CONTINUES);
+            } else {
+                //The first size is an EBML unsigned integer, the others are signed differences from the previous size.
+                int sizeOffset = laceSizes.position();
+                laceSize = EBMLUtils.readEbmlInt(laceSizes);
+                if (laceIndex > 0) {
+                    int sizeNumBytes = laceSizes.position() - sizeOffset;
+                    long bias = (1L << (Byte.SIZE * sizeNumBytes - sizeNumBytes - 1)) - 1;
+                    laceSize = previousLaceSize + laceSize - bias;
+                }
+            }
+            previousLaceSize = laceSize;
+            return laceSize;
+        }
+    }
 }
@@ -0,0 +1,209 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of reference counted {@link PooledByteBuffer}s used to hold the content of data elements beyond the next
+ * call to a {@link StreamingMkvReader}, for example when frames are handed over to decoding threads.
+ *
+ * Buffers are pooled in power of two size classes from 64 bytes to 16 MB, larger buffers are allocated when
+ * needed and not pooled. Each size class keeps at most maxPooledBuffersPerSizeClass free buffers.
+ *
+ * A buffer that is garbage collected without being released is detected as a leak. It is counted and logged, but
+ * not pooled again, since a consumer may still hold its backing ByteBuffer or a view of it. Its memory is left to the
+ * garbage collector. The pool also keeps track of the buffers in use and the free buffers it holds.
+ * A pool can be shared by several readers and used from several threads.
+ */
+@Slf4j
+public class MkvBufferPool {
+    private static final int MIN_SIZE_CLASS_SHIFT = 6;
+    private static final int MAX_SIZE_CLASS_SHIFT = 24;
+    private static final int NUM_SIZE_CLASSES = MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1;
+    private static final int DEFAULT_MAX_POOLED_BUFFERS_PER_SIZE_CLASS = 32;
+
+    private final int maxPooledBuffersPerSizeClass;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> freeBuffers = new ArrayList<>(NUM_SIZE_CLASSES);
+    private final AtomicIntegerArray numFreeBuffers = new AtomicIntegerArray(NUM_SIZE_CLASSES);
+    private final ReferenceQueue<PooledByteBuffer> leakQueue = new ReferenceQueue<>();
+    private final Set<BufferTracker> trackers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong buffersInUse = new AtomicLong();
+    private final AtomicLong bytesInUse = new AtomicLong();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong allocatedBuffers = new AtomicLong();
+    private final AtomicLong leakedBuffers = new AtomicLong();
+
+    public MkvBufferPool() {
+        this(DEFAULT_MAX_POOLED_BUFFERS_PER_SIZE_CLASS);
+    }
+
+    public MkvBufferPool(int maxPooledBuffersPerSizeClass) {
+        Validate.isTrue(maxPooledBuffersPerSizeClass >= 0, "Max pooled buffers per size class cannot be negative");
+        this.maxPooledBuffersPerSizeClass = maxPooledBuffersPerSizeClass;
+        for (int i = 0; i < NUM_SIZE_CLASSES; i++) {
+            freeBuffers.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Acquire a buffer with one reference.
+     * @param size The number of bytes needed. The limit of the returned buffer is set to it.
+     * @return The buffer.
+     */
+    public PooledByteBuffer acquire(int size) {
+        Validate.isTrue(size >= 0, "Cannot acquire a buffer of negative size %d", size);
+        reclaimLeakedBuffers();
+        int sizeClass = getSizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass < NUM_SIZE_CLASSES) {
+            buffer = freeBuffers.get(sizeClass).poll();
+            if (buffer != null) {
+                numFreeBuffers.decrementAndGet(sizeClass);
+                pooledBytes.addAndGet(-buffer.capacity());
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(sizeClass < NUM_SIZE_CLASSES ? 1 << (sizeClass + MIN_SIZE_CLASS_SHIFT) : size);
+            allocatedBuffers.incrementAndGet();
+        }
+        buffer.clear();
+        buffer.limit(size);
+        buffersInUse.incrementAndGet();
+        bytesInUse.addAndGet(buffer.capacity());
+
+        PooledByteBuffer pooledBuffer = new PooledByteBuffer(this, buffer);
+        BufferTracker tracker = new BufferTracker(pooledBuffer, buffer, leakQueue);
+        trackers.add(tracker);
+        pooledBuffer.setTracker(tracker);
+        return pooledBuffer;
+    }
+
+    /**
+     * Get the number of buffers that have been acquired and not yet released.
+     */
+    public long getBuffersInUse() {
+        return buffersInUse.get();
+    }
+
+    /**
+     * Get the capacity of the buffers that have been acquired and not yet released.
+     */
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+    /**
+     * Get the number of free buffers held by the pool for reuse.
+     */
+    public long getPooledBuffers() {
+        long count = 0;
+        for (int i = 0; i < NUM_SIZE_CLASSES; i++) {
+            count += numFreeBuffers.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get the capacity of the free buffers held by the pool for reuse.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Get the number of buffers allocated by the pool, because no free buffer of the right size was available.
+     */
+    public long getAllocatedBuffers() {
+        return allocatedBuffers.get();
+    }
+
+    /**
+     * Get the number of buffers that were garbage collected without being released.
+     */
+    public long getLeakedBuffers() {
+        reclaimLeakedBuffers();
+        return leakedBuffers.get();
+    }
+
+    void recycle(BufferTracker tracker) {
+        if (trackers.remove(tracker)) {
+            tracker.clear();
+            returnBuffer(tracker.buffer);
+        }
+    }
+
+    private void reclaimLeakedBuffers() {
+        Reference<? extends PooledByteBuffer> reference;
+        while ((reference = leakQueue.poll()) != null) {
+            BufferTracker tracker = (BufferTracker) reference;
+            if (trackers.remove(tracker)) {
+                leakedBuffers.incrementAndGet();
+                log.warn("A pooled buffer of capacity {} was garbage collected without being released",
+                        tracker.buffer.capacity());
+                buffersInUse.decrementAndGet();
+                bytesInUse.addAndGet(-tracker.buffer.capacity());
+            }
+        }
+    }
+
+    private void returnBuffer(ByteBuffer buffer) {
+        buffersInUse.decrementAndGet();
+        bytesInUse.addAndGet(-buffer.capacity());
+        int sizeClass = getSizeClass(buffer.capacity());
+        if (sizeClass < NUM_SIZE_CLASSES) {
+            if (numFreeBuffers.incrementAndGet(sizeClass) <= maxPooledBuffersPerSizeClass) {
+                pooledBytes.addAndGet(buffer.capacity());
+                freeBuffers.get(sizeClass).offer(buffer);
+            } else {
+                numFreeBuffers.decrementAndGet(sizeClass);
+            }
+        }
+    }
+
+    private static int getSizeClass(int size) {
+        if (size <= 1 << MIN_SIZE_CLASS_SHIFT) {
+            return 0;
+        }
+        int shift = Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    /**
+     * Tracks a buffer that has been acquired, so that it can be reclaimed if its PooledByteBuffer is garbage
+     * collected without being released.
+     */
+    static final class BufferTracker extends WeakReference<PooledByteBuffer> {
+        private final ByteBuffer buffer;
+
+        BufferTracker(PooledByteBuffer referent, ByteBuffer buffer, ReferenceQueue<PooledByteBuffer> queue) {
+            super(referent, queue);
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Class representing a chunk of the content of a non-master mkv element that is larger than the chunk threshold of
+ * a {@link StreamingMkvReader}. Such elements are delivered as a sequence of chunks instead of a single
+ * {@link MkvDataElement}, so that they are never assembled in memory.
+ * The first chunk has a chunk offset of zero and the last chunk ends at the data size of the element.
+ * As for data elements, the chunk buffer can only be accessed before nextIfAvailable is called again.
+ */
+@Getter
+@ToString(callSuper = true, exclude = {"idAndSizeRawBytes", "chunkBuffer"})
+public class MkvDataChunk extends MkvElement {
+    private final long dataSize;
+
+    private final ByteBuffer idAndSizeRawBytes;
+
+    private final long chunkOffset;
+
+    private final ByteBuffer chunkBuffer;
+
+    @Builder
+    private MkvDataChunk(EBMLElementMetaData elementMetaData,
+            List<EBMLElementMetaData> elementPath,
+            ByteBuffer idAndSizeRawBytes,
+            long dataSize,
+            long chunkOffset,
+            ByteBuffer chunkBuffer) {
+        super(elementMetaData, elementPath);
+        this.dataSize = dataSize;
+        this.idAndSizeRawBytes = idAndSizeRawBytes;
+        this.chunkOffset = chunkOffset;
+        this.chunkBuffer = chunkBuffer;
+    }
+
+    public boolean isFirst() {
+        return chunkOffset == 0;
+    }
+
+    public boolean isLast() {
+        return chunkOffset + chunkBuffer.limit() == dataSize;
+    }
+
+    @Override
+    public boolean isMaster() {
+        return false;
+    }
+
+    @Override
+    public void accept(MkvElementVisitor visitor) throws MkvElementVisitException {
+        visitor.visit(this);
+    }
+
+    @Override
+    public boolean equivalent(MkvElement other) {
+        if (!typeEquals(other)) {
+            return false;
+        }
+        MkvDataChunk otherDataChunk = (MkvDataChunk) other;
+        return this.dataSize == otherDataChunk.dataSize && this.chunkOffset == otherDataChunk.chunkOffset;
+    }
+
+    @Override
+    public void writeToChannel(WritableByteChannel outputChannel) throws MkvElementVisitException {
+        if (isFirst()) {
+            writeByteBufferToChannel(idAndSizeRawBytes, outputChannel);
+        }
+        writeByteBufferToChannel(chunkBuffer, outputChannel);
+    }
+}
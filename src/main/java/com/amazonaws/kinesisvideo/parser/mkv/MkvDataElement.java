@@ -14,6 +14,7 @@ See the License for the specific language governing permissions and limitations
 package com.amazonaws.kinesisvideo.parser.mkv;
 
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLUtils;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
 import lombok.AccessLevel;
@@ -27,6 +28,8 @@ import org.apache.commons.lang3.Validate;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
@@ -39,9 +42,15 @@ import java.util.List;
  * However, the data buffer can only be accessed before nextIfAvailable is called again on the StreamingMkvReader.
  * To retain the value of the MkvDataElement for later use call getValueCopy() on it.
  * It copies the raw bytes and interprets it based on the type of the MkvDataElement.
+ * To retain the raw bytes instead, call retain() on it before nextIfAvailable is called again.
+ * The values of numeric and string elements can also be read directly from the data buffer with getUnsignedLong(),
+ * getSignedLong(), getDouble() and getString(), which do not copy the raw bytes or create an MkvValue.
+ * A zero copy StreamingMkvReader may vend a read only data buffer that is a view of its byte source.
+ * A StreamingMkvReader with a {@link MkvBufferPool} vends data buffers from the pool. Then retain() adds a reference
+ * to the pooled buffer instead of copying it, and each call to retain() must be matched by a call to release().
  */
 @Getter
-@ToString(callSuper = true, exclude = {"dataBuffer","valueCopy", "idAndSizeRawBytes"})
+@ToString(callSuper = true, exclude = {"dataBuffer", "valueCopy", "idAndSizeRawBytes", "retained", "pooledBuffer"})
 @Slf4j
 public class MkvDataElement extends MkvElement {
     private static final int DATE_SIZE = 8;
@@ -56,16 +65,23 @@ public class MkvDataElement extends MkvElement {
     @Getter(AccessLevel.NONE)
     private MkvValue valueCopy;
 
+    private boolean retained;
+
+    @Getter(AccessLevel.NONE)
+    private final PooledByteBuffer pooledBuffer;
+
     @Builder
     private MkvDataElement(EBMLElementMetaData elementMetaData,
             List<EBMLElementMetaData> elementPath,
             ByteBuffer idAndSizeRawBytes,
             long dataSize,
-            ByteBuffer dataBuffer) {
+            ByteBuffer dataBuffer,
+            PooledByteBuffer pooledBuffer) {
         super(elementMetaData, elementPath);
         this.dataSize = dataSize;
         this.dataBuffer = dataBuffer;
         this.idAndSizeRawBytes = idAndSizeRawBytes;
+        this.pooledBuffer = pooledBuffer;
     }
 
     public MkvValue getValueCopy() {
@@ -75,6 +91,91 @@ public class MkvDataElement extends MkvElement {
         return valueCopy;
     }
 
+    /**
+     * Read the value of an unsigned integer element from the data buffer.
+     * Values that need all 64 bits are only available as a BigInteger from getValueCopy().
+     * @return The value.
+     * @throws ArithmeticException If the value does not fit in 63 bits.
+     */
+    public long getUnsignedLong() {
+        checkTypeAndDataBuffer(EBMLTypeInfo.TYPE.UINTEGER);
+        long value = readLong();
+        if (value < 0) {
+            throw new ArithmeticException("Unsigned integer value does not fit in 63 bits for " + elementMetaData);
+        }
+        return value;
+    }
+
+    /**
+     * Read the value of a signed integer element from the data buffer.
+     * @return The value.
+     */
+    public long getSignedLong() {
+        checkTypeAndDataBuffer(EBMLTypeInfo.TYPE.INTEGER);
+        long value = readLong();
+        if (dataSize > 0 && dataSize < Long.BYTES) {
+            //Sign extend the value from the size of the data.
+            int unusedBits = (int) (Long.SIZE - dataSize * Byte.SIZE);
+            value = (value << unusedBits) >> unusedBits;
+        }
+        return value;
+    }
+
+    /**
+     * Read the value of a float element from the data buffer.
+     * @return The value, widened to a double if the element holds a float, or 0.0 for an empty element,
+     * which is the EBML default.
+     */
+    public double getDouble() {
+        checkTypeAndDataBuffer(EBMLTypeInfo.TYPE.FLOAT);
+        if (dataSize == Float.BYTES) {
+            return dataBuffer.getFloat(0);
+        } else if (dataSize == Double.BYTES) {
+            return dataBuffer.getDouble(0);
+        }
+        Validate.isTrue(dataSize == 0, "Invalid size for float type %d", dataSize);
+        return 0.0;
+    }
+
+    /**
+     * Decode the value of a string or UTF-8 element from the data buffer.
+     * @param decoder A decoder for the charset of the element, which can be reused for many elements.
+     * @return The value.
+     */
+    public String getString(CharsetDecoder decoder) {
+        checkTypeAndDataBuffer(elementMetaData.getTypeInfo().getType() == EBMLTypeInfo.TYPE.UTF_8 ?
+                EBMLTypeInfo.TYPE.UTF_8 : EBMLTypeInfo.TYPE.STRING);
+        dataBuffer.rewind();
+        try {
+            return decoder.decode(dataBuffer).toString();
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("Could not decode string for " + elementMetaData, e);
+        } finally {
+            dataBuffer.rewind();
+        }
+    }
+
+    private void checkTypeAndDataBuffer(EBMLTypeInfo.TYPE expectedType) {
+        if (elementMetaData.getTypeInfo().getType() != expectedType) {
+            throw new IllegalArgumentException("Element " + elementMetaData.getTypeInfo().getName() + " is not of type "
+                    + expectedType);
+        }
+        if (dataBuffer == null) {
+            throw new IllegalStateException("The data buffer has already been released");
+        }
+    }
+
+    private long readLong() {
+        if (dataSize > Long.BYTES) {
+            throw new IllegalArgumentException("Asked for a numeric value of invalid size " + dataSize);
+        }
+        long value = 0;
+        for (int i = 0; i < dataSize; i++) {
+            value = (value << Byte.SIZE) | (dataBuffer.get(i) & 0xFF);
+        }
+        return value;
+    }
+
     private void createValueByCopyingBytes() {
         dataBuffer.rewind();
         try {
@@ -167,7 +268,51 @@ public class MkvDataElement extends MkvElement {
         return dataBuffer.limit();
     }
 
+    /**
+     * Keep the data buffer valid after the StreamingMkvReader has moved on to other elements.
+     * A pooled data buffer gets one more reference, which has to be released with release().
+     * Otherwise the data buffer is copied.
+     * @return This element.
+     */
+    public MkvDataElement retain() {
+        if (pooledBuffer != null) {
+            Validate.notNull(dataBuffer, "The data buffer has already been released");
+            pooledBuffer.retain();
+        } else if (!retained) {
+            Validate.notNull(dataBuffer, "The data buffer has already been released by the reader");
+            ByteBuffer dataCopy = ByteBuffer.allocate(dataBuffer.limit());
+            dataBuffer.rewind();
+            dataCopy.put(dataBuffer);
+            dataCopy.flip();
+            dataBuffer.rewind();
+            dataBuffer = dataCopy;
+            retained = true;
+        }
+        return this;
+    }
+
+    /**
+     * Release a reference added by retain(). The data buffer must not be accessed after its last reference is
+     * released. A data buffer that was copied by retain() does not need to be released.
+     */
+    public void release() {
+        if (pooledBuffer != null) {
+            releasePooledBuffer();
+        }
+    }
+
     void clearDataBuffer() {
-        dataBuffer = null;
+        if (pooledBuffer != null) {
+            //Release the reference held by the reader.
+            releasePooledBuffer();
+        } else if (!retained) {
+            dataBuffer = null;
+        }
+    }
+
+    private void releasePooledBuffer() {
+        if (pooledBuffer.release()) {
+            dataBuffer = null;
+        }
     }
 }
@@ -14,6 +14,7 @@ See the License for the specific language governing permissions and limitations
 package com.amazonaws.kinesisvideo.parser.mkv;
 
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLUtils;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
@@ -44,6 +45,15 @@ public abstract class MkvElement {
         return elementMetaData.getTypeInfo().equals(other.getElementMetaData().getTypeInfo());
     }
 
+    /**
+     * Check the type of this element by comparing ids, which is cheaper than comparing the type information.
+     * @param typeInfo The type information to check against.
+     * @return true if the element has the id of the type information.
+     */
+    public boolean isType(EBMLTypeInfo typeInfo) {
+        return elementMetaData.getTypeInfo().getId() == typeInfo.getId();
+    }
+
     public abstract boolean isMaster();
 
     public abstract void accept(MkvElementVisitor visitor) throws MkvElementVisitException;
@@ -13,6 +13,11 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.mkv;
 
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+
+import java.util.Collection;
+import java.util.Optional;
+
 /**
  * Base visitor for visiting the different types of elements vended by a {\link StreamingMkvReader}.
  */
@@ -23,7 +28,25 @@ public abstract class MkvElementVisitor {
 
     public abstract void visit(MkvDataElement dataElement) throws MkvElementVisitException;
 
+    /**
+     * Visit a chunk of a data element that is delivered in chunks by a reader with a chunk threshold.
+     * Visitors that are not interested in the content of such large elements do not need to override this.
+     */
+    public void visit(MkvDataChunk dataChunk) throws MkvElementVisitException {
+    }
+
     public boolean isDone() {
         return false;
     }
+
+    /**
+     * Get the types of the elements that this visitor needs to visit.
+     * A {@link com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor} only calls a child visitor
+     * for elements of these types. A master element type covers both the start and the end of the master element.
+     * The types must not change, a composite visitor reads them once, before it visits the first element.
+     * @return The types to visit, or an empty Optional if the visitor needs all elements, which is the default.
+     */
+    public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,91 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Low level handler for the events of a {@link MkvEventParser}.
+ * Unlike a {@link MkvElementVisitor}, the handler gets the ids and values of elements as primitives, without any
+ * element, metadata or path objects being created for them. Elements are identified by their EBML id,
+ * which can be compared with the ids in {@link com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos}.
+ *
+ * The ByteBuffers passed to the handler are only valid during the call, their content is overwritten afterwards.
+ * All the methods do nothing by default, so a handler only needs to implement the events it is interested in.
+ */
+public interface MkvEventHandler {
+    /**
+     * Checked before each non-master element. The content of elements that are not needed is skipped.
+     * @param id The id of the element.
+     * @return true if the value of the element should be passed to the handler.
+     */
+    default boolean shouldRead(int id) {
+        return true;
+    }
+
+    /**
+     * @param id The id of the master element.
+     * @param size The size of the content of the master element, which can be the unknown length value.
+     * @param depth The number of master elements that contain the master element.
+     */
+    default void onMasterStart(int id, long size, int depth) {
+    }
+
+    default void onMasterEnd(int id, int depth) {
+    }
+
+    default void onSigned(int id, long value) {
+    }
+
+    /**
+     * @param id The id of the element.
+     * @param value The value, which is negative for 8 byte values that do not fit in a signed long.
+     */
+    default void onUnsigned(int id, long value) {
+    }
+
+    default void onFloat(int id, double value) {
+    }
+
+    /**
+     * @param id The id of the element.
+     * @param value The raw bytes of the string between position and limit, ASCII or UTF-8 depending on the element.
+     */
+    default void onString(int id, ByteBuffer value) {
+    }
+
+    /**
+     * @param id The id of the element.
+     * @param nanosSinceMillennium The date in nanoseconds since 2001-01-01T00:00:00 UTC.
+     */
+    default void onDate(int id, long nanosSinceMillennium) {
+    }
+
+    /**
+     * Called for binary elements other than SimpleBlocks.
+     * @param id The id of the element.
+     * @param value The content of the element between position and limit.
+     */
+    default void onBinary(int id, ByteBuffer value) {
+    }
+
+    /**
+     * @param trackNumber The track number of the frame.
+     * @param timecode The timecode of the frame, relative to the timecode of its cluster.
+     * @param flags The flags byte, with the key frame, invisible, lacing and discardable flags.
+     * @param payload The frame data between position and limit.
+     */
+    default void onSimpleBlock(long trackNumber, short timecode, int flags, ByteBuffer payload) {
+    }
+}
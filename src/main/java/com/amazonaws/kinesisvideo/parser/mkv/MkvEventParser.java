@@ -0,0 +1,203 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLParser;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLParserCallbacks;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLUtils;
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.ebml.ParserBulkByteSource;
+import com.amazonaws.kinesisvideo.parser.ebml.ParserByteSource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class parses an mkv stream and passes its elements to a {@link MkvEventHandler} as primitive values.
+ * It runs the {@link EBMLParser} in the mode where it recycles its elements, and does not create any
+ * {@link MkvElement}s, so it is suited for consumers for which throughput matters more than convenience.
+ *
+ * The content of a data element is passed as a view of the byte source when it is resident in the byte source,
+ * otherwise it is copied into a buffer that is reused for every element.
+ * Like a {@link StreamingMkvReader}, the parser can either pull data from a byte source or have data fed to it.
+ */
+@Slf4j
+public class MkvEventParser {
+    private static final int INITIAL_CONTENT_BUFFER_SIZE = 8192;
+    private static final int SIMPLE_BLOCK_ID = MkvTypeInfos.SIMPLEBLOCK.getId();
+
+    private final MkvEventHandler handler;
+    private final EBMLParser parser;
+    private ByteBuffer contentBuffer = ByteBuffer.allocate(INITIAL_CONTENT_BUFFER_SIZE);
+    private ByteBuffer residentContent;
+    private int depth;
+
+    public MkvEventParser(MkvEventHandler handler) {
+        Validate.notNull(handler, "handler");
+        this.handler = handler;
+        //Pass all the available content of an element at once, so that resident elements are not split.
+        this.parser = new EBMLParser(new MkvTypeInfoProvider(), new Callbacks(), Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Parse the data that is available in the byte source.
+     * @param byteSource The byte source.
+     * @return true if more data might be available, false once the byte source has been completely parsed.
+     */
+    public boolean parse(ParserByteSource byteSource) {
+        if (parser.isClosed()) {
+            return false;
+        }
+        if (byteSource.eof()) {
+            parser.closeParser();
+            return false;
+        }
+        parser.parse(byteSource);
+        return !parser.isClosed();
+    }
+
+    /**
+     * Parse all of the byte source.
+     * @param byteSource The byte source.
+     */
+    public void parseAll(ParserByteSource byteSource) {
+        while (parse(byteSource)) {
+            log.debug("Parsing more of the byte source");
+        }
+    }
+
+    /**
+     * Push a chunk of the mkv stream into the parser. All the bytes in the chunk are consumed.
+     * @param chunk The chunk of the mkv stream.
+     */
+    public void feed(ByteBuffer chunk) {
+        parser.feed(chunk);
+    }
+
+    /**
+     * Signal that all of the mkv stream has been fed to the parser.
+     */
+    public void endOfInput() {
+        parser.endOfInput();
+    }
+
+    private void dispatchContent(EBMLTypeInfo typeInfo, ByteBuffer content) {
+        int id = typeInfo.getId();
+        int size = content.remaining();
+        switch (typeInfo.getType()) {
+            case INTEGER:
+                handler.onSigned(id, EBMLUtils.readDataSignedInteger(content, size));
+                break;
+            case UINTEGER:
+                handler.onUnsigned(id, readUnsigned(content, size));
+                break;
+            case FLOAT:
+                if (size == Float.BYTES) {
+                    handler.onFloat(id, content.getFloat());
+                } else if (size == Double.BYTES) {
+                    handler.onFloat(id, content.getDouble());
+                } else {
+                    Validate.isTrue(size == 0, "Invalid size for float type %d", size);
+                    handler.onFloat(id, 0.0);
+                }
+                break;
+            case STRING:
+            case UTF_8:
+                handler.onString(id, content);
+                break;
+            case DATE:
+                handler.onDate(id, EBMLUtils.readDataSignedInteger(content, size));
+                break;
+            case BINARY:
+                if (id == SIMPLE_BLOCK_ID) {
+                    long trackNumber = EBMLUtils.readEbmlInt(content);
+                    short timecode = content.getShort();
+                    int flags = content.get() & 0xFF;
+                    handler.onSimpleBlock(trackNumber, timecode, flags, content);
+                } else {
+                    handler.onBinary(id, content);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot have value for ebml element type " + typeInfo.getType());
+        }
+    }
+
+    private static long readUnsigned(ByteBuffer content, int size) {
+        Validate.isTrue(size <= Long.BYTES, "Invalid size for unsigned integer %d", size);
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << Byte.SIZE) | (content.get() & 0xFF);
+        }
+        return value;
+    }
+
+    private class Callbacks implements EBMLParserCallbacks {
+        @Override
+        public void onStartElement(EBMLElementMetaData elementMetaData,
+                long elementDataSize,
+                ByteBuffer idAndSizeRawBytes,
+                ElementPathSupplier pathSupplier) {
+            if (elementMetaData.isMaster()) {
+                handler.onMasterStart(elementMetaData.getTypeInfo().getId(), elementDataSize, depth);
+                depth++;
+            } else {
+                if (elementDataSize > contentBuffer.capacity()) {
+                    contentBuffer = ByteBuffer.allocate((int) elementDataSize);
+                }
+                contentBuffer.clear();
+                contentBuffer.limit((int) elementDataSize);
+                residentContent = null;
+            }
+        }
+
+        @Override
+        public void onPartialContent(EBMLElementMetaData elementMetaData,
+                ParserBulkByteSource bulkByteSource,
+                int bytesToRead) {
+            if (elementMetaData.isMaster()) {
+                return;
+            }
+            if (contentBuffer.position() == 0 && bytesToRead == contentBuffer.limit()) {
+                residentContent = bulkByteSource.readResidentBytes(bytesToRead);
+                if (residentContent != null) {
+                    return;
+                }
+            }
+            bulkByteSource.readBytes(contentBuffer, bytesToRead);
+        }
+
+        @Override
+        public void onEndElement(EBMLElementMetaData elementMetaData, ElementPathSupplier pathSupplier) {
+            if (elementMetaData.isMaster()) {
+                depth--;
+                handler.onMasterEnd(elementMetaData.getTypeInfo().getId(), depth);
+            } else if (residentContent != null) {
+                dispatchContent(elementMetaData.getTypeInfo(), residentContent);
+                residentContent = null;
+            } else {
+                contentBuffer.flip();
+                dispatchContent(elementMetaData.getTypeInfo(), contentBuffer);
+            }
+        }
+
+        @Override
+        public boolean shouldReadElement(EBMLTypeInfo typeInfo) {
+            return handler.shouldRead(typeInfo.getId());
+        }
+    }
+}
@@ -14,16 +14,19 @@ See the License for the specific language governing permissions and limitations
 package com.amazonaws.kinesisvideo.parser.mkv;
 
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementPath;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLParserCallbacks;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
 import com.amazonaws.kinesisvideo.parser.ebml.ParserBulkByteSource;
+import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
@@ -32,6 +35,17 @@ import java.util.function.Predicate;
 
 /**
  * EBML parser callback used by the MKVStream reader
+ * In zero copy mode, the content of a data element that is completely resident in the memory of the byte source
+ * is not copied into the read buffer. The data element gets a read only view of the byte source instead.
+ * When a buffer pool is provided, the content of each data element is read into its own pooled buffer instead of
+ * the shared read buffer.
+ * Data elements larger than the chunk threshold are not assembled in the read buffer. Each part of their content
+ * is returned as a {@link MkvDataChunk} as soon as it has been read.
+ * When a frame header filter is provided, the header of each SimpleBlock is passed to it as soon as it has been read.
+ * The rest of a SimpleBlock rejected by the filter is skipped without being read and no data element is returned.
+ * The read buffer grows to fit the largest data element and shrinks back once large elements stop occurring.
+ * Up to maxElementsToReturn elements are collected before the parser is stopped. Parsing always stops after an
+ * element whose data is in the read buffer or the byte source window, since the next element would overwrite it.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -43,10 +57,21 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
 
     private final boolean shouldStoreElementPaths;
     private final Predicate<EBMLTypeInfo> elementFilter;
+    private final boolean zeroCopy;
+    private final MkvBufferPool bufferPool;
+    private final long chunkThreshold;
+    private final Predicate<Frame> frameHeaderFilter;
 
     //TODO: make this dynamic
     private static final int MAX_BUFFER_SIZE = 1_000_000;
+    //Number of consecutive data elements that fit in the default read buffer size, before it is shrunk back to it.
+    private static final int SMALL_ELEMENTS_BEFORE_SHRINKING = 1000;
     ByteBuffer readBuffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
+    private int smallElementsSinceResize;
+    @Setter(AccessLevel.PACKAGE)
+    private int maxElementsToReturn = 1;
+    //True if an element to return refers to the read buffer or the byte source window.
+    private boolean sharedBufferToReturn;
 
 
     @Override
@@ -62,12 +87,32 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
                     .elementPath(getPath(pathSupplier))
                     .dataSize(elementDataSize)
                     .idAndSizeRawBytes(idAndSizeRawBytes).build());
-        } else {
-            if (elementDataSize > readBuffer.capacity()) {
-                int sizeToAllocate = ((int )Math.ceil((double )elementDataSize/MAX_BUFFER_SIZE))*MAX_BUFFER_SIZE;
-                log.debug("Resizing readBuffer to {}", sizeToAllocate);
-                readBuffer = ByteBuffer.allocate(sizeToAllocate);
+        } else if (bufferPool != null) {
+            if (elementFilter.test(elementMetaData.getTypeInfo())) {
+                log.debug("Data Element to start building {} data size {} in pooled buffer",
+                        elementMetaData,
+                        elementDataSize);
+                CurrentMkvDataElementInfo dataElementInfo = new CurrentMkvDataElementInfo(elementMetaData,
+                        elementDataSize,
+                        getPath(pathSupplier),
+                        idAndSizeRawBytes);
+                dataElementInfo.pooledBuffer = bufferPool.acquire((int) elementDataSize);
+                currentMkvDataElementInfo = Optional.of(dataElementInfo);
+            }
+        } else if (elementDataSize > chunkThreshold) {
+            if (elementFilter.test(elementMetaData.getTypeInfo())) {
+                log.debug("Data Element to start delivering in chunks {} data size {} ",
+                        elementMetaData,
+                        elementDataSize);
+                CurrentMkvDataElementInfo dataElementInfo = new CurrentMkvDataElementInfo(elementMetaData,
+                        elementDataSize,
+                        getPath(pathSupplier),
+                        idAndSizeRawBytes);
+                dataElementInfo.chunked = true;
+                currentMkvDataElementInfo = Optional.of(dataElementInfo);
             }
+        } else {
+            ensureReadBufferCapacity(elementDataSize);
             readBuffer.clear();
 
             if (elementFilter.test(elementMetaData.getTypeInfo())) {
@@ -79,23 +124,42 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
                         idAndSizeRawBytes));
             }
         }
+
+        if (frameHeaderFilter != null && currentMkvDataElementInfo.isPresent()
+                && MkvTypeInfos.SIMPLEBLOCK.equals(elementMetaData.getTypeInfo())) {
+            currentMkvDataElementInfo.get().frameHeaderPending = true;
+        }
+    }
+
+    private void ensureReadBufferCapacity(long elementDataSize) {
+        if (elementDataSize > readBuffer.capacity()) {
+            int sizeToAllocate = ((int )Math.ceil((double )elementDataSize/MAX_BUFFER_SIZE))*MAX_BUFFER_SIZE;
+            log.debug("Resizing readBuffer to {}", sizeToAllocate);
+            readBuffer = ByteBuffer.allocate(sizeToAllocate);
+            smallElementsSinceResize = 0;
+        } else if (elementDataSize > MAX_BUFFER_SIZE) {
+            smallElementsSinceResize = 0;
+        } else if (readBuffer.capacity() > MAX_BUFFER_SIZE
+                && ++smallElementsSinceResize >= SMALL_ELEMENTS_BEFORE_SHRINKING) {
+            log.debug("Shrinking readBuffer back to {}", MAX_BUFFER_SIZE);
+            readBuffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
+            smallElementsSinceResize = 0;
+        }
     }
 
     private List<EBMLElementMetaData> getPath(ElementPathSupplier pathSupplier) {
-        List<EBMLElementMetaData> elementPath;
         if (shouldStoreElementPaths) {
-            elementPath = pathSupplier.getAncestors();
-        } else {
-            elementPath = new ArrayList<>();
+            //The path is shared with the other elements that have the same parent, it is not copied.
+            return pathSupplier.retainAncestors();
         }
-        return elementPath;
+        return EBMLElementPath.empty();
     }
 
     @Override
     public void onPartialContent(EBMLElementMetaData elementMetaData,
             ParserBulkByteSource bulkByteSource,
             int bytesToRead) {
-        Validate.isTrue(elementsToReturn.isEmpty());
+        Validate.isTrue(!sharedBufferToReturn);
         if (elementFilter.test(elementMetaData.getTypeInfo())) {
             Validate.isTrue(currentMkvDataElementInfo.isPresent());
             currentMkvDataElementInfo.get().validateExpectedElement(elementMetaData);
@@ -103,6 +167,35 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
         }
 
         if(!elementMetaData.isMaster()) {
+            if (currentMkvDataElementInfo.isPresent()) {
+                CurrentMkvDataElementInfo dataElementInfo = currentMkvDataElementInfo.get();
+                if (dataElementInfo.frameHeaderPending) {
+                    bytesToRead -= readFrameHeader(dataElementInfo, bulkByteSource, bytesToRead);
+                }
+                if (dataElementInfo.rejected) {
+                    skipRejectedContent(dataElementInfo, bulkByteSource);
+                    return;
+                }
+                if (bytesToRead == 0) {
+                    return;
+                }
+            }
+            if (currentMkvDataElementInfo.isPresent() && currentMkvDataElementInfo.get().chunked) {
+                addDataChunkToReturn(currentMkvDataElementInfo.get(), bulkByteSource, bytesToRead);
+                return;
+            }
+            if (currentMkvDataElementInfo.isPresent() && currentMkvDataElementInfo.get().pooledBuffer != null) {
+                bulkByteSource.readBytes(currentMkvDataElementInfo.get().pooledBuffer.getBuffer(), bytesToRead);
+                return;
+            }
+            if (zeroCopy && currentMkvDataElementInfo.isPresent() && readBuffer.position() == 0
+                    && bytesToRead == currentMkvDataElementInfo.get().dataSize) {
+                ByteBuffer residentData = bulkByteSource.readResidentBytes(bytesToRead);
+                if (residentData != null) {
+                    currentMkvDataElementInfo.get().residentData = residentData;
+                    return;
+                }
+            }
             bulkByteSource.readBytes(readBuffer, bytesToRead);
         }
     }
@@ -119,9 +212,29 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
         } else {
             if (elementFilter.test(elementMetaData.getTypeInfo())) {
                 Validate.isTrue(currentMkvDataElementInfo.isPresent());
-                log.debug("Data Element to return {} data size {} ", elementMetaData, readBuffer.position());
-                readBuffer.flip();
-                addMkvElementToReturn(currentMkvDataElementInfo.get().build(readBuffer));
+                CurrentMkvDataElementInfo dataElementInfo = currentMkvDataElementInfo.get();
+                if (dataElementInfo.rejected) {
+                    log.debug("Data Element {} rejected by the frame header filter", elementMetaData);
+                } else if (dataElementInfo.chunked) {
+                    //All the chunks have already been returned.
+                    log.debug("Data Element {} delivered in chunks is complete", elementMetaData);
+                } else if (dataElementInfo.residentData != null) {
+                    log.debug("Data Element to return {} without copy data size {} ",
+                            elementMetaData,
+                            dataElementInfo.residentData.limit());
+                    addSharedBufferElementToReturn(dataElementInfo.build(dataElementInfo.residentData));
+                } else if (dataElementInfo.pooledBuffer != null) {
+                    ByteBuffer pooledData = dataElementInfo.pooledBuffer.getBuffer();
+                    log.debug("Data Element to return {} in pooled buffer data size {} ",
+                            elementMetaData,
+                            pooledData.position());
+                    pooledData.flip();
+                    addMkvElementToReturn(dataElementInfo.build(pooledData));
+                } else {
+                    log.debug("Data Element to return {} data size {} ", elementMetaData, readBuffer.position());
+                    readBuffer.flip();
+                    addSharedBufferElementToReturn(dataElementInfo.build(readBuffer));
+                }
                 currentMkvDataElementInfo = Optional.empty();
             }
         }
@@ -130,7 +243,13 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
 
     @Override
     public boolean continueParsing() {
-        return elementsToReturn.isEmpty();
+        return !sharedBufferToReturn && elementsToReturn.size() < maxElementsToReturn;
+    }
+
+    @Override
+    public boolean shouldReadElement(EBMLTypeInfo typeInfo) {
+        //Data elements rejected by the filter are skipped by the parser, so their content is never copied.
+        return elementFilter.test(typeInfo);
     }
 
     boolean hasElementsToReturn() {
@@ -138,22 +257,111 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
     }
 
     public Optional<MkvElement> getMkvElementIfAvailable() {
+        return Optional.ofNullable(pollMkvElement());
+    }
+
+    MkvElement pollMkvElement() {
+        MkvElement element = elementsToReturn.poll();
         if (elementsToReturn.isEmpty()) {
-            return Optional.empty();
+            sharedBufferToReturn = false;
+        }
+        return element;
+    }
+
+    private void addDataChunkToReturn(CurrentMkvDataElementInfo dataElementInfo,
+            ParserBulkByteSource bulkByteSource,
+            int bytesToRead) {
+        ensureReadBufferCapacity(bytesToRead);
+        readBuffer.clear();
+        bulkByteSource.readBytes(readBuffer, bytesToRead);
+        readBuffer.flip();
+        log.debug("Data chunk to return {} chunk offset {} chunk size {} ",
+                dataElementInfo.elementMetadata,
+                dataElementInfo.contentBytesRead,
+                readBuffer.limit());
+        addSharedBufferElementToReturn(MkvDataChunk.builder()
+                .elementMetaData(dataElementInfo.elementMetadata)
+                .elementPath(dataElementInfo.elementPath)
+                .idAndSizeRawBytes(dataElementInfo.idAndSizeRawBytes)
+                .dataSize(dataElementInfo.dataSize)
+                .chunkOffset(dataElementInfo.contentBytesRead)
+                .chunkBuffer(readBuffer)
+                .build());
+        dataElementInfo.contentBytesRead += readBuffer.limit();
+    }
+
+    private int readFrameHeader(CurrentMkvDataElementInfo dataElementInfo,
+            ParserBulkByteSource bulkByteSource,
+            int bytesToRead) {
+        ByteBuffer destination = dataElementInfo.pooledBuffer != null ?
+                dataElementInfo.pooledBuffer.getBuffer() : readBuffer;
+        int bytesRead = 0;
+        while (dataElementInfo.frameHeaderPending && bytesRead < bytesToRead) {
+            int bytesForHeader = Math.min(getFrameHeaderBytesNeeded(destination), bytesToRead - bytesRead);
+            int readBytes = bulkByteSource.readBytes(destination, bytesForHeader);
+            if (readBytes <= 0) {
+                break;
+            }
+            bytesRead += readBytes;
+            if (getFrameHeaderBytesNeeded(destination) == 0) {
+                ByteBuffer header = destination.duplicate();
+                header.flip();
+                dataElementInfo.frameHeaderPending = false;
+                dataElementInfo.rejected = !frameHeaderFilter.test(Frame.headerOnly(header));
+            }
+        }
+        dataElementInfo.contentBytesRead += bytesRead;
+        if (dataElementInfo.rejected && dataElementInfo.pooledBuffer != null) {
+            dataElementInfo.pooledBuffer.release();
+            dataElementInfo.pooledBuffer = null;
+        }
+        return bytesRead;
+    }
+
+    private static int getFrameHeaderBytesNeeded(ByteBuffer destination) {
+        if (destination.position() == 0) {
+            return 1;
+        }
+        return Frame.getHeaderSize(destination.get(0)) - destination.position();
+    }
+
+    private void skipRejectedContent(CurrentMkvDataElementInfo dataElementInfo,
+            ParserBulkByteSource bulkByteSource) {
+        //Skip all the remaining content, a seekable byte source can jump over it without reading it.
+        long bytesToSkip = dataElementInfo.dataSize - dataElementInfo.contentBytesRead;
+        if (bytesToSkip > 0) {
+            long skippedBytes = bulkByteSource.skipBytes(bytesToSkip);
+            if (skippedBytes > 0) {
+                dataElementInfo.contentBytesRead += skippedBytes;
+            }
         }
-       return Optional.of(elementsToReturn.remove());
     }
 
     private void addMkvElementToReturn(MkvElement elementToReturn) {
         this.elementsToReturn.add(elementToReturn);
     }
 
+    private void addSharedBufferElementToReturn(MkvElement elementToReturn) {
+        addMkvElementToReturn(elementToReturn);
+        sharedBufferToReturn = true;
+    }
+
 
     private static class CurrentMkvDataElementInfo {
         private final EBMLElementMetaData elementMetadata;
         private final long dataSize;
         private final List<EBMLElementMetaData> elementPath;
         private final ByteBuffer idAndSizeRawBytes = ByteBuffer.allocate(MkvElement.MAX_ID_AND_SIZE_BYTES);
+        //View of the content in the byte source, if it was read without copying.
+        private ByteBuffer residentData;
+        //Pooled buffer that holds the content, if the reader uses a buffer pool.
+        private PooledByteBuffer pooledBuffer;
+        //Whether the content is delivered in chunks and how much of it has been delivered so far.
+        private boolean chunked;
+        private long contentBytesRead;
+        //Whether the header of a SimpleBlock still has to be passed to the frame header filter, which can reject it.
+        private boolean frameHeaderPending;
+        private boolean rejected;
 
 
         CurrentMkvDataElementInfo(EBMLElementMetaData elementMetadata,
@@ -177,6 +385,7 @@ class MkvStreamReaderCallback implements EBMLParserCallbacks{
                     .idAndSizeRawBytes(idAndSizeRawBytes)
                     .elementPath(elementPath)
                     .dataBuffer(data)
+                    .pooledBuffer(pooledBuffer)
                     .build();
         }
 
@@ -15,35 +15,87 @@ package com.amazonaws.kinesisvideo.parser.mkv;
 
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoProvider;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoSet;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoTable;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
-import org.apache.commons.lang3.Validate;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * A class to provide the type information for the EBML elements used by Mkv.
  * This type information is used by the EBML parser.
+ * The type information in {@link MkvTypeInfos} is loaded once into an immutable table that is shared by all
+ * instances of this class, so creating a provider is cheap.
  */
 public class MkvTypeInfoProvider implements EBMLTypeInfoProvider {
-    private final Map<Integer,EBMLTypeInfo> typeInfoMap = new HashMap();
+    private static final EBMLTypeInfoTable MKV_TYPE_INFO_TABLE = loadMkvTypeInfos();
 
+    /**
+     * The type information is loaded when this class is initialized.
+     * This method is retained for compatibility and does not need to be called.
+     * @throws IllegalAccessException Not thrown, retained for compatibility.
+     */
     public void load() throws IllegalAccessException {
-        for (Field field : MkvTypeInfos.class.getDeclaredFields()) {
-            if (Modifier.isStatic(field.getModifiers()) && field.getType().equals(EBMLTypeInfo.class)) {
-                EBMLTypeInfo type = (EBMLTypeInfo )field.get(null);
-                Validate.isTrue(!typeInfoMap.containsKey(type.getId()));
-                typeInfoMap.put(type.getId(), type);
-            }
-        }
     }
 
-
     @Override
     public Optional<EBMLTypeInfo> getType(int id) {
-        return Optional.ofNullable(typeInfoMap.get(id));
+        return MKV_TYPE_INFO_TABLE.getType(id);
+    }
+
+    @Override
+    public EBMLTypeInfo getTypeOrNull(int id) {
+        return MKV_TYPE_INFO_TABLE.getTypeOrNull(id);
+    }
+
+    /**
+     * Get the canonical instance of Mkv type information.
+     * @param typeInfo The type information, which may be constructed by the user.
+     * @return The equal instance from {@link MkvTypeInfos}, or typeInfo itself if there is no such instance.
+     */
+    public static EBMLTypeInfo canonical(EBMLTypeInfo typeInfo) {
+        return MKV_TYPE_INFO_TABLE.canonical(typeInfo);
+    }
+
+    /**
+     * Get the index of Mkv type information, which is less than {@link #getNumTypeInfos()}.
+     * @param typeInfo The type information, which may be constructed by the user.
+     * @return The index of the equal instance from {@link MkvTypeInfos}, or {@link EBMLTypeInfoTable#NO_INDEX} if
+     * there is no such instance.
+     */
+    public static int indexOf(EBMLTypeInfo typeInfo) {
+        return MKV_TYPE_INFO_TABLE.indexOf(typeInfo);
+    }
+
+    public static int getNumTypeInfos() {
+        return MKV_TYPE_INFO_TABLE.size();
+    }
+
+    /**
+     * Create a set of type information that is checked by the indexes of the Mkv type information.
+     * @param typeInfos The type information in the set.
+     * @return The set.
+     */
+    public static EBMLTypeInfoSet newTypeInfoSet(Collection<EBMLTypeInfo> typeInfos) {
+        return MKV_TYPE_INFO_TABLE.newSet(typeInfos);
+    }
+
+    private static EBMLTypeInfoTable loadMkvTypeInfos() {
+        List<EBMLTypeInfo> typeInfos = new ArrayList<>();
+        try {
+            for (Field field : MkvTypeInfos.class.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) && field.getType().equals(EBMLTypeInfo.class)) {
+                    typeInfos.add((EBMLTypeInfo) field.get(null));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Could not load mkv info", e);
+        }
+        return EBMLTypeInfoTable.of(typeInfos);
     }
 }
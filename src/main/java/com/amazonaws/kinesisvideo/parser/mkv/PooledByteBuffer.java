@@ -0,0 +1,82 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.apache.commons.lang3.Validate;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted buffer that is acquired from a {@link MkvBufferPool}.
+ * A buffer starts with one reference. Each holder that wants to keep the buffer calls retain and then release
+ * once it is done. The buffer goes back to the pool when the last reference is released,
+ * after which its content must not be accessed anymore.
+ * Buffers can be retained and released from different threads.
+ */
+public final class PooledByteBuffer {
+    private final MkvBufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    @Setter(AccessLevel.PACKAGE)
+    private MkvBufferPool.BufferTracker tracker;
+
+    PooledByteBuffer(MkvBufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Get the underlying buffer. Its capacity may be larger than the size it was acquired with.
+     * @return The buffer.
+     */
+    public ByteBuffer getBuffer() {
+        Validate.validState(refCount.get() > 0, "Cannot access a buffer that has been released");
+        return buffer;
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Add a reference to the buffer.
+     * @return This buffer.
+     */
+    public PooledByteBuffer retain() {
+        while (true) {
+            int currentRefCount = refCount.get();
+            Validate.validState(currentRefCount > 0, "Cannot retain a buffer that has been released");
+            if (refCount.compareAndSet(currentRefCount, currentRefCount + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Remove a reference to the buffer. The buffer is returned to the pool when the last reference is removed.
+     * @return true if this was the last reference and the buffer was returned to the pool.
+     */
+    public boolean release() {
+        int newRefCount = refCount.decrementAndGet();
+        Validate.validState(newRefCount >= 0, "Buffer released more times than it was retained");
+        if (newRefCount == 0) {
+            pool.recycle(tracker);
+            return true;
+        }
+        return false;
+    }
+}
@@ -13,18 +13,25 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.mkv;
 
+import com.amazonaws.kinesisvideo.parser.ebml.BufferedParserByteSource;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLParser;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLParserCheckpoint;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoSet;
+import com.amazonaws.kinesisvideo.parser.ebml.MappedFileParserByteSource;
 import com.amazonaws.kinesisvideo.parser.ebml.ParserByteSource;
+import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
-import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -44,15 +51,48 @@ import java.util.function.Predicate;
  * can only be accessed before nextIfAvailable is called again. To retain the value of the MkvDataElement for later use
  * call getValueCopy() on it. It copies the raw bytes and interprets it based on the type of the MkvDataElement.
  *
+ * The behavior of a reader created with a {@link Configuration} can be changed as follows:
+ *
+ * A zero copy reader does not copy the content of a data element if it is completely resident in the
+ * window of a buffered byte source, such as a {@link MappedFileParserByteSource} or a ByteBufferParserByteSource.
+ * The data buffer is then a read only view of the byte source, which is also only valid until nextIfAvailable is
+ * called again. To keep the data buffer valid after that call retain() on the MkvDataElement.
+ *
+ * A reader with a buffer pool reads the content of each data element into a reference counted buffer
+ * from a {@link MkvBufferPool}. The reader releases its reference when nextIfAvailable is called again, so a consumer
+ * that hands data elements over to other threads calls retain() on them and release() once it is done with them.
+ *
+ * A reader with a chunk threshold returns data elements larger than the threshold as a sequence
+ * of {@link MkvDataChunk}s instead of a single {@link MkvDataElement}, so that the memory used by the reader does not
+ * depend on the size of the largest element. Each chunk buffer is only valid until nextIfAvailable is called again.
+ *
+ * A reader with a frame header filter passes the header of each SimpleBlock to the filter as soon as it
+ * has been read, as a {@link Frame} without frame data. The rest of a SimpleBlock rejected by the filter is skipped
+ * instead of being read and no MkvDataElement is returned for it.
+ *
+ * A reader created with createForFeeding does not pull data from a byte source. Instead the mkv stream is pushed into
+ * it as a sequence of ByteBuffers using feed, which never blocks and applies a visitor to the elements as they
+ * become available.
+ *
+ * Between elements, the state of a reader can be saved with checkpoint. A new reader over a byte source positioned
+ * at the offset of the checkpoint continues from it after resumeFrom is called, without reading the stream again
+ * from the start of the fragment.
+ *
  */
 @Slf4j
 public class StreamingMkvReader {
+    //Maximum number of elements parsed in one pass by apply and feed.
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
     private final boolean requirePath;
-    private final Set<EBMLTypeInfo> typeInfosToRead;
+    private final EBMLTypeInfoSet typeInfosToRead;
     private final ParserByteSource byteSource;
     private final EBMLParser parser;
     private final MkvStreamReaderCallback mkvStreamReaderCallback;
-    private Optional<MkvDataElement> previousDataElement;
+    private final MkvBufferPool bufferPool;
+    //Data elements returned since the last call to nextIfAvailable or nextBatch, their data buffers are cleared by the
+    //next call.
+    private final List<MkvDataElement> returnedDataElements = new ArrayList<>();
 
 
     StreamingMkvReader(boolean requirePath,
@@ -65,27 +105,105 @@ public class StreamingMkvReader {
             Collection<EBMLTypeInfo> typeInfosToRead,
             ParserByteSource byteSource,
             OptionalInt maxContentBytesAtOnce) {
-        this.requirePath = requirePath;
-        typeInfosToRead.stream().forEach(t -> Validate.isTrue(t.getType() != EBMLTypeInfo.TYPE.MASTER));
-        this.typeInfosToRead = new HashSet(typeInfosToRead);
+        this(byteSource, Configuration.builder()
+                .requirePath(requirePath)
+                .typeInfosToRead(typeInfosToRead)
+                .maxContentBytesAtOnce(maxContentBytesAtOnce)
+                .build());
+    }
+
+    private StreamingMkvReader(ParserByteSource byteSource, Configuration configuration) {
+        configuration.validate();
+        this.requirePath = configuration.requirePath;
+        this.typeInfosToRead = MkvTypeInfoProvider.newTypeInfoSet(configuration.typeInfosToRead);
 
         this.byteSource = byteSource;
-        this.mkvStreamReaderCallback = new MkvStreamReaderCallback(this.requirePath, elementFilter());
-        this.previousDataElement = Optional.empty();
+        this.mkvStreamReaderCallback = new MkvStreamReaderCallback(this.requirePath, elementFilter(),
+                configuration.zeroCopy,
+                configuration.bufferPool,
+                configuration.chunkThreshold.isPresent() ? configuration.chunkThreshold.getAsInt() : Long.MAX_VALUE,
+                configuration.frameHeaderFilter);
+        this.bufferPool = configuration.bufferPool;
         MkvTypeInfoProvider typeInfoProvider = new MkvTypeInfoProvider();
-        try {
-            typeInfoProvider.load();
-        } catch (IllegalAccessException e) {
-            //TODO: fix this
-            throw new RuntimeException("Could not load mkv info", e);
-        }
-        if (maxContentBytesAtOnce.isPresent()) {
-            this.parser = new EBMLParser(typeInfoProvider, mkvStreamReaderCallback, maxContentBytesAtOnce.getAsInt());
+        if (configuration.maxContentBytesAtOnce.isPresent()) {
+            this.parser = new EBMLParser(typeInfoProvider,
+                    mkvStreamReaderCallback,
+                    configuration.maxContentBytesAtOnce.getAsInt());
+        } else if (configuration.zeroCopy) {
+            //Pass all the available content of an element at once, so that resident elements are not split.
+            this.parser = new EBMLParser(typeInfoProvider, mkvStreamReaderCallback, Integer.MAX_VALUE);
         } else {
             this.parser = new EBMLParser(typeInfoProvider, mkvStreamReaderCallback);
         }
     }
 
+    /**
+     * Configuration options for modifying the behavior of the {@link StreamingMkvReader}.
+     * Zero copy, the buffer pool and chunked delivery are mutually exclusive, and a frame header filter cannot be
+     * combined with zero copy or chunked delivery.
+     */
+    @Builder
+    public static class Configuration {
+        /**
+         * When true, the reader checks that each element is found at a valid path in the mkv hierarchy.
+         */
+        @Builder.Default
+        private final boolean requirePath = true;
+
+        /**
+         * The non master elements whose content is read, all of them if empty.
+         * Master elements are always returned.
+         */
+        @Builder.Default
+        private final Collection<EBMLTypeInfo> typeInfosToRead = new ArrayList<>();
+
+        /**
+         * The maximum number of content bytes the parser passes to the reader at once.
+         */
+        @Builder.Default
+        private final OptionalInt maxContentBytesAtOnce = OptionalInt.empty();
+
+        /**
+         * When true, the content of a data element that is completely resident in the window of a
+         * {@link BufferedParserByteSource} is not copied. The data buffer is a read only view of the byte source.
+         */
+        @Builder.Default
+        private final boolean zeroCopy = false;
+
+        /**
+         * When set, the content of each data element is read into a reference counted buffer from this pool, which
+         * can be shared between readers. Data elements that are retained remain valid until they are released.
+         */
+        private final MkvBufferPool bufferPool;
+
+        /**
+         * When set, data elements larger than this size are returned as a sequence of {@link MkvDataChunk}s.
+         */
+        @Builder.Default
+        private final OptionalInt chunkThreshold = OptionalInt.empty();
+
+        /**
+         * When set, this filter gets a {@link Frame} without frame data for the header of each SimpleBlock.
+         * SimpleBlocks for which it returns false are skipped. The filter runs while the SimpleBlock is parsed,
+         * which can be ahead of the elements returned so far, so it should only use the fields of the frame header.
+         */
+        private final Predicate<Frame> frameHeaderFilter;
+
+        private void validate() {
+            Validate.notNull(typeInfosToRead, "typeInfosToRead");
+            typeInfosToRead.stream().forEach(t -> Validate.isTrue(t.getType() != EBMLTypeInfo.TYPE.MASTER));
+            Validate.notNull(maxContentBytesAtOnce, "maxContentBytesAtOnce");
+            Validate.notNull(chunkThreshold, "chunkThreshold");
+            Validate.isTrue(!chunkThreshold.isPresent() || chunkThreshold.getAsInt() >= 0,
+                    "Chunk threshold cannot be negative");
+            Validate.isTrue(frameHeaderFilter == null || (!zeroCopy && !chunkThreshold.isPresent()),
+                    "A reader with a frame header filter cannot be zero copy or use chunked delivery");
+            Validate.isTrue(!zeroCopy || bufferPool == null, "A zero copy reader cannot use a buffer pool");
+            Validate.isTrue(!chunkThreshold.isPresent() || (!zeroCopy && bufferPool == null),
+                    "A reader with chunked delivery cannot be zero copy or use a buffer pool");
+        }
+    }
+
     public static StreamingMkvReader createDefault(ParserByteSource byteSource) {
         return new StreamingMkvReader(true, new ArrayList<>(), byteSource, OptionalInt.empty());
     }
@@ -94,7 +212,61 @@ public class StreamingMkvReader {
         return new StreamingMkvReader(true, new ArrayList<>(), byteSource, OptionalInt.of(maxContentBytesAtOnce));
     }
 
+    /**
+     * Create a reader with the options in a {@link Configuration}.
+     * @param byteSource The byte source, which should be a {@link BufferedParserByteSource} for zero copy readers.
+     * @param configuration The configuration of the reader.
+     * @return A StreamingMkvReader.
+     */
+    public static StreamingMkvReader create(ParserByteSource byteSource, Configuration configuration) {
+        Validate.notNull(configuration, "configuration");
+        return new StreamingMkvReader(byteSource, configuration);
+    }
+
+    /**
+     * Create a reader for a local mkv file. The file is memory mapped using a {@link MappedFileParserByteSource}
+     * instead of being read through an input stream.
+     * @param mkvFile The path of the mkv file.
+     * @return A StreamingMkvReader for the file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static StreamingMkvReader createForFile(Path mkvFile) throws IOException {
+        return createDefault(new MappedFileParserByteSource(mkvFile));
+    }
+
+    /**
+     * Create a reader that does not have a byte source, the mkv stream is pushed into it using feed.
+     * @return A StreamingMkvReader to feed the mkv stream into.
+     */
+    public static StreamingMkvReader createForFeeding() {
+        return new StreamingMkvReader(true, new ArrayList<>(), null, OptionalInt.empty());
+    }
+
+    /**
+     * Save the state of the reader, if all the elements that it has parsed have been returned and it is not in the
+     * middle of an element.
+     * @return The checkpoint, or empty if no checkpoint can be taken right now.
+     */
+    public Optional<EBMLParserCheckpoint> checkpoint() {
+        if (mkvStreamReaderCallback.hasElementsToReturn()) {
+            return Optional.empty();
+        }
+        return parser.checkpoint();
+    }
+
+    /**
+     * Make a new reader continue from a checkpoint of another reader.
+     * The byte source of this reader, or the chunks fed to it, must start at the offset of the checkpoint.
+     * @param checkpoint The checkpoint.
+     * @return This reader.
+     */
+    public StreamingMkvReader resumeFrom(EBMLParserCheckpoint checkpoint) {
+        parser.restore(checkpoint);
+        return this;
+    }
+
     public boolean mightHaveNext() {
+        Validate.notNull(byteSource, "Readers created for feeding do not have a byte source");
         if (mkvStreamReaderCallback.hasElementsToReturn()) {
             log.debug("ReaderCallback has elements to return ");
             return true;
@@ -112,59 +284,158 @@ public class StreamingMkvReader {
         log.debug("No more elements to process byteSource.eof {} parser.isClosed {} ",
                 byteSource.eof(),
                 parser.isClosed());
+        releasePooledDataElements();
         return false;
     }
 
     public Optional<MkvElement> nextIfAvailable() {
+        Validate.notNull(byteSource, "Readers created for feeding do not have a byte source");
         if (mkvStreamReaderCallback.hasElementsToReturn()) {
             if (log.isDebugEnabled()) {
                 log.debug("ReaderCallback has elements to return. Return element from it.");
             }
-            return getMkvElementToReturn();
+            return Optional.ofNullable(pollMkvElementToReturn());
         }
-        parser.parse(byteSource);
-        return getMkvElementToReturn();
+        parse(1);
+        return Optional.ofNullable(pollMkvElementToReturn());
+    }
+
+    /**
+     * Get the next available elements, parsing up to maxElements of them in a single pass of the parser.
+     * The elements in a batch are valid until the next call to nextBatch or nextIfAvailable, which clears the data
+     * buffers of the data elements in the batch.
+     * A pass stops early after a data element whose data is in the read buffer shared by the data elements or in the
+     * window of the byte source, so only readers created with a buffer pool return several data elements per batch.
+     *
+     * @param sink The list the elements are added to.
+     * @param maxElements The maximum number of elements to add.
+     * @return The number of elements added, which is 0 if no elements are available yet.
+     */
+    public int nextBatch(List<MkvElement> sink, int maxElements) {
+        Validate.notNull(byteSource, "Readers created for feeding do not have a byte source");
+        Validate.isTrue(maxElements > 0, "The maximum number of elements %d should be positive", maxElements);
+        clearReturnedDataElements();
+        if (!mkvStreamReaderCallback.hasElementsToReturn()) {
+            parse(maxElements);
+        }
+        int numElements = 0;
+        while (numElements < maxElements) {
+            MkvElement element = mkvStreamReaderCallback.pollMkvElement();
+            if (element == null) {
+                break;
+            }
+            trackReturnedElement(element);
+            sink.add(element);
+            numElements++;
+        }
+        return numElements;
     }
 
     /**
      * Method to apply a visitor in a loop to all the elements returns by a StreamingMkvReader.
-     * This method polls for the next available element in a tight loop.
+     * This method polls for the next available elements in a tight loop, parsing up to a batch of them in each pass.
      * It might not be suitable in cases where the user wants to interleave some other activity between polling.
+     * Elements that are not visited because the visitor is done are returned by the following calls.
      *
      * @param visitor The visitor to apply.
      * @throws MkvElementVisitException If the visitor fails.
      */
     public void apply(MkvElementVisitor visitor) throws MkvElementVisitException {
         while (this.mightHaveNext() && !visitor.isDone()) {
-            Optional<MkvElement> mkvElementOptional = this.nextIfAvailable();
-            if (mkvElementOptional.isPresent()) {
-                mkvElementOptional.get().accept(visitor);
+            if (!mkvStreamReaderCallback.hasElementsToReturn()) {
+                parse(DEFAULT_BATCH_SIZE);
+            }
+            MkvElement mkvElement = pollMkvElementToReturn();
+            while (mkvElement != null) {
+                mkvElement.accept(visitor);
+                mkvElement = visitor.isDone() ? null : pollMkvElementToReturn();
             }
         }
     }
 
+    /**
+     * Push a chunk of the mkv stream into the reader and apply a visitor to the elements that become available.
+     * The call never blocks, and all the bytes in the chunk are consumed unless the visitor is done.
+     * As with nextIfAvailable, the data buffer of a data element can only be accessed while it is being visited.
+     * As with apply, the reader stops once the visitor is done. The elements that were parsed but not visited are
+     * visited by the following call to feed or endOfInput, and the bytes that were not parsed are left in the chunk,
+     * past its position, so that they can be fed again.
+     *
+     * @param chunk The chunk of the mkv stream.
+     * @param visitor The visitor to apply.
+     * @throws MkvElementVisitException If the visitor fails.
+     */
+    public void feed(ByteBuffer chunk, MkvElementVisitor visitor) throws MkvElementVisitException {
+        mkvStreamReaderCallback.setMaxElementsToReturn(DEFAULT_BATCH_SIZE);
+        visitAvailableElements(visitor);
+        while (chunk.hasRemaining() && !visitor.isDone()) {
+            parser.feed(chunk);
+            visitAvailableElements(visitor);
+        }
+    }
+
+    /**
+     * Signal that all of the mkv stream has been fed to the reader and apply a visitor to the remaining elements.
+     * The remaining elements are not visited once the visitor is done.
+     *
+     * @param visitor The visitor to apply.
+     * @throws MkvElementVisitException If the visitor fails.
+     */
+    public void endOfInput(MkvElementVisitor visitor) throws MkvElementVisitException {
+        parser.endOfInput();
+        visitAvailableElements(visitor);
+        releasePooledDataElements();
+    }
+
+    private void parse(int maxElements) {
+        mkvStreamReaderCallback.setMaxElementsToReturn(maxElements);
+        parser.parse(byteSource);
+    }
 
-    private Optional<MkvElement> getMkvElementToReturn() {
-        Optional<MkvElement> currentElement = mkvStreamReaderCallback.getMkvElementIfAvailable();
+    private void visitAvailableElements(MkvElementVisitor visitor) throws MkvElementVisitException {
+        MkvElement mkvElement = visitor.isDone() ? null : pollMkvElementToReturn();
+        while (mkvElement != null) {
+            mkvElement.accept(visitor);
+            mkvElement = visitor.isDone() ? null : pollMkvElementToReturn();
+        }
+    }
+
+    private MkvElement pollMkvElementToReturn() {
+        MkvElement currentElement = mkvStreamReaderCallback.pollMkvElement();
 
         //Null out the data buffer of the previous data element before returning the next element.
         //We do this because the same data buffer gets reused for consecutive data elements and we
         //do not want users to mistakenly reuse data buffers on cached data elements.
         //They should use the getValueCopy to retain the data.
-        if (currentElement.isPresent()) {
-            if (previousDataElement.isPresent()) {
-                previousDataElement.get().clearDataBuffer();
-                previousDataElement = Optional.empty();
-            }
-            if (!currentElement.get().isMaster()) {
-                previousDataElement = Optional.of((MkvDataElement) currentElement.get());
-            }
+        if (currentElement != null) {
+            clearReturnedDataElements();
+            trackReturnedElement(currentElement);
         }
         return currentElement;
     }
 
+    private void trackReturnedElement(MkvElement element) {
+        if (element instanceof MkvDataElement) {
+            returnedDataElements.add((MkvDataElement) element);
+        }
+    }
+
+    private void clearReturnedDataElements() {
+        for (int i = 0; i < returnedDataElements.size(); i++) {
+            returnedDataElements.get(i).clearDataBuffer();
+        }
+        returnedDataElements.clear();
+    }
+
+    private void releasePooledDataElements() {
+        //No more elements will be returned, so release the references to the pooled buffers of the last data elements.
+        if (bufferPool != null) {
+            clearReturnedDataElements();
+        }
+    }
+
     private Predicate<EBMLTypeInfo> elementFilter() {
-        if (typeInfosToRead.size() == 0) {
+        if (typeInfosToRead.isEmpty()) {
             return (t) -> t.getType() != EBMLTypeInfo.TYPE.MASTER;
         } else {
             return typeInfosToRead::contains;
@@ -13,28 +13,44 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.mkv.visitors;
 
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoTable;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvDataChunk;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvTypeInfoProvider;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Class represents a composite visitor made out of multiple visitors.
- *
+ * Child visitors that declare the element types they need through getElementTypesToVisit are only called for
+ * elements of those types. The children to call for each element type are looked up by the index of the element
+ * type in the Mkv type info table, see {@link MkvTypeInfoProvider#indexOf(EBMLTypeInfo)}, in a dispatch table that is
+ * built when the first element is visited, and that keeps the order of the children.
+ * The declared types of each child are read once, when the table is built, so they must not change.
+ * Subclasses can add children to childVisitors in their constructor, but children added or removed after that must go
+ * through addChildVisitor and removeChildVisitor so that the dispatch table is rebuilt.
+ * isDone asks the children every time it is called, so that a child that is done because of external state, such
+ * as a stop flag or a deadline, is seen even while no elements are visited.
  */
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 @Slf4j
 public class CompositeMkvElementVisitor extends MkvElementVisitor {
     protected final List<MkvElementVisitor> childVisitors;
 
+    private DispatchTable dispatchTable;
+
     public CompositeMkvElementVisitor(MkvElementVisitor... visitors){
         childVisitors = new ArrayList<>();
         for (MkvElementVisitor visitor : visitors) {
@@ -57,13 +73,61 @@ public class CompositeMkvElementVisitor extends MkvElementVisitor {
         visitAll(dataElement);
     }
 
+    @Override
+    public void visit(MkvDataChunk dataChunk) throws MkvElementVisitException {
+        visitAll(dataChunk);
+    }
+
     @Override
     public boolean isDone() {
-        return childVisitors.stream().anyMatch(MkvElementVisitor::isDone);
+        for (int i = 0; i < childVisitors.size(); i++) {
+            if (childVisitors.get(i).isDone()) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void visitAll(MkvElement element) throws MkvElementVisitException {
+    /**
+     * A composite visitor needs the element types of its children, if all of them declare the types they need.
+     */
+    @Override
+    public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+        List<EBMLTypeInfo> typesToVisit = new ArrayList<>();
         for (MkvElementVisitor childVisitor : childVisitors) {
+            Optional<Collection<EBMLTypeInfo>> childTypesToVisit = childVisitor.getElementTypesToVisit();
+            if (!childTypesToVisit.isPresent()) {
+                return Optional.empty();
+            }
+            typesToVisit.addAll(childTypesToVisit.get());
+        }
+        return Optional.of(typesToVisit);
+    }
+
+    /**
+     * Add a child visitor after the last one.
+     * @param childVisitor The child visitor to add.
+     */
+    protected void addChildVisitor(MkvElementVisitor childVisitor) {
+        childVisitors.add(childVisitor);
+        dispatchTable = null;
+    }
+
+    /**
+     * Remove a child visitor.
+     * @param childVisitor The child visitor to remove.
+     * @return true if the child visitor was removed.
+     */
+    protected boolean removeChildVisitor(MkvElementVisitor childVisitor) {
+        dispatchTable = null;
+        return childVisitors.remove(childVisitor);
+    }
+
+    private void visitAll(MkvElement element) throws MkvElementVisitException {
+        if (dispatchTable == null) {
+            dispatchTable = new DispatchTable(childVisitors);
+        }
+        for (MkvElementVisitor childVisitor : dispatchTable.getVisitors(element.getElementMetaData().getTypeInfo())) {
             if (log.isDebugEnabled()) {
                 log.debug("Composite visitor calling {} on element {}",
                         childVisitor.getClass().toString(),
@@ -72,4 +136,58 @@ public class CompositeMkvElementVisitor extends MkvElementVisitor {
             element.accept(childVisitor);
         }
     }
+
+    /**
+     * Table from the indexes of the Mkv element types to the child visitors that need the elements of that type.
+     * Element types that no child declares go to the child visitors that need all elements. The child visitors for
+     * element types that are not Mkv types are found from the declared types of the children.
+     */
+    private static final class DispatchTable {
+        private final List<MkvElementVisitor> childVisitors;
+        private final List<Optional<Collection<EBMLTypeInfo>>> childTypesToVisit = new ArrayList<>();
+        private final MkvElementVisitor[] visitorsForAllTypes;
+        private final MkvElementVisitor[][] visitorsByIndex;
+
+        DispatchTable(List<MkvElementVisitor> childVisitors) {
+            this.childVisitors = new ArrayList<>(childVisitors);
+            for (MkvElementVisitor childVisitor : childVisitors) {
+                childTypesToVisit.add(childVisitor.getElementTypesToVisit());
+            }
+            visitorsForAllTypes = visitorsFor(null);
+
+            visitorsByIndex = new MkvElementVisitor[MkvTypeInfoProvider.getNumTypeInfos()][];
+            for (Optional<Collection<EBMLTypeInfo>> typesToVisit : childTypesToVisit) {
+                if (typesToVisit.isPresent()) {
+                    for (EBMLTypeInfo typeInfo : typesToVisit.get()) {
+                        int index = MkvTypeInfoProvider.indexOf(typeInfo);
+                        if (index != EBMLTypeInfoTable.NO_INDEX && visitorsByIndex[index] == null) {
+                            visitorsByIndex[index] = visitorsFor(typeInfo);
+                        }
+                    }
+                }
+            }
+        }
+
+        MkvElementVisitor[] getVisitors(EBMLTypeInfo typeInfo) {
+            int index = MkvTypeInfoProvider.indexOf(typeInfo);
+            if (index != EBMLTypeInfoTable.NO_INDEX) {
+                MkvElementVisitor[] visitors = visitorsByIndex[index];
+                return visitors != null ? visitors : visitorsForAllTypes;
+            }
+            //Types from other type info providers are rare, so the visitors for them are not cached.
+            return visitorsFor(typeInfo);
+        }
+
+        //Get the child visitors that need the elements of a type, or those that need all elements if it is null.
+        private MkvElementVisitor[] visitorsFor(EBMLTypeInfo typeInfo) {
+            List<MkvElementVisitor> visitors = new ArrayList<>();
+            for (int i = 0; i < childVisitors.size(); i++) {
+                Optional<Collection<EBMLTypeInfo>> typesToVisit = childTypesToVisit.get(i);
+                if (!typesToVisit.isPresent() || (typeInfo != null && typesToVisit.get().contains(typeInfo))) {
+                    visitors.add(childVisitors.get(i));
+                }
+            }
+            return visitors.toArray(new MkvElementVisitor[0]);
+        }
+    }
 }
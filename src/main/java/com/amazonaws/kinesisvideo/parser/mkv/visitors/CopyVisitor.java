@@ -13,6 +13,7 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.mkv.visitors;
 
+import com.amazonaws.kinesisvideo.parser.mkv.MkvDataChunk;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
@@ -33,6 +34,7 @@ import java.nio.channels.WritableByteChannel;
  *
  * For start master elements, it copies the element header, namely its id and size.
  * For data elements, it copies the element header as well as the data bytes.
+ * For data chunks, it copies the element header with the first chunk as well as the data bytes of each chunk.
  * For end master elements, there are no raw bytes to copy.
  */
 public class CopyVisitor extends MkvElementVisitor implements Closeable {
@@ -56,6 +58,11 @@ public class CopyVisitor extends MkvElementVisitor implements Closeable {
         dataElement.writeToChannel(outputChannel);
     }
 
+    @Override
+    public void visit(MkvDataChunk dataChunk) throws MkvElementVisitException {
+        dataChunk.writeToChannel(outputChannel);
+    }
+
     @Override
     public void close() throws IOException {
         outputChannel.close();
@@ -14,37 +14,59 @@ See the License for the specific language governing permissions and limitations
 package com.amazonaws.kinesisvideo.parser.mkv.visitors;
 
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoTable;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvTypeInfoProvider;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * A visitor used to count elements of a particular type
+ * A visitor used to count elements of a particular type.
+ * Counts for the Mkv types are kept in arrays keyed by their index in the Mkv type info table, see
+ * {@link MkvTypeInfoProvider#indexOf(EBMLTypeInfo)}, so counting an element does not hash its type info.
  */
 @Slf4j
 public class CountVisitor extends MkvElementVisitor {
     private final Set<EBMLTypeInfo> typesToCount = new HashSet<>();
+    private final BitSet indexesToCount = new BitSet();
+    private final int[] typeCountByIndex = new int[MkvTypeInfoProvider.getNumTypeInfos()];
+    private final int[] endMasterCountByIndex = new int[MkvTypeInfoProvider.getNumTypeInfos()];
+    //Counts for the types to count that are not Mkv types.
     private final Map<EBMLTypeInfo, Integer> typeCount = new HashMap<>();
     private final Map<EBMLTypeInfo, Integer> endMasterCount = new HashMap<>();
 
     public CountVisitor(Collection<EBMLTypeInfo> typesToCount) {
         this.typesToCount.addAll(typesToCount);
-        this.typesToCount.stream().forEach(t -> typeCount.put(t, 0));
-        this.typesToCount.stream()
-                .filter(t -> t.getType().equals(EBMLTypeInfo.TYPE.MASTER))
-                .forEach(t -> endMasterCount.put(t, 0));
+        for (EBMLTypeInfo typeToCount : this.typesToCount) {
+            int index = MkvTypeInfoProvider.indexOf(typeToCount);
+            if (index != EBMLTypeInfoTable.NO_INDEX) {
+                indexesToCount.set(index);
+            } else {
+                typeCount.put(typeToCount, 0);
+                if (typeToCount.getType().equals(EBMLTypeInfo.TYPE.MASTER)) {
+                    endMasterCount.put(typeToCount, 0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+        return Optional.of(typesToCount);
     }
 
     public static CountVisitor create(EBMLTypeInfo... typesToCount) {
@@ -62,7 +84,7 @@ public class CountVisitor extends MkvElementVisitor {
 
     @Override
     public void visit(MkvEndMasterElement endMasterElement) {
-        incrementCount(endMasterElement, endMasterCount);
+        incrementCount(endMasterElement, endMasterCountByIndex, endMasterCount);
     }
 
     @Override
@@ -71,29 +93,51 @@ public class CountVisitor extends MkvElementVisitor {
     }
 
     public int getCount(EBMLTypeInfo typeInfo) {
-        return typeCount.getOrDefault(typeInfo, 0);
+        return getCount(typeInfo, typeCountByIndex, typeCount);
     }
 
     public boolean doEndAndStartMasterElementsMatch() {
-        List<EBMLTypeInfo> mismatchedStartAndEnd = typeCount.entrySet().stream().filter(e -> e.getKey().getType().equals(EBMLTypeInfo.TYPE.MASTER)).filter(e -> typeCount.get(e.getKey()) != endMasterCount.get(e.getKey())).map(Map.Entry::getKey).collect(
-                 Collectors.toList());
+        List<EBMLTypeInfo> mismatchedStartAndEnd = typesToCount.stream()
+                .filter(t -> t.getType().equals(EBMLTypeInfo.TYPE.MASTER))
+                .filter(t -> getCount(t) != getEndCount(t))
+                .collect(Collectors.toList());
         if (!mismatchedStartAndEnd.isEmpty()) {
             log.warn(" Some end and master element counts did not match: ");
-            mismatchedStartAndEnd.stream().forEach(t -> log.warn("Element {} start count {} end count {}", t, typeCount.get(t), endMasterCount.get(t)));
+            mismatchedStartAndEnd.stream().forEach(t -> log.warn("Element {} start count {} end count {}", t, getCount(t), getEndCount(t)));
             return false;
         }
         return true;
     }
 
+    private int getEndCount(EBMLTypeInfo typeInfo) {
+        return getCount(typeInfo, endMasterCountByIndex, endMasterCount);
+    }
+
+    private int getCount(EBMLTypeInfo typeInfo, int[] countByIndex, Map<EBMLTypeInfo, Integer> countByTypeInfo) {
+        int index = MkvTypeInfoProvider.indexOf(typeInfo);
+        if (index != EBMLTypeInfoTable.NO_INDEX && indexesToCount.get(index)) {
+            return countByIndex[index];
+        }
+        return countByTypeInfo.getOrDefault(typeInfo, 0);
+    }
+
     private void incrementTypeCount(MkvElement mkvElement) {
-        incrementCount(mkvElement, typeCount);
+        incrementCount(mkvElement, typeCountByIndex, typeCount);
     }
 
-    private void incrementCount(MkvElement mkvElement, Map<EBMLTypeInfo, Integer> mapToUpdate) {
-        if (typesToCount.contains(mkvElement.getElementMetaData().getTypeInfo())) {
+    private void incrementCount(MkvElement mkvElement,
+            int[] countByIndexToUpdate,
+            Map<EBMLTypeInfo, Integer> countByTypeInfoToUpdate) {
+        EBMLTypeInfo typeInfo = mkvElement.getElementMetaData().getTypeInfo();
+        int index = MkvTypeInfoProvider.indexOf(typeInfo);
+        if (index != EBMLTypeInfoTable.NO_INDEX) {
+            if (indexesToCount.get(index)) {
+                log.debug("Element {} to Count found", mkvElement);
+                countByIndexToUpdate[index]++;
+            }
+        } else if (countByTypeInfoToUpdate.containsKey(typeInfo)) {
             log.debug("Element {} to Count found", mkvElement);
-            int oldValue = mapToUpdate.get(mkvElement.getElementMetaData().getTypeInfo());
-            mapToUpdate.put(mkvElement.getElementMetaData().getTypeInfo(), oldValue + 1);
+            countByTypeInfoToUpdate.merge(typeInfo, 1, Integer::sum);
         }
     }
 }
@@ -26,7 +26,6 @@ import lombok.RequiredArgsConstructor;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.math.BigInteger;
 
 /**
  * It logs the offsets and element sizes to a writer.
@@ -87,9 +86,8 @@ public class ElementSizeAndOffsetVisitor extends MkvElementVisitor {
             MkvValue<String> tagName= dataElement.getValueCopy();
             buildAndWrite(createStringBuilderWithOffset(dataElement).append("Tag Name :").append(tagName.getVal()));
         } else if (MkvTypeInfos.TIMECODE.equals(dataElement.getElementMetaData().getTypeInfo())) {
-            MkvValue<BigInteger> timeCode = dataElement.getValueCopy();
             buildAndWrite(createStringBuilderWithOffset(dataElement).append("TimeCode :")
-                    .append(timeCode.getVal().toString()));
+                    .append(dataElement.getUnsignedLong()));
         }
     }
 
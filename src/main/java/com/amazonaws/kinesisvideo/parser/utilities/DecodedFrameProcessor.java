@@ -0,0 +1,42 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+
+import java.awt.image.BufferedImage;
+import java.util.Optional;
+
+/**
+ * Processor for frames decoded to images by one of the H264 decoders, such as {@link ParallelH264FrameDecoder} or
+ * {@link SampledH264FrameDecoder}. Whether the image can be kept after process returns depends on the decoder.
+ *
+ * A decoder may hold frames back until it sees the following frames. Its flush method is the end of stream call
+ * that passes these frames to the decoded frame processor and reports failures as a FrameProcessException.
+ * Its close method, which FrameVisitor.close calls, only releases the resources of the decoder. Frames that have
+ * not been flushed are dropped with a warning, so call flush before closing to get the tail of the stream.
+ */
+public interface DecodedFrameProcessor {
+    /**
+     * Process a decoded frame.
+     * @param frame The frame.
+     * @param trackMetadata The metadata of the track of the frame.
+     * @param fragmentMetadata The metadata of the fragment of the frame.
+     * @param image The decoded image.
+     * @throws FrameProcessException If processing the frame failed.
+     */
+    void process(Frame frame, MkvTrackMetadata trackMetadata, Optional<FragmentMetadata> fragmentMetadata,
+                 BufferedImage image) throws FrameProcessException;
+}
@@ -15,6 +15,7 @@ package com.amazonaws.kinesisvideo.parser.utilities;
 
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfoSet;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElement;
@@ -22,8 +23,10 @@ import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvTypeInfoProvider;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvValue;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.google.common.collect.ImmutableList;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.NotImplementedException;
@@ -32,13 +35,13 @@ import org.apache.commons.lang3.Validate;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalLong;
-import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -59,10 +62,16 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
             MkvTypeInfos.CODECID,
             MkvTypeInfos.CODECNAME,
             MkvTypeInfos.CODECPRIVATE,
+            MkvTypeInfos.DEFAULTDURATION,
             MkvTypeInfos.PIXELWIDTH,
             MkvTypeInfos.PIXELHEIGHT
     };
     private static final String AWS_KINESISVIDEO_TAGNAME_PREFIX = "AWS_KINESISVIDEO";
+    private static final Collection<EBMLTypeInfo> STATE_MACHINE_ELEMENT_TYPES = ImmutableList.of(MkvTypeInfos.SEGMENT,
+            MkvTypeInfos.CLUSTER,
+            MkvTypeInfos.TAGS,
+            MkvTypeInfos.TAGNAME,
+            MkvTypeInfos.TAGSTRING);
 
     public interface MkvTagProcessor {
         default void process(MkvTag mkvTag, Optional<FragmentMetadata> currentFragmentMetadata) {
@@ -79,7 +88,7 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
 
     private final Optional<MkvTagProcessor> mkvTagProcessor;
 
-    private final Set<EBMLTypeInfo> trackTypesForTrackMetadata = new HashSet();
+    private final EBMLTypeInfoSet trackTypesForTrackMetadata = MkvTypeInfoProvider.newTypeInfoSet(Arrays.asList(TRACK_TYPES));
 
     @Getter
     private Optional<FragmentMetadata> previousFragmentMetadata = Optional.empty();
@@ -106,11 +115,8 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
         this.tagCollector = tagCollector;
         this.trackCollector = trackCollector;
         this.stateMachineVisitor = new StateMachineVisitor();
-        this.childVisitors.add(stateMachineVisitor);
+        addChildVisitor(stateMachineVisitor);
         this.mkvTagProcessor = mkvTagProcessor;
-        for (EBMLTypeInfo trackType : TRACK_TYPES) {
-            this.trackTypesForTrackMetadata.add(trackType);
-        }
     }
 
     public static FragmentMetadataVisitor create() {
@@ -131,18 +137,23 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
     private class StateMachineVisitor extends MkvElementVisitor {
         State state = State.NEW;
 
+        @Override
+        public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+            return Optional.of(STATE_MACHINE_ELEMENT_TYPES);
+        }
+
         @Override
         public void visit(MkvStartMasterElement startMasterElement) throws MkvElementVisitException {
             switch (state) {
                 case NEW:
-                    if (MkvTypeInfos.SEGMENT.equals(startMasterElement.getElementMetaData().getTypeInfo())) {
+                    if (startMasterElement.isType(MkvTypeInfos.SEGMENT)) {
                         log.debug("Segment start {} changing state to PRE_CLUSTER", startMasterElement);
                         resetCollectedData();
                         state = State.PRE_CLUSTER;
                     }
                     break;
                 case PRE_CLUSTER:
-                    if (MkvTypeInfos.CLUSTER.equals(startMasterElement.getElementMetaData().getTypeInfo())) {
+                    if (startMasterElement.isType(MkvTypeInfos.CLUSTER)) {
                         log.debug("Cluster start {} changing state to IN_CLUSTER", startMasterElement);
                         collectPreClusterInfo();
                         state = State.IN_CLUSTER;
@@ -157,18 +168,18 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
         public void visit(MkvEndMasterElement endMasterElement) throws MkvElementVisitException {
             switch (state) {
                 case IN_CLUSTER:
-                    if (MkvTypeInfos.CLUSTER.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+                    if (endMasterElement.isType(MkvTypeInfos.CLUSTER)) {
                         state = State.POST_CLUSTER;
                     }
                     break;
                 case POST_CLUSTER:
-                    if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+                    if (endMasterElement.isType(MkvTypeInfos.SEGMENT)) {
                         log.debug("Segment end {} changing state to NEW", endMasterElement);
                         state = State.NEW;
                     }
                     break;
                 case PRE_CLUSTER:
-                    if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+                    if (endMasterElement.isType(MkvTypeInfos.SEGMENT)) {
                         log.warn("Segment end {} while in PRE_CLUSTER. Collecting cluster info", endMasterElement);
                         collectPreClusterInfo();
                     }
@@ -178,7 +189,7 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
             }
             // If any tags section finishes, try to update the millisbehind latest and continuation token
             // since there can be multiple in the same segment.
-            if (MkvTypeInfos.TAGS.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+            if (endMasterElement.isType(MkvTypeInfos.TAGS)) {
                 if (log.isDebugEnabled()) {
                     log.debug("TAGS end {}, potentially updating millisbehindlatest and continuation token",
                             endMasterElement);
@@ -190,9 +201,9 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
         @Override
         public void visit(MkvDataElement dataElement) throws MkvElementVisitException {
             if (mkvTagProcessor.isPresent()) {
-                if (MkvTypeInfos.TAGNAME.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                if (dataElement.isType(MkvTypeInfos.TAGNAME)) {
                     tagName = getMkvElementStringVal(dataElement);
-                } else if (MkvTypeInfos.TAGSTRING.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                } else if (dataElement.isType(MkvTypeInfos.TAGSTRING)) {
                     tagValue = getMkvElementStringVal(dataElement);
                 }
 
@@ -279,6 +290,7 @@ public class FragmentMetadataVisitor extends CompositeMkvElementVisitor {
                 .codecId(getStringVal(metaDataProperties, MkvTypeInfos.CODECID))
                 .codecName(getStringVal(metaDataProperties, MkvTypeInfos.CODECNAME))
                 .codecPrivateData(getByteBuffer(metaDataProperties, MkvTypeInfos.CODECPRIVATE))
+                .defaultDuration(getUnsignedLongValOptional(metaDataProperties, MkvTypeInfos.DEFAULTDURATION))
                 .pixelWidth(getUnsignedLongValOptional(metaDataProperties, MkvTypeInfos.PIXELWIDTH))
                 .pixelHeight(getUnsignedLongValOptional(metaDataProperties, MkvTypeInfos.PIXELHEIGHT))
                 .samplingFrequency(getFloatingPointValOptional(metaDataProperties, MkvTypeInfos.SAMPLINGFREQUENCY))
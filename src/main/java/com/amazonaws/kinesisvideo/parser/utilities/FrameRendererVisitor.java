@@ -60,7 +60,7 @@ public class FrameRendererVisitor extends CompositeMkvElementVisitor {
         this.kinesisVideoFrameViewer = kinesisVideoFrameViewer;
         this.kinesisVideoFrameViewer.setVisible(true);
         this.frameVisitorInternal = new FrameVisitorInternal();
-        this.childVisitors.add(this.frameVisitorInternal);
+        addChildVisitor(this.frameVisitorInternal);
     }
 
     public static FrameRendererVisitor create(final KinesisVideoFrameViewer kinesisVideoFrameViewer) {
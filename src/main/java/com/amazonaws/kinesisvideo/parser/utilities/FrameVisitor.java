@@ -13,39 +13,69 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.utilities;
 
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
 import com.amazonaws.kinesisvideo.parser.mkv.Frame;
 import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvValue;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.google.common.collect.ImmutableList;
+import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.Validate;
 
 import java.math.BigInteger;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.function.Predicate;
 
+/**
+ * A visitor that passes the frames in SimpleBlocks to a {@link FrameProcessor}, with the metadata of their track
+ * and fragment.
+ * By default each frame gets a copy of the frame data. A visitor created with createZeroCopy passes frames whose
+ * frame data is a read only view of the data buffer of the SimpleBlock instead. Such a frame is only valid until
+ * process returns, a frame processor that keeps it should keep the result of {@link Frame#retain()}.
+ * A visitor configured to split laces passes each frame laced in a SimpleBlock as a separate frame, see
+ * {@link Configuration}.
+ */
 @Slf4j
 public class FrameVisitor extends CompositeMkvElementVisitor {
+    //Default TimecodeScale of a segment, in nanoseconds.
+    private static final long DEFAULT_TIMESCALE_NANOS = 1_000_000L;
+    private static final Collection<EBMLTypeInfo> FRAME_ELEMENT_TYPES = ImmutableList.of(MkvTypeInfos.CLUSTER,
+            MkvTypeInfos.TIMECODESCALE,
+            MkvTypeInfos.TIMECODE,
+            MkvTypeInfos.SIMPLEBLOCK);
+
     private final FragmentMetadataVisitor fragmentMetadataVisitor;
     private final FrameVisitorInternal frameVisitorInternal;
     private final FrameProcessor frameProcessor;
     private final Optional<Long> trackNumber;
     private final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor;
+    private final Configuration configuration;
     private Optional<BigInteger> timescale;
     private Optional<BigInteger> fragmentTimecode;
 
     private FrameVisitor(final FragmentMetadataVisitor fragmentMetadataVisitor,
                          final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
                          final FrameProcessor frameProcessor, final Optional<Long> trackNumber) {
+        this(fragmentMetadataVisitor, tagProcessor, frameProcessor, trackNumber, Configuration.builder().build());
+    }
+
+    private FrameVisitor(final FragmentMetadataVisitor fragmentMetadataVisitor,
+                         final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                         final FrameProcessor frameProcessor, final Optional<Long> trackNumber,
+                         final Configuration configuration) {
         super(fragmentMetadataVisitor);
         this.fragmentMetadataVisitor = fragmentMetadataVisitor;
         this.frameVisitorInternal = new FrameVisitorInternal();
-        this.childVisitors.add(this.frameVisitorInternal);
+        addChildVisitor(this.frameVisitorInternal);
         this.frameProcessor = frameProcessor;
         this.tagProcessor = tagProcessor;
         this.trackNumber = trackNumber;
+        this.configuration = configuration;
         this.timescale = Optional.empty();
         this.fragmentTimecode = Optional.empty();
     }
@@ -67,10 +97,68 @@ public class FrameVisitor extends CompositeMkvElementVisitor {
                 tagProcessor, frameProcessor, trackNumber);
     }
 
+    /**
+     * Create a visitor that does not copy the frame data of the frames passed to the frame processor.
+     * The frames are only valid until process returns, call {@link Frame#retain()} to keep a frame.
+     * @param frameProcessor The frame processor.
+     * @param tagProcessor The tag processor.
+     * @param trackNumber The track number of the frames to process, or empty to process the frames of all tracks.
+     * @return A FrameVisitor that passes read only views of the frame data to the frame processor.
+     */
+    public static FrameVisitor createZeroCopy(final FrameProcessor frameProcessor,
+                                              final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                                              final Optional<Long> trackNumber) {
+        return create(frameProcessor, tagProcessor, trackNumber, Configuration.builder().zeroCopy(true).build());
+    }
+
+    public static FrameVisitor create(final FrameProcessor frameProcessor,
+                                      final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                                      final Optional<Long> trackNumber,
+                                      final Configuration configuration) {
+        return new FrameVisitor(FragmentMetadataVisitor.create(tagProcessor),
+                tagProcessor, frameProcessor, trackNumber, configuration);
+    }
+
+    /**
+     * Configuration options for modifying the behavior of the {@link FrameVisitor}.
+     */
+    @Builder
+    public static class Configuration {
+        /**
+         * When true, the frame data of the frames passed to the frame processor is a read only view of the data
+         * buffer of the SimpleBlock instead of a copy. The frames are only valid until process returns.
+         */
+        @Builder.Default
+        private final boolean zeroCopy = false;
+
+        /**
+         * When true, each frame laced in a SimpleBlock is passed to the frame processor as a separate frame without
+         * lacing. The frame data of a laced frame is a slice of the frame data of the SimpleBlock. The timecode of
+         * each laced frame after the first is derived from the default duration of its track, if the track has one.
+         */
+        @Builder.Default
+        private final boolean splitLaces = false;
+    }
+
     public void close() {
         frameProcessor.close();
     }
 
+    /**
+     * Get a frame header filter for StreamingMkvReader.Configuration, which lets the frame processor reject frames
+     * from their header before their frame data is read. Frames from other tracks than the track number of this
+     * visitor are rejected too.
+     * The filter runs inside the parser, before the elements that precede the frame have been visited, so it only
+     * uses the fields of the frame header and not the track or fragment metadata of this visitor.
+     * @return The frame header filter.
+     */
+    public Predicate<Frame> getFrameHeaderFilter() {
+        return frameHeader -> {
+            final long frameTrackNo = frameHeader.getTrackNumber();
+            return trackNumber.orElse(frameTrackNo) == frameTrackNo && frameProcessor.shouldProcess(frameHeader);
+        };
+    }
+
     public interface FrameProcessor extends AutoCloseable {
         default void process(final Frame frame, final MkvTrackMetadata trackMetadata,
                              final Optional<FragmentMetadata> fragmentMetadata) throws FrameProcessException {
@@ -96,6 +184,18 @@ public class FrameVisitor extends CompositeMkvElementVisitor {
             process(frame, trackMetadata, fragmentMetadata, tagProcessor);
         }
 
+        /**
+         * Decide from the header of a frame whether it should be processed, before its frame data is read.
+         * This is only called when the frame header filter of the FrameVisitor is used by the StreamingMkvReader.
+         * It is called while the frame is being parsed, ahead of the visitors, so the decision can only depend on
+         * the fields of the frame header such as the track number, the timecode and the key frame flag.
+         * @param frameHeader The frame, without frame data.
+         * @return false to skip the frame.
+         */
+        default boolean shouldProcess(final Frame frameHeader) {
+            return true;
+        }
+
         @Override
         default void close() {
             //No op close. Derived classes should implement this method to meaningfully handle cleanup of the
@@ -104,6 +204,11 @@ public class FrameVisitor extends CompositeMkvElementVisitor {
     }
 
     private class FrameVisitorInternal extends MkvElementVisitor {
+        @Override
+        public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+            return Optional.of(FRAME_ELEMENT_TYPES);
+        }
+
         @Override
         public void visit(final com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement startMasterElement)
                 throws com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException {
@@ -113,7 +218,7 @@ public class FrameVisitor extends CompositeMkvElementVisitor {
         public void visit(final com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement endMasterElement)
                 throws com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException {
             if (tagProcessor.isPresent()
-                    && MkvTypeInfos.CLUSTER.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+                    && endMasterElement.isType(MkvTypeInfos.CLUSTER)) {
                 tagProcessor.get().clear();
             }
         }
@@ -122,27 +227,56 @@ public class FrameVisitor extends CompositeMkvElementVisitor {
         public void visit(final com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement dataElement)
                 throws com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException {
 
-            if (MkvTypeInfos.TIMECODESCALE.equals(dataElement.getElementMetaData().getTypeInfo())) {
-                timescale = Optional.of((BigInteger) dataElement.getValueCopy().getVal());
+            if (dataElement.isType(MkvTypeInfos.TIMECODESCALE)) {
+                timescale = Optional.of(BigInteger.valueOf(dataElement.getUnsignedLong()));
             }
 
-            if (MkvTypeInfos.TIMECODE.equals(dataElement.getElementMetaData().getTypeInfo())) {
-                fragmentTimecode = Optional.of((BigInteger) dataElement.getValueCopy().getVal());
+            if (dataElement.isType(MkvTypeInfos.TIMECODE)) {
+                fragmentTimecode = Optional.of(BigInteger.valueOf(dataElement.getUnsignedLong()));
             }
 
-            if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
-                final MkvValue<Frame> frame = dataElement.getValueCopy();
-                Validate.notNull(frame);
-                final long frameTrackNo = frame.getVal().getTrackNumber();
+            if (dataElement.isType(MkvTypeInfos.SIMPLEBLOCK)) {
+                final Frame frame;
+                if (configuration.zeroCopy) {
+                    frame = Frame.readOnlyView(dataElement.getDataBuffer());
+                } else {
+                    final MkvValue<Frame> frameValue = dataElement.getValueCopy();
+                    Validate.notNull(frameValue);
+                    frame = frameValue.getVal();
+                }
+                final long frameTrackNo = frame.getTrackNumber();
                 final MkvTrackMetadata trackMetadata =
                         fragmentMetadataVisitor.getMkvTrackMetadata(frameTrackNo);
 
                 if (trackNumber.orElse(frameTrackNo) == frameTrackNo) {
-                    frameProcessor.process(frame.getVal(), trackMetadata,
-                            fragmentMetadataVisitor.getCurrentFragmentMetadata(),
-                            tagProcessor, timescale, fragmentTimecode);
+                    if (configuration.splitLaces && frame.getLacing() != Frame.Lacing.NO) {
+                        processLacedFrames(frame, trackMetadata);
+                    } else {
+                        frameProcessor.process(frame, trackMetadata,
+                                fragmentMetadataVisitor.getCurrentFragmentMetadata(),
+                                tagProcessor, timescale, fragmentTimecode);
+                    }
                 }
             }
         }
+
+        private void processLacedFrames(final Frame frame, final MkvTrackMetadata trackMetadata)
+                throws FrameProcessException {
+            final long laceDurationNanos = trackMetadata == null ? 0
+                    : trackMetadata.getDefaultDuration().map(BigInteger::longValue).orElse(0L);
+            final long timescaleNanos = timescale.map(BigInteger::longValue).orElse(DEFAULT_TIMESCALE_NANOS);
+            final Frame.LaceIterator laceIterator = frame.laceIterator();
+            for (int i = 0; laceIterator.hasNext(); i++) {
+                final int laceTimeCode = frame.getTimeCode() + (int) (i * laceDurationNanos / timescaleNanos);
+                final Frame lacedFrame = frame.toBuilder()
+                        .lacing(Frame.Lacing.NO)
+                        .timeCode(laceTimeCode)
+                        .frameData(laceIterator.next())
+                        .build();
+                frameProcessor.process(lacedFrame, trackMetadata,
+                        fragmentMetadataVisitor.getCurrentFragmentMetadata(),
+                        tagProcessor, timescale, fragmentTimecode);
+            }
+        }
     }
-}
\ No newline at end of file
+}
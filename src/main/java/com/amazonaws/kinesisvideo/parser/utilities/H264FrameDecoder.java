@@ -15,6 +15,7 @@ package com.amazonaws.kinesisvideo.parser.utilities;
 
 import com.amazonaws.kinesisvideo.parser.mkv.Frame;
 import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+import lombok.Builder;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.jcodec.codecs.h264.H264Decoder;
@@ -27,6 +28,7 @@ import org.jcodec.scale.Yuv420jToRgb;
 
 import java.awt.image.BufferedImage;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,17 +36,102 @@ import static org.jcodec.codecs.h264.H264Utils.splitMOVPacket;
 
 /**
  * H264 Frame Decoder class which uses JCodec decoder to decode frames.
+ *
+ * The decoder is track aware: the SPS/PPS from the track's codec private data are only parsed and handed to the
+ * JCodec decoder when the codec private data changes, and the intermediate buffers are only reallocated when the
+ * codec private data or the resolution changes. By default decodeH264Frame returns a new {@link BufferedImage} for
+ * every frame. A decoder configured to reuse its output buffers returns the same image for every frame instead, so a
+ * caller that needs to keep an image beyond the next call must copy it. Callers that hold on to the previously
+ * returned image (for instance while it is being painted) can also make it double buffered, so that it alternates
+ * between two images, see {@link Configuration}.
+ *
+ * JCodec rewrites the NAL units of a frame in place while decoding it, so read only frame data, such as the frames
+ * of a zero copy {@link FrameVisitor}, is first copied into a scratch buffer that is reused from frame to frame.
+ *
+ * Frames can also be decoded to planar YUV with decodeH264FrameToYuv, which skips the RGB conversion altogether;
+ * the RGB buffers are then never allocated.
+ *
+ * A decoder configured with a target size scales the decoded pictures down while they are still in YUV, so the
+ * images and YUV output are at the target size and no full resolution RGB image is ever produced, see
+ * {@link Configuration}.
  */
 @Slf4j
 public class H264FrameDecoder implements FrameVisitor.FrameProcessor  {
 
-    private final H264Decoder decoder = new H264Decoder();
     private final Transform transform = new Yuv420jToRgb();
+    private final int numOutputBuffers;
+    private final Configuration configuration;
+
+    private H264Decoder decoder = new H264Decoder();
 
     @Getter
     private int frameCount;
 
     private byte[] codecPrivateData;
+    private AvcCBox avcC;
+    private ByteBuffer frameDataCopy;
+
+    private int pixelWidth;
+    private int pixelHeight;
+    @Getter
+    private int outputWidth;
+    @Getter
+    private int outputHeight;
+    private Picture yuvBuffer;
+    private Yuv420Image scaledYuv;
+    private final byte[][] swappedPlanes = new byte[3][];
+    private Picture swappedYuv;
+    private Picture[] rgbBuffers;
+    private BufferedImage[] bufferedImages;
+    private int outputBufferIndex;
+
+    public H264FrameDecoder() {
+        this(Configuration.builder().build());
+    }
+
+    public H264FrameDecoder(final Configuration configuration) {
+        this.configuration = configuration;
+        this.numOutputBuffers = configuration.reuseOutputBuffers && configuration.doubleBuffered ? 2 : 1;
+    }
+
+    /**
+     * Configuration options for modifying the behavior of the {@link H264FrameDecoder}.
+     */
+    @Builder
+    public static class Configuration {
+        /**
+         * When true, decodeH264Frame returns the same image for every frame instead of allocating a new one, so the
+         * image returned by a call is overwritten by the next call.
+         */
+        @Builder.Default
+        private final boolean reuseOutputBuffers = false;
+
+        /**
+         * When true and the output buffers are reused, consecutive calls to decodeH264Frame return alternating images
+         * so that the image returned by the previous call is not overwritten by the current one.
+         */
+        @Builder.Default
+        private final boolean doubleBuffered = false;
+
+        /**
+         * The width to scale the decoded pictures down to, or 0 to scale the width in proportion to the height.
+         * Pictures are never scaled up, so a target larger than the resolution of the track has no effect.
+         */
+        @Builder.Default
+        private final int targetWidth = 0;
+
+        /**
+         * The height to scale the decoded pictures down to, or 0 to scale the height in proportion to the width.
+         */
+        @Builder.Default
+        private final int targetHeight = 0;
+
+        /**
+         * The kernel used to scale the decoded pictures down.
+         */
+        @Builder.Default
+        private final Yuv420Image.Scaling scaling = Yuv420Image.Scaling.BOX;
+    }
 
     @Override
     public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
@@ -53,44 +140,213 @@ public class H264FrameDecoder implements FrameVisitor.FrameProcessor  {
     }
 
     public BufferedImage decodeH264Frame(final Frame frame, final MkvTrackMetadata trackMetadata) {
-        final ByteBuffer frameBuffer = frame.getFrameData();
-        final int pixelWidth = trackMetadata.getPixelWidth().get().intValue();
-        final int pixelHeight = trackMetadata.getPixelHeight().get().intValue();
-        codecPrivateData = trackMetadata.getCodecPrivateData().array();
+        final Picture pic = decodeYuv(frame, trackMetadata);
+        if (rgbBuffers == null) {
+            // Only allocated once needed, decoders used for YUV output never convert to RGB.
+            allocateRgbBuffers();
+        }
+        final BufferedImage bufferedImage = configuration.reuseOutputBuffers
+                ? bufferedImages[outputBufferIndex]
+                : new BufferedImage(outputWidth, outputHeight, BufferedImage.TYPE_3BYTE_BGR);
+
+        if (pic != null) {
+            if (isScaling()) {
+                scaleYuv(pic, scaledYuv);
+                scaledYuv.toBufferedImage(bufferedImage);
+            } else {
+                final Picture rgb = rgbBuffers[outputBufferIndex];
+                transform.transform(swapChromaPlanes(pic), rgb);
+                AWTUtil.toBufferedImage(rgb, bufferedImage);
+            }
+            outputBufferIndex = (outputBufferIndex + 1) % numOutputBuffers;
+        }
+        return bufferedImage;
+    }
+
+    /**
+     * Decode a frame without converting it to an image. This updates the state of the decoder, so it is meant for
+     * frames that later frames are predicted from but whose own image is not needed.
+     * @param frame The frame to decode.
+     * @param trackMetadata The metadata of the track of the frame.
+     * @return true if a picture was decoded from the frame.
+     */
+    public boolean decodeH264FrameWithoutImage(final Frame frame, final MkvTrackMetadata trackMetadata) {
+        return decodeYuv(frame, trackMetadata) != null;
+    }
+
+    /**
+     * Decode a frame to planar YUV 4:2:0 without converting it to RGB. Only the luma is copied into a luma only
+     * image. The image is resized to the output size of the decoder if needed, see {@link Yuv420Image#resize}.
+     * @param frame The frame to decode.
+     * @param trackMetadata The metadata of the track of the frame.
+     * @param destination The image to decode into.
+     * @return true if a picture was decoded from the frame, in which case it is in the destination image.
+     */
+    public boolean decodeH264FrameToYuv(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                        final Yuv420Image destination) {
+        final Picture pic = decodeYuv(frame, trackMetadata);
+        if (pic == null) {
+            return false;
+        }
+        if (isScaling()) {
+            scaleYuv(pic, destination);
+            return true;
+        }
+        destination.resize(pixelWidth, pixelHeight);
+        copyPlane(pic, 0, destination.getYPlane(), pixelWidth, pixelHeight);
+        if (!destination.isLumaOnly()) {
+            copyPlane(pic, 1, destination.getUPlane(), destination.getChromaWidth(), destination.getChromaHeight());
+            copyPlane(pic, 2, destination.getVPlane(), destination.getChromaWidth(), destination.getChromaHeight());
+        }
+        return true;
+    }
+
+    public ByteBuffer getCodecPrivateData() {
+        return ByteBuffer.wrap(codecPrivateData);
+    }
+
+    private Picture decodeYuv(final Frame frame, final MkvTrackMetadata trackMetadata) {
+        final ByteBuffer frameBuffer = writableFrameData(frame.getFrameData());
+        initializeIfTrackChanged(trackMetadata);
         log.debug("Decoding frames ... ");
         // Read the bytes that appear to comprise the header
         // See: https://www.matroska.org/technical/specs/index.html#simpleblock_structure
 
-        final Picture rgb = Picture.create(pixelWidth, pixelHeight, ColorSpace.RGB);
-        final BufferedImage bufferedImage = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_3BYTE_BGR);
-        final AvcCBox avcC = AvcCBox.parseAvcCBox(ByteBuffer.wrap(codecPrivateData));
-
-        decoder.addSps(avcC.getSpsList());
-        decoder.addPps(avcC.getPpsList());
-
-        final Picture buf = Picture.create(pixelWidth + ((16 - (pixelWidth % 16)) % 16),
-                pixelHeight + ((16 - (pixelHeight % 16)) % 16), ColorSpace.YUV420J);
         final List<ByteBuffer> byteBuffers = splitMOVPacket(frameBuffer, avcC);
-        final Picture pic = decoder.decodeFrameFromNals(byteBuffers, buf.getData());
-
+        final Picture pic = decoder.decodeFrameFromNals(byteBuffers, yuvBuffer.getData());
         if (pic != null) {
-            // Work around for color issues in JCodec
-            // https://github.com/jcodec/jcodec/issues/59
-            // https://github.com/jcodec/jcodec/issues/192
-            final byte[][] dataTemp = new byte[3][pic.getData().length];
-            dataTemp[0] = pic.getPlaneData(0);
-            dataTemp[1] = pic.getPlaneData(2);
-            dataTemp[2] = pic.getPlaneData(1);
-
-            final Picture tmpBuf = Picture.createPicture(pixelWidth, pixelHeight, dataTemp, ColorSpace.YUV420J);
-            transform.transform(tmpBuf, rgb);
-            AWTUtil.toBufferedImage(rgb, bufferedImage);
             frameCount++;
         }
-        return bufferedImage;
+        return pic;
     }
 
-    public ByteBuffer getCodecPrivateData() {
-        return ByteBuffer.wrap(codecPrivateData);
+    private ByteBuffer writableFrameData(final ByteBuffer frameData) {
+        // JCodec unescapes the NAL units in place, so read only frame data, such as the frames of a zero copy
+        // FrameVisitor, is copied into a scratch buffer that is reused for the following frames.
+        if (!frameData.isReadOnly()) {
+            return frameData;
+        }
+        if (frameDataCopy == null || frameDataCopy.capacity() < frameData.remaining()) {
+            frameDataCopy = ByteBuffer.allocate(frameData.remaining());
+        }
+        frameDataCopy.clear();
+        frameDataCopy.put(frameData.duplicate());
+        frameDataCopy.flip();
+        return frameDataCopy;
+    }
+
+    private void initializeIfTrackChanged(final MkvTrackMetadata trackMetadata) {
+        final byte[] trackCodecPrivateData = trackMetadata.getCodecPrivateData().array();
+        final int trackPixelWidth = trackMetadata.getPixelWidth().get().intValue();
+        final int trackPixelHeight = trackMetadata.getPixelHeight().get().intValue();
+
+        if (trackCodecPrivateData != codecPrivateData && !Arrays.equals(trackCodecPrivateData, codecPrivateData)) {
+            log.debug("Codec private data changed, reinitializing the decoder");
+            codecPrivateData = trackCodecPrivateData;
+            avcC = AvcCBox.parseAvcCBox(ByteBuffer.wrap(codecPrivateData));
+            // Reference pictures decoded with the previous parameter sets are of no use for the new ones.
+            decoder = new H264Decoder();
+            decoder.addSps(avcC.getSpsList());
+            decoder.addPps(avcC.getPpsList());
+            yuvBuffer = null;
+        }
+
+        if (yuvBuffer == null || trackPixelWidth != pixelWidth || trackPixelHeight != pixelHeight) {
+            log.debug("Allocating output buffers for resolution {}x{}", trackPixelWidth, trackPixelHeight);
+            pixelWidth = trackPixelWidth;
+            pixelHeight = trackPixelHeight;
+            yuvBuffer = Picture.create(pixelWidth + ((16 - (pixelWidth % 16)) % 16),
+                    pixelHeight + ((16 - (pixelHeight % 16)) % 16), ColorSpace.YUV420J);
+            swappedYuv = null;
+            rgbBuffers = null;
+            bufferedImages = null;
+            computeOutputSize();
+        }
+    }
+
+    private void computeOutputSize() {
+        final int targetWidth = configuration.targetWidth;
+        final int targetHeight = configuration.targetHeight;
+        if (targetWidth <= 0 && targetHeight <= 0) {
+            outputWidth = pixelWidth;
+            outputHeight = pixelHeight;
+            return;
+        }
+        final long width = targetWidth > 0
+                ? targetWidth : Math.round((double) pixelWidth * targetHeight / pixelHeight);
+        final long height = targetHeight > 0
+                ? targetHeight : Math.round((double) pixelHeight * targetWidth / pixelWidth);
+        outputWidth = (int) Math.max(1, Math.min(width, pixelWidth));
+        outputHeight = (int) Math.max(1, Math.min(height, pixelHeight));
+        log.debug("Scaling the decoded pictures from {}x{} to {}x{}", pixelWidth, pixelHeight, outputWidth,
+                outputHeight);
+    }
+
+    private boolean isScaling() {
+        return outputWidth != pixelWidth || outputHeight != pixelHeight;
+    }
+
+    private void scaleYuv(final Picture pic, final Yuv420Image destination) {
+        // JCodec stores the samples as signed bytes offset by -128, hence the bias.
+        destination.resize(outputWidth, outputHeight);
+        Yuv420Image.scalePlane(pic.getPlaneData(0), pic.getPlaneWidth(0), pixelWidth, pixelHeight, 128,
+                destination.getYPlane(), outputWidth, outputHeight, configuration.scaling);
+        if (!destination.isLumaOnly()) {
+            final int chromaWidth = (pixelWidth + 1) >> 1;
+            final int chromaHeight = (pixelHeight + 1) >> 1;
+            Yuv420Image.scalePlane(pic.getPlaneData(1), pic.getPlaneWidth(1), chromaWidth, chromaHeight, 128,
+                    destination.getUPlane(), destination.getChromaWidth(), destination.getChromaHeight(),
+                    configuration.scaling);
+            Yuv420Image.scalePlane(pic.getPlaneData(2), pic.getPlaneWidth(2), chromaWidth, chromaHeight, 128,
+                    destination.getVPlane(), destination.getChromaWidth(), destination.getChromaHeight(),
+                    configuration.scaling);
+        }
+    }
+
+    private void allocateRgbBuffers() {
+        // When scaling, the pictures are converted from the scaled YUV image to RGB, straight into the images.
+        final boolean scaling = isScaling();
+        rgbBuffers = new Picture[numOutputBuffers];
+        bufferedImages = configuration.reuseOutputBuffers ? new BufferedImage[numOutputBuffers] : null;
+        for (int i = 0; i < numOutputBuffers; i++) {
+            rgbBuffers[i] = scaling ? null : Picture.create(pixelWidth, pixelHeight, ColorSpace.RGB);
+            if (bufferedImages != null) {
+                bufferedImages[i] = new BufferedImage(outputWidth, outputHeight, BufferedImage.TYPE_3BYTE_BGR);
+            }
+        }
+        scaledYuv = scaling ? Yuv420Image.create() : null;
+        outputBufferIndex = 0;
+    }
+
+    private static void copyPlane(final Picture pic, final int plane, final byte[] destination,
+                                  final int width, final int height) {
+        // JCodec stores the samples as signed bytes offset by -128.
+        final byte[] source = pic.getPlaneData(plane);
+        final int sourceStride = pic.getPlaneWidth(plane);
+        for (int y = 0; y < height; y++) {
+            final int sourceOffset = y * sourceStride;
+            final int destinationOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                destination[destinationOffset + x] = (byte) (source[sourceOffset + x] + 128);
+            }
+        }
+    }
+
+    private Picture swapChromaPlanes(final Picture pic) {
+        // Work around for color issues in JCodec
+        // https://github.com/jcodec/jcodec/issues/59
+        // https://github.com/jcodec/jcodec/issues/192
+        // The decoded picture normally wraps the planes of yuvBuffer, so the swapped view only needs to be rebuilt
+        // when the decoder hands back different planes.
+        if (swappedYuv == null
+                || swappedPlanes[0] != pic.getPlaneData(0)
+                || swappedPlanes[1] != pic.getPlaneData(2)
+                || swappedPlanes[2] != pic.getPlaneData(1)) {
+            swappedPlanes[0] = pic.getPlaneData(0);
+            swappedPlanes[1] = pic.getPlaneData(2);
+            swappedPlanes[2] = pic.getPlaneData(1);
+            swappedYuv = Picture.createPicture(pixelWidth, pixelHeight, swappedPlanes, ColorSpace.YUV420J);
+        }
+        return swappedYuv;
     }
 }
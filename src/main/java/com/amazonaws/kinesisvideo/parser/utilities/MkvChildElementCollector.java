@@ -13,12 +13,14 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.utilities;
 
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvTypeInfoProvider;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.Validate;
@@ -41,7 +43,8 @@ public class MkvChildElementCollector extends MkvElementVisitor {
         Validate.isTrue(parentTypeInfo.getType().equals(EBMLTypeInfo.TYPE.MASTER),
                 "ChildElementCollectors can only collect children for master elements");
         log.debug("MkvChildElementCollector for element {}", parentTypeInfo);
-        this.parentTypeInfo = parentTypeInfo;
+        //Elements from the StreamingMkvReader carry the canonical type infos, so they can be compared by identity.
+        this.parentTypeInfo = MkvTypeInfoProvider.canonical(parentTypeInfo);
     }
 
     @Override
@@ -105,26 +108,33 @@ public class MkvChildElementCollector extends MkvElementVisitor {
     }
 
     private boolean isParentType(MkvElement startMasterElement) {
-        return startMasterElement.getElementMetaData().getTypeInfo().equals(parentTypeInfo);
+        return isParentTypeInfo(startMasterElement.getElementMetaData().getTypeInfo());
+    }
+
+    private boolean isParentTypeInfo(EBMLTypeInfo typeInfo) {
+        return typeInfo == parentTypeInfo || typeInfo.equals(parentTypeInfo);
     }
 
     //NOTE: check if this should be relaxed to only look for the parent anywhere in
     //the path.
     //TODO: deal with recursive element with search
     private boolean shouldBeCollected(MkvElement mkvElement) {
-        if (mkvElement.getElementPath().size() <= parentTypeInfo.getLevel()) {
+        //Paths from the StreamingMkvReader are parent linked and shared between siblings, so size and get
+        //do not copy the path.
+        final List<EBMLElementMetaData> elementPath = mkvElement.getElementPath();
+        if (elementPath.size() <= parentTypeInfo.getLevel()) {
             //If the element belongs to a level lower than the parent's level, the path may be shorter
             //than the parent's level. We do not want to collect such elements.
             if (mkvElement.getElementMetaData().getTypeInfo().getLevel() > parentTypeInfo.getLevel()) {
                 log.warn("Element {} has a path {} shorter than parent type's {} level but does not belong to "
                                 + "a lower level than the parent ",
                         mkvElement.getElementMetaData().toString(),
-                        mkvElement.getElementPath().size(),
+                        elementPath.size(),
                         parentTypeInfo.toString());
             }
             return false;
         }
-        return mkvElement.getElementPath().get(parentTypeInfo.getLevel()).getTypeInfo().equals(parentTypeInfo);
+        return isParentTypeInfo(elementPath.get(parentTypeInfo.getLevel()).getTypeInfo());
     }
 
 }
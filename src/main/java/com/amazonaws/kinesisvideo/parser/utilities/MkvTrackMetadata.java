@@ -44,6 +44,9 @@ public class MkvTrackMetadata {
     @Builder.Default
     private String codecName = "";
     private ByteBuffer codecPrivateData;
+    //Duration of each frame in nanoseconds, if all the frames of the track have the same duration.
+    @Builder.Default
+    private Optional<BigInteger> defaultDuration = Optional.empty();
 
     // Video track specific
     @Builder.Default
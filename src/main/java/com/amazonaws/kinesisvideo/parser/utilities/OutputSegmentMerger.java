@@ -34,14 +34,13 @@ import org.apache.commons.lang3.Validate;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.stream.Collectors;
 
 import static com.amazonaws.kinesisvideo.parser.utilities.OutputSegmentMerger.MergeState.BUFFERING_CLUSTER_START;
@@ -85,7 +84,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
     private long emittedSegments = 0;
 
     // fields for tracking cluster and cluster durations
-    private Optional<BigInteger> lastClusterTimecode = Optional.empty();
+    private OptionalLong lastClusterTimecode = OptionalLong.empty();
     private final List<Integer> clusterFrameTimeCodes = new ArrayList<>();
 
 
@@ -106,7 +105,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
             final CountVisitor countVisitor,
             final Configuration configuration) {
         super(countVisitor);
-        childVisitors.add(mergeVisitor);
+        addChildVisitor(mergeVisitor);
         this.countVisitor = countVisitor;
 
         this.outputStream = outputStream;
@@ -213,7 +212,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                 switch (state) {
                     case NEW:
                         //Only the ebml header is expected in the new state
-                        Validate.isTrue(MkvTypeInfos.EBML.equals(startMasterElement.getElementMetaData().getTypeInfo()),
+                        Validate.isTrue(startMasterElement.isType(MkvTypeInfos.EBML),
                                 "EBML should be the only expected element type when a new MKV stream is expected");
                         log.info("Detected start of EBML element, transitioning from {} to BUFFERING", state);
                         //Change state to buffering and bufferAndCollect this element.
@@ -224,8 +223,8 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                         //if it is the cluster start element check if the buffered elements should be emitted and
                         // then change state to emitting, emit this the element as well.
                         final EBMLTypeInfo startElementTypeInfo = startMasterElement.getElementMetaData().getTypeInfo();
-                        if (MkvTypeInfos.CLUSTER.equals(startElementTypeInfo) || MkvTypeInfos.TAGS.equals(
-                                startElementTypeInfo)) {
+                        if (startMasterElement.isType(MkvTypeInfos.CLUSTER)
+                                || startMasterElement.isType(MkvTypeInfos.TAGS)) {
                             final boolean shouldEmitSegment = shouldEmitBufferedSegmentData();
 
                             if (shouldEmitSegment) {
@@ -275,7 +274,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
         private void wrapIOException(final IOException ie) throws MkvElementVisitException {
             String exceptionMessage = "IOException in merge visitor ";
             if (lastClusterTimecode.isPresent()) {
-                exceptionMessage += "in or immediately after cluster with timecode "+lastClusterTimecode.get();
+                exceptionMessage += "in or immediately after cluster with timecode "+lastClusterTimecode.getAsLong();
             } else {
                 exceptionMessage += "in first cluster";
             }
@@ -294,7 +293,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                         collect(endMasterElement);
                         break;
                     case EMITTING:
-                        if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+                        if (endMasterElement.isType(MkvTypeInfos.SEGMENT)) {
                             log.info("Detected end of segment element, transitioning from {} to NEW", state);
                             state = MergeState.NEW;
                             resetCollectors();
@@ -317,10 +316,10 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                         bufferAndCollect(dataElement);
                         break;
                     case BUFFERING_CLUSTER_START:
-                        if (MkvTypeInfos.TIMECODE.equals(dataElement.getElementMetaData().getTypeInfo())) {
-                            final BigInteger currentTimeCode = (BigInteger) dataElement.getValueCopy().getVal();
+                        if (dataElement.isType(MkvTypeInfos.TIMECODE)) {
+                            final long currentTimeCode = dataElement.getUnsignedLong();
                             if (lastClusterTimecode.isPresent()
-                                    && currentTimeCode.compareTo(lastClusterTimecode.get()) <= 0) {
+                                    && currentTimeCode <= lastClusterTimecode.getAsLong()) {
                                 if (configuration.stopAtFirstNonMatchingSegment && emittedSegments >= 1) {
                                     log.info("Detected time code going back from {} to {}, state from {} to DONE",
                                             lastClusterTimecode,
@@ -343,9 +342,9 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                         }
                         break;
                     case EMITTING:
-                        if (MkvTypeInfos.TIMECODE.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                        if (dataElement.isType(MkvTypeInfos.TIMECODE)) {
                             emitAdjustedTimeCode(dataElement);
-                        } else if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                        } else if (dataElement.isType(MkvTypeInfos.SIMPLEBLOCK)) {
                             emitFrame(dataElement);
                         } else {
                             emit(dataElement);
@@ -376,7 +375,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
     private void emitAdjustedTimeCode(final MkvDataElement timeCodeElement) throws MkvElementVisitException {
         if (configuration.packClusters) {
             final int dataSize = (int) timeCodeElement.getDataSize();
-            final BigInteger adjustedTimeCode;
+            final long adjustedTimeCode;
             if (lastClusterTimecode.isPresent()) {
                 // The timecode of the cluster should be the timecode of the previous cluster plus the previous cluster duration.
                 // c.timecode = (c-1).timecode + (c-1).duration
@@ -408,22 +407,25 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                 final int clusterDuration = frameDurations.stream().mapToInt(Integer::intValue).sum();
 
                 // Add duration to the previous cluster timecode
-                adjustedTimeCode = lastClusterTimecode.get().add(BigInteger.valueOf(clusterDuration));
+                adjustedTimeCode = lastClusterTimecode.getAsLong() + clusterDuration;
             } else {
 
                 // For the first cluster set the timecode to 0
-                adjustedTimeCode = BigInteger.valueOf(0L);
+                adjustedTimeCode = 0L;
             }
 
             // When replacing the cluster timecode value, we want to use the same size data value so that parent element
             // sizes are not impacted.
-            final byte[] newDataBytes = adjustedTimeCode.toByteArray();
-            Validate.isTrue(dataSize >= newDataBytes.length,
+            // Keep the top bit of the data clear, so that the timecode is not read back as a negative value.
+            final int numNewDataBytes = (Long.SIZE - Long.numberOfLeadingZeros(adjustedTimeCode)) / Byte.SIZE + 1;
+            Validate.isTrue(dataSize >= numNewDataBytes,
                     "Adjusted timecode is not compatible with the existing data size");
             final ByteBuffer newDataBuffer = ByteBuffer.allocate(dataSize);
-            newDataBuffer.position(dataSize - newDataBytes.length);
-            newDataBuffer.put(newDataBytes);
-            newDataBuffer.rewind();
+            long remainingTimeCode = adjustedTimeCode;
+            for (int i = dataSize - 1; i >= 0; i--) {
+                newDataBuffer.put(i, (byte) remainingTimeCode);
+                remainingTimeCode >>>= Byte.SIZE;
+            }
 
             final MkvDataElement adjustedTimeCodeElement = MkvDataElement.builder()
                     .idAndSizeRawBytes(timeCodeElement.getIdAndSizeRawBytes())
@@ -433,7 +435,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
                     .dataBuffer(newDataBuffer)
                     .build();
             emit(adjustedTimeCodeElement);
-            lastClusterTimecode = Optional.of(adjustedTimeCode);
+            lastClusterTimecode = OptionalLong.of(adjustedTimeCode);
 
             // Since we are at the start of a new cluster, reset the frame state from the previous cluster.
             // Note: this could also be done directly on the "cluster start" event, but resetting the values here because
@@ -441,7 +443,7 @@ public class OutputSegmentMerger extends CompositeMkvElementVisitor {
             clusterFrameTimeCodes.clear();
         } else {
             emit(timeCodeElement);
-            lastClusterTimecode = Optional.of((BigInteger) timeCodeElement.getValueCopy().getVal());
+            lastClusterTimecode = OptionalLong.of(timeCodeElement.getUnsignedLong());
         }
     }
 
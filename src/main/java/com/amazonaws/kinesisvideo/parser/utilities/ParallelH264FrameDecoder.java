@@ -0,0 +1,212 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * H264 frame decoder that decodes the GOPs of a track in parallel.
+ *
+ * The frames are cut into GOPs at key frames, and each GOP is decoded by one of a pool of independent
+ * {@link H264FrameDecoder}s. The decoded images are passed to a {@link DecodedFrameProcessor} always on the thread
+ * that calls process or flush, so the decoded frame processor does not need to be thread safe. The GOPs are passed
+ * on in the order they were received, and the frames of each GOP in presentation order, that is by the timecode of
+ * their cluster plus their own timecode, so frames that are stored in decode order (B-frames) are re-sequenced.
+ * At most maxGopsInFlight GOPs are buffered or being decoded at a time, when the limit is reached process waits for
+ * the oldest GOP to be decoded and passes it on.
+ *
+ * The frames of a GOP are only decoded once the next key frame arrives, call flush at the end of the stream to
+ * decode the last GOP. close only stops the decoding threads, see {@link DecodedFrameProcessor}. Only the frames of one H264 track should be passed to this decoder, for instance by creating
+ * the FrameVisitor with the track number of the video track.
+ */
+@Slf4j
+public class ParallelH264FrameDecoder implements FrameVisitor.FrameProcessor {
+    private final DecodedFrameProcessor decodedFrameProcessor;
+    private final ExecutorService executorService;
+    private final BlockingQueue<H264FrameDecoder> decoders;
+    private final int maxGopsInFlight;
+    private final Deque<SubmittedGop> gopsInFlight = new ArrayDeque<>();
+    private List<PendingFrame> currentGop = new ArrayList<>();
+
+    private ParallelH264FrameDecoder(final DecodedFrameProcessor decodedFrameProcessor,
+                                     final int numDecoders,
+                                     final int maxGopsInFlight) {
+        Validate.isTrue(numDecoders > 0, "numDecoders should be positive but is %d", numDecoders);
+        Validate.isTrue(maxGopsInFlight > 0, "maxGopsInFlight should be positive but is %d", maxGopsInFlight);
+        this.decodedFrameProcessor = decodedFrameProcessor;
+        this.executorService = Executors.newFixedThreadPool(numDecoders);
+        this.decoders = new ArrayBlockingQueue<>(numDecoders);
+        for (int i = 0; i < numDecoders; i++) {
+            decoders.add(new H264FrameDecoder());
+        }
+        this.maxGopsInFlight = maxGopsInFlight;
+    }
+
+    /**
+     * Create a parallel decoder.
+     * @param decodedFrameProcessor The processor the decoded frames are passed to. The images passed to it are not
+     *                              reused by the decoder, so they can be kept.
+     * @param numDecoders The number of GOPs decoded concurrently.
+     * @param maxGopsInFlight The maximum number of GOPs that are waiting to be decoded, being decoded or waiting to
+     *                        be passed to the decoded frame processor. It bounds the memory used for the decoded
+     *                        images, and should be at least numDecoders to keep all the decoders busy.
+     * @return The parallel decoder.
+     */
+    public static ParallelH264FrameDecoder create(final DecodedFrameProcessor decodedFrameProcessor,
+                                                  final int numDecoders,
+                                                  final int maxGopsInFlight) {
+        return new ParallelH264FrameDecoder(decodedFrameProcessor, numDecoders, maxGopsInFlight);
+    }
+
+    @Override
+    public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                        final Optional<FragmentMetadata> fragmentMetadata) throws FrameProcessException {
+        process(frame, trackMetadata, fragmentMetadata, Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    @Override
+    public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                        final Optional<FragmentMetadata> fragmentMetadata,
+                        final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                        final Optional<BigInteger> timescale, final Optional<BigInteger> fragmentTimecode)
+            throws FrameProcessException {
+        if (frame.isKeyFrame() && !currentGop.isEmpty()) {
+            submitCurrentGop();
+        }
+        final long presentationTimecode = fragmentTimecode.map(BigInteger::longValue).orElse(0L) + frame.getTimeCode();
+        currentGop.add(new PendingFrame(frame.retain(), trackMetadata, fragmentMetadata, presentationTimecode));
+        while (!gopsInFlight.isEmpty() && gopsInFlight.peekFirst().decodedFrames.isDone()) {
+            deliverOldestGop();
+        }
+    }
+
+    /**
+     * Decode the frames received so far, and pass them to the decoded frame processor.
+     * @throws FrameProcessException If decoding or processing a frame failed.
+     */
+    public void flush() throws FrameProcessException {
+        if (!currentGop.isEmpty()) {
+            submitCurrentGop();
+        }
+        while (!gopsInFlight.isEmpty()) {
+            deliverOldestGop();
+        }
+    }
+
+    /**
+     * Stop the decoding threads. Frames that have not been flushed are dropped with a warning, so call flush first
+     * to pass them to the decoded frame processor.
+     */
+    @Override
+    public void close() {
+        int numDroppedFrames = currentGop.size();
+        for (final SubmittedGop gop : gopsInFlight) {
+            numDroppedFrames += gop.numFrames;
+            gop.decodedFrames.cancel(true);
+        }
+        if (numDroppedFrames > 0) {
+            log.warn("Closing the decoder drops {} frames that were not flushed", numDroppedFrames);
+        }
+        currentGop.clear();
+        gopsInFlight.clear();
+        executorService.shutdownNow();
+    }
+
+    private void submitCurrentGop() throws FrameProcessException {
+        while (gopsInFlight.size() >= maxGopsInFlight) {
+            deliverOldestGop();
+        }
+        final List<PendingFrame> gop = currentGop;
+        currentGop = new ArrayList<>();
+        gopsInFlight.addLast(new SubmittedGop(executorService.submit(() -> decodeGop(gop)), gop.size()));
+    }
+
+    private List<DecodedFrame> decodeGop(final List<PendingFrame> gop) throws InterruptedException {
+        final H264FrameDecoder decoder = decoders.take();
+        try {
+            final List<DecodedFrame> decodedFrames = new ArrayList<>(gop.size());
+            for (final PendingFrame pendingFrame : gop) {
+                final int frameCount = decoder.getFrameCount();
+                final BufferedImage image = decoder.decodeH264Frame(pendingFrame.frame, pendingFrame.trackMetadata);
+                if (decoder.getFrameCount() != frameCount) {
+                    decodedFrames.add(new DecodedFrame(pendingFrame, image));
+                }
+            }
+            // The sort is stable, so frames with the same presentation timecode stay in decode order.
+            decodedFrames.sort(Comparator.comparingLong(
+                    decodedFrame -> decodedFrame.pendingFrame.presentationTimecode));
+            return decodedFrames;
+        } finally {
+            decoders.put(decoder);
+        }
+    }
+
+    private void deliverOldestGop() throws FrameProcessException {
+        final List<DecodedFrame> decodedFrames;
+        try {
+            decodedFrames = gopsInFlight.removeFirst().decodedFrames.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FrameProcessException("Interrupted while waiting for a GOP to be decoded", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw new FrameProcessException("Failed to decode a GOP",
+                    cause instanceof Exception ? (Exception) cause : e);
+        }
+        for (final DecodedFrame decodedFrame : decodedFrames) {
+            final PendingFrame pendingFrame = decodedFrame.pendingFrame;
+            decodedFrameProcessor.process(pendingFrame.frame, pendingFrame.trackMetadata,
+                    pendingFrame.fragmentMetadata, decodedFrame.image);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PendingFrame {
+        private final Frame frame;
+        private final MkvTrackMetadata trackMetadata;
+        private final Optional<FragmentMetadata> fragmentMetadata;
+        private final long presentationTimecode;
+    }
+
+    @AllArgsConstructor
+    private static class SubmittedGop {
+        private final Future<List<DecodedFrame>> decodedFrames;
+        private final int numFrames;
+    }
+
+    @AllArgsConstructor
+    private static class DecodedFrame {
+        private final PendingFrame pendingFrame;
+        private final BufferedImage image;
+    }
+}
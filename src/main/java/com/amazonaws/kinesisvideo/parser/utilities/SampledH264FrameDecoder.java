@@ -0,0 +1,282 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * H264 frame decoder that only decodes the frames needed for a sample of the images of a track.
+ *
+ * The sample is taken according to a {@link Mode}, using the timecodes of the frames. Frames that are neither
+ * sampled nor needed to decode a later frame are dropped before their NAL units are processed, and frames that are
+ * only needed to decode a later frame are decoded without being converted to an image. With {@link Mode#KEY_FRAMES}
+ * the frame header filter of the FrameVisitor can be used to drop the frames before their frame data is even read.
+ *
+ * The sampled images are passed to a {@link DecodedFrameProcessor}. They are not reused by the decoder, so a decoded
+ * frame processor can keep them. With {@link Mode#NEAREST} the last sample is only known at the end of the stream,
+ * call flush to pass it on. close does not flush, see {@link DecodedFrameProcessor}.
+ */
+@Slf4j
+public class SampledH264FrameDecoder implements FrameVisitor.FrameProcessor {
+    //Default TimecodeScale of a segment, in nanoseconds.
+    private static final long DEFAULT_TIMESCALE_NANOS = 1_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int DEFAULT_NAL_LENGTH_SIZE = 4;
+    private static final int NAL_TYPE_NON_IDR_SLICE = 1;
+    private static final int NAL_TYPE_IDR_SLICE = 5;
+
+    private final H264FrameDecoder decoder;
+    private final DecodedFrameProcessor decodedFrameProcessor;
+    private final Mode mode;
+    private final long samplePeriodNanos;
+
+    private long nextSampleNanos = Long.MIN_VALUE;
+    private long lastFrameNanos = Long.MIN_VALUE;
+    private long lastFrameIntervalNanos;
+    private SampleCandidate sampleCandidate;
+
+    /**
+     * How the frames to decode are sampled.
+     */
+    public enum Mode {
+        /**
+         * Decode the key frames only.
+         */
+        KEY_FRAMES,
+        /**
+         * Decode the first frame at or after each sample instant.
+         */
+        FIXED_RATE,
+        /**
+         * Decode the frame nearest to each sample instant, the earlier one of two frames at the same distance.
+         */
+        NEAREST
+    }
+
+    private SampledH264FrameDecoder(final H264FrameDecoder decoder,
+                                    final DecodedFrameProcessor decodedFrameProcessor,
+                                    final Mode mode,
+                                    final long samplePeriodNanos) {
+        this.decoder = decoder;
+        this.decodedFrameProcessor = decodedFrameProcessor;
+        this.mode = mode;
+        this.samplePeriodNanos = samplePeriodNanos;
+    }
+
+    /**
+     * Create a decoder that decodes the key frames only.
+     * @param decodedFrameProcessor The processor the decoded key frames are passed to.
+     * @return The sampled decoder.
+     */
+    public static SampledH264FrameDecoder keyFrames(final DecodedFrameProcessor decodedFrameProcessor) {
+        return new SampledH264FrameDecoder(new H264FrameDecoder(), decodedFrameProcessor, Mode.KEY_FRAMES, 0);
+    }
+
+    /**
+     * Create a decoder that samples frames at a fixed rate. The sample instants are spaced evenly at the target
+     * rate starting at the timecode of the first frame.
+     * @param decodedFrameProcessor The processor the sampled frames are passed to.
+     * @param mode {@link Mode#FIXED_RATE} or {@link Mode#NEAREST}.
+     * @param samplesPerSecond The target rate, in samples per second.
+     * @return The sampled decoder.
+     */
+    public static SampledH264FrameDecoder atRate(final DecodedFrameProcessor decodedFrameProcessor,
+                                                 final Mode mode,
+                                                 final double samplesPerSecond) {
+        Validate.isTrue(mode != Mode.KEY_FRAMES, "Use keyFrames to sample the key frames");
+        Validate.isTrue(samplesPerSecond > 0, "samplesPerSecond should be positive but is %f", samplesPerSecond);
+        final long samplePeriodNanos = Math.max(1L, Math.round(NANOS_PER_SECOND / samplesPerSecond));
+        return new SampledH264FrameDecoder(new H264FrameDecoder(), decodedFrameProcessor, mode, samplePeriodNanos);
+    }
+
+    @Override
+    public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                        final Optional<FragmentMetadata> fragmentMetadata) throws FrameProcessException {
+        process(frame, trackMetadata, fragmentMetadata, Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    @Override
+    public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                        final Optional<FragmentMetadata> fragmentMetadata,
+                        final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                        final Optional<BigInteger> timescale, final Optional<BigInteger> fragmentTimecode)
+            throws FrameProcessException {
+        if (mode == Mode.KEY_FRAMES) {
+            if (frame.isKeyFrame()) {
+                decodeAndProcess(frame, trackMetadata, fragmentMetadata);
+            }
+            return;
+        }
+
+        final long frameNanos = (fragmentTimecode.map(BigInteger::longValue).orElse(0L) + frame.getTimeCode())
+                * timescale.map(BigInteger::longValue).orElse(DEFAULT_TIMESCALE_NANOS);
+        if (nextSampleNanos == Long.MIN_VALUE) {
+            nextSampleNanos = frameNanos;
+        }
+        if (lastFrameNanos != Long.MIN_VALUE && frameNanos > lastFrameNanos) {
+            lastFrameIntervalNanos = frameNanos - lastFrameNanos;
+        }
+        lastFrameNanos = frameNanos;
+
+        if (sampleCandidate != null && frameNanos >= nextSampleNanos) {
+            final SampleCandidate candidate = sampleCandidate;
+            sampleCandidate = null;
+            if (nextSampleNanos - candidate.frameNanos <= frameNanos - nextSampleNanos) {
+                decodedFrameProcessor.process(candidate.frame, candidate.trackMetadata, candidate.fragmentMetadata,
+                        candidate.image);
+                advanceNextSample(nextSampleNanos);
+            }
+        }
+
+        if (frameNanos >= nextSampleNanos) {
+            decodeAndProcess(frame, trackMetadata, fragmentMetadata);
+            advanceNextSample(frameNanos);
+        } else if (mode == Mode.NEAREST && frameNanos + lastFrameIntervalNanos > nextSampleNanos) {
+            // The next frame is expected after the sample instant, so this frame may be the nearest one.
+            final int frameCount = decoder.getFrameCount();
+            final BufferedImage image = decoder.decodeH264Frame(frame, trackMetadata);
+            if (decoder.getFrameCount() != frameCount) {
+                sampleCandidate = new SampleCandidate(frame.retain(), trackMetadata, fragmentMetadata, image,
+                        frameNanos);
+            }
+        } else if (!isNonReferenceFrame(frame, trackMetadata)) {
+            decoder.decodeH264FrameWithoutImage(frame, trackMetadata);
+        }
+    }
+
+    /**
+     * Pass the frame that is waiting to be compared with the next frame to the decoded frame processor, if there is
+     * one. With {@link Mode#NEAREST} this is the nearest frame to the last sample instant of a stream that has ended.
+     * @throws FrameProcessException If processing the frame failed.
+     */
+    public void flush() throws FrameProcessException {
+        if (sampleCandidate != null) {
+            final SampleCandidate candidate = sampleCandidate;
+            sampleCandidate = null;
+            decodedFrameProcessor.process(candidate.frame, candidate.trackMetadata, candidate.fragmentMetadata,
+                    candidate.image);
+            advanceNextSample(nextSampleNanos);
+        }
+    }
+
+    /**
+     * Release the frame that is waiting to be compared with the next frame. It is dropped with a warning if it has
+     * not been flushed, so call flush first to pass it to the decoded frame processor.
+     */
+    @Override
+    public void close() {
+        if (sampleCandidate != null) {
+            log.warn("Closing the decoder drops the sampled frame with timecode {} that was not flushed",
+                    sampleCandidate.frame.getTimeCode());
+            sampleCandidate = null;
+        }
+    }
+
+    @Override
+    public boolean shouldProcess(final Frame frameHeader) {
+        return mode != Mode.KEY_FRAMES || frameHeader.isKeyFrame();
+    }
+
+    private void decodeAndProcess(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                  final Optional<FragmentMetadata> fragmentMetadata) throws FrameProcessException {
+        final int frameCount = decoder.getFrameCount();
+        final BufferedImage image = decoder.decodeH264Frame(frame, trackMetadata);
+        if (decoder.getFrameCount() != frameCount) {
+            decodedFrameProcessor.process(frame, trackMetadata, fragmentMetadata, image);
+        }
+    }
+
+    private void advanceNextSample(final long sampledFrameNanos) {
+        while (nextSampleNanos <= sampledFrameNanos) {
+            nextSampleNanos += samplePeriodNanos;
+        }
+    }
+
+    /**
+     * Check whether no other frame is predicted from a frame, in which case it can be dropped without affecting
+     * the decoding of the other frames. This is the case if the SimpleBlock is flagged discardable or if all the
+     * slices of the frame have a nal_ref_idc of 0.
+     * @param frame The frame.
+     * @param trackMetadata The metadata of the track of the frame, used for the size of the NAL unit lengths.
+     * @return true if the frame is not a reference frame.
+     */
+    static boolean isNonReferenceFrame(final Frame frame, final MkvTrackMetadata trackMetadata) {
+        if (frame.isKeyFrame()) {
+            return false;
+        }
+        if (frame.isDiscardable()) {
+            return true;
+        }
+        final int nalLengthSize = getNalLengthSize(trackMetadata);
+        final ByteBuffer frameData = frame.getFrameData();
+        boolean hasSlice = false;
+        int position = frameData.position();
+        while (position + nalLengthSize < frameData.limit()) {
+            long nalLength = 0;
+            for (int i = 0; i < nalLengthSize; i++) {
+                nalLength = (nalLength << 8) | (frameData.get(position + i) & 0xFF);
+            }
+            position += nalLengthSize;
+            if (nalLength == 0 || nalLength > frameData.limit() - position) {
+                // Malformed, treat it as a reference frame to be safe.
+                return false;
+            }
+            final int nalHeader = frameData.get(position) & 0xFF;
+            final int nalType = nalHeader & 0x1F;
+            if (nalType == NAL_TYPE_NON_IDR_SLICE || nalType == NAL_TYPE_IDR_SLICE) {
+                if ((nalHeader & 0x60) != 0) {
+                    return false;
+                }
+                hasSlice = true;
+            }
+            position += (int) nalLength;
+        }
+        return hasSlice;
+    }
+
+    private static int getNalLengthSize(final MkvTrackMetadata trackMetadata) {
+        final ByteBuffer codecPrivateData = trackMetadata.getCodecPrivateData();
+        // The lengthSizeMinusOne field is in the two low bits of the fifth byte of the AVCDecoderConfigurationRecord.
+        if (codecPrivateData == null || codecPrivateData.remaining() < 5) {
+            return DEFAULT_NAL_LENGTH_SIZE;
+        }
+        return (codecPrivateData.get(codecPrivateData.position() + 4) & 0x3) + 1;
+    }
+
+    private static class SampleCandidate {
+        private final Frame frame;
+        private final MkvTrackMetadata trackMetadata;
+        private final Optional<FragmentMetadata> fragmentMetadata;
+        private final BufferedImage image;
+        private final long frameNanos;
+
+        SampleCandidate(final Frame frame, final MkvTrackMetadata trackMetadata,
+                        final Optional<FragmentMetadata> fragmentMetadata, final BufferedImage image,
+                        final long frameNanos) {
+            this.frame = frame;
+            this.trackMetadata = trackMetadata;
+            this.fragmentMetadata = fragmentMetadata;
+            this.image = image;
+            this.frameNanos = frameNanos;
+        }
+    }
+}
@@ -13,17 +13,20 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.utilities;
 
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
 import com.amazonaws.kinesisvideo.parser.mkv.Frame;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvValue;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.google.common.collect.ImmutableList;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.Validate;
 
-import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Optional;
 
 /**
  * Fragment metdata tags will not be present as there is no tag when the data (mkv/webm) is not
@@ -34,13 +37,17 @@ import java.math.BigInteger;
 
 @Slf4j
 public class SimpleFrameVisitor extends CompositeMkvElementVisitor {
+    private static final Collection<EBMLTypeInfo> FRAME_ELEMENT_TYPES = ImmutableList.of(MkvTypeInfos.TIMECODESCALE,
+            MkvTypeInfos.TIMECODE,
+            MkvTypeInfos.SIMPLEBLOCK);
+
     private final FrameVisitorInternal frameVisitorInternal;
     private final FrameProcessor frameProcessor;
 
     private SimpleFrameVisitor(FrameProcessor frameProcessor) {
         this.frameProcessor = frameProcessor;
         frameVisitorInternal = new FrameVisitorInternal();
-        childVisitors.add(frameVisitorInternal);
+        addChildVisitor(frameVisitorInternal);
 
     }
     public static SimpleFrameVisitor create(FrameProcessor frameProcessor) {
@@ -55,6 +62,12 @@ public class SimpleFrameVisitor extends CompositeMkvElementVisitor {
     private class FrameVisitorInternal extends MkvElementVisitor {
         private long clusterTimeCode = -1;
         private long timeCodeScale = -1;
+
+        @Override
+        public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+            return Optional.of(FRAME_ELEMENT_TYPES);
+        }
+
         @Override
         public void visit(com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement startMasterElement)
                 throws com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException {
@@ -70,11 +83,11 @@ public class SimpleFrameVisitor extends CompositeMkvElementVisitor {
                 throws com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException {
 
             if (MkvTypeInfos.TIMECODE.equals(dataElement.getElementMetaData().getTypeInfo())) {
-                clusterTimeCode = ((BigInteger) dataElement.getValueCopy().getVal()).longValue();
+                clusterTimeCode = dataElement.getUnsignedLong();
             }
 
             if (MkvTypeInfos.TIMECODESCALE.equals(dataElement.getElementMetaData().getTypeInfo())) {
-                timeCodeScale = ((BigInteger) dataElement.getValueCopy().getVal()).longValue();
+                timeCodeScale = dataElement.getUnsignedLong();
             }
 
             if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
@@ -0,0 +1,269 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.commons.lang3.Validate;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * A planar YUV 4:2:0 (I420) image with full range samples, as decoded by {@link H264FrameDecoder}.
+ *
+ * The planes are tightly packed: the stride of the Y plane is the width of the image and the stride of the U and V
+ * planes is the chroma width. A luma only image has no U and V planes. The planes are only reallocated when the
+ * image is resized to a size they are too small for, so the same image can be reused to decode all the frames of a
+ * track. The plane arrays may be larger than the image, only their first stride * height bytes are part of it.
+ */
+@Getter
+public class Yuv420Image {
+    //Fixed point constants of the JFIF YCbCr to RGB conversion, the same as the ones of JCodec's Yuv420jToRgb.
+    private static final int SCALE_BITS = 10;
+    private static final int ONE_HALF = 1 << (SCALE_BITS - 1);
+    private static final int FIX_1_402 = fix(1.402);
+    private static final int FIX_0_34414 = fix(0.34414);
+    private static final int FIX_0_71414 = fix(0.71414);
+    private static final int FIX_1_772 = fix(1.772);
+
+    private final boolean lumaOnly;
+    private int width;
+    private int height;
+    private byte[] yPlane = new byte[0];
+    @Getter(AccessLevel.NONE)
+    private byte[] uPlane;
+    @Getter(AccessLevel.NONE)
+    private byte[] vPlane;
+
+    /**
+     * The kernel used to scale an image down.
+     */
+    public enum Scaling {
+        /**
+         * Average the source pixels covered by each destination pixel. Slower than bilinear but without aliasing
+         * for large scale factors.
+         */
+        BOX,
+        /**
+         * Interpolate between the four source pixels nearest to the center of each destination pixel.
+         */
+        BILINEAR
+    }
+
+    private Yuv420Image(final boolean lumaOnly) {
+        this.lumaOnly = lumaOnly;
+        if (!lumaOnly) {
+            uPlane = new byte[0];
+            vPlane = new byte[0];
+        }
+    }
+
+    /**
+     * Create an image with Y, U and V planes. The planes are allocated by the first resize.
+     * @return The image.
+     */
+    public static Yuv420Image create() {
+        return new Yuv420Image(false);
+    }
+
+    /**
+     * Create an image with a Y plane only, for consumers that only need the luma of the frames.
+     * @return The image.
+     */
+    public static Yuv420Image createLumaOnly() {
+        return new Yuv420Image(true);
+    }
+
+    public int getChromaWidth() {
+        return (width + 1) >> 1;
+    }
+
+    public int getChromaHeight() {
+        return (height + 1) >> 1;
+    }
+
+    public byte[] getUPlane() {
+        Validate.validState(!lumaOnly, "A luma only image has no U plane");
+        return uPlane;
+    }
+
+    public byte[] getVPlane() {
+        Validate.validState(!lumaOnly, "A luma only image has no V plane");
+        return vPlane;
+    }
+
+    /**
+     * Resize the image, reallocating the planes if they are too small for the new size.
+     * @param newWidth The new width.
+     * @param newHeight The new height.
+     */
+    public void resize(final int newWidth, final int newHeight) {
+        Validate.isTrue(newWidth > 0 && newHeight > 0, "Invalid image size %dx%d", newWidth, newHeight);
+        width = newWidth;
+        height = newHeight;
+        if (yPlane.length < width * height) {
+            yPlane = new byte[width * height];
+        }
+        if (!lumaOnly && uPlane.length < getChromaWidth() * getChromaHeight()) {
+            uPlane = new byte[getChromaWidth() * getChromaHeight()];
+            vPlane = new byte[getChromaWidth() * getChromaHeight()];
+        }
+    }
+
+    /**
+     * Scale the image into another image, resizing the destination image if needed. Only the luma is scaled into a
+     * luma only image.
+     * @param destination The image to scale into, a luma only image can only be scaled into a luma only image.
+     * @param destinationWidth The width to scale to.
+     * @param destinationHeight The height to scale to.
+     * @param scaling The scaling kernel.
+     */
+    public void scaleTo(final Yuv420Image destination, final int destinationWidth, final int destinationHeight,
+                        final Scaling scaling) {
+        Validate.isTrue(!lumaOnly || destination.lumaOnly, "Cannot scale a luma only image into a YUV image");
+        destination.resize(destinationWidth, destinationHeight);
+        scalePlane(yPlane, width, width, height, 0, destination.yPlane, destinationWidth, destinationHeight, scaling);
+        if (!destination.lumaOnly) {
+            final int chromaWidth = getChromaWidth();
+            final int chromaHeight = getChromaHeight();
+            scalePlane(uPlane, chromaWidth, chromaWidth, chromaHeight, 0, destination.uPlane,
+                    destination.getChromaWidth(), destination.getChromaHeight(), scaling);
+            scalePlane(vPlane, chromaWidth, chromaWidth, chromaHeight, 0, destination.vPlane,
+                    destination.getChromaWidth(), destination.getChromaHeight(), scaling);
+        }
+    }
+
+    /**
+     * Scale a plane of 8 bit samples into a tightly packed plane.
+     * @param source The source plane.
+     * @param sourceStride The stride of the source plane.
+     * @param sourceWidth The width of the source plane.
+     * @param sourceHeight The height of the source plane.
+     * @param sourceBias The value added to the source samples to get unsigned samples, 128 for JCodec's planes.
+     * @param destination The destination plane.
+     * @param destinationWidth The width of the destination plane.
+     * @param destinationHeight The height of the destination plane.
+     * @param scaling The scaling kernel.
+     */
+    static void scalePlane(final byte[] source, final int sourceStride, final int sourceWidth,
+                           final int sourceHeight, final int sourceBias, final byte[] destination,
+                           final int destinationWidth, final int destinationHeight, final Scaling scaling) {
+        if (scaling == Scaling.BOX) {
+            boxScalePlane(source, sourceStride, sourceWidth, sourceHeight, sourceBias,
+                    destination, destinationWidth, destinationHeight);
+        } else {
+            bilinearScalePlane(source, sourceStride, sourceWidth, sourceHeight, sourceBias,
+                    destination, destinationWidth, destinationHeight);
+        }
+    }
+
+    private static void boxScalePlane(final byte[] source, final int sourceStride, final int sourceWidth,
+                                      final int sourceHeight, final int sourceBias, final byte[] destination,
+                                      final int destinationWidth, final int destinationHeight) {
+        for (int y = 0; y < destinationHeight; y++) {
+            final int sourceY0 = (int) ((long) y * sourceHeight / destinationHeight);
+            final int sourceY1 = Math.max(sourceY0 + 1, (int) ((long) (y + 1) * sourceHeight / destinationHeight));
+            for (int x = 0; x < destinationWidth; x++) {
+                final int sourceX0 = (int) ((long) x * sourceWidth / destinationWidth);
+                final int sourceX1 = Math.max(sourceX0 + 1, (int) ((long) (x + 1) * sourceWidth / destinationWidth));
+                int sum = 0;
+                for (int sourceY = sourceY0; sourceY < sourceY1; sourceY++) {
+                    final int rowOffset = sourceY * sourceStride;
+                    for (int sourceX = sourceX0; sourceX < sourceX1; sourceX++) {
+                        sum += (source[rowOffset + sourceX] + sourceBias) & 0xFF;
+                    }
+                }
+                final int count = (sourceY1 - sourceY0) * (sourceX1 - sourceX0);
+                destination[y * destinationWidth + x] = (byte) ((sum + (count >> 1)) / count);
+            }
+        }
+    }
+
+    private static void bilinearScalePlane(final byte[] source, final int sourceStride, final int sourceWidth,
+                                           final int sourceHeight, final int sourceBias, final byte[] destination,
+                                           final int destinationWidth, final int destinationHeight) {
+        for (int y = 0; y < destinationHeight; y++) {
+            // Source coordinate of the center of the destination pixel, in 24.8 fixed point.
+            final int sourceYFixed = clampFixed(((2L * y + 1) * sourceHeight << 8) / (2L * destinationHeight) - 128,
+                    sourceHeight);
+            final int sourceY0 = sourceYFixed >> 8;
+            final int sourceY1 = Math.min(sourceY0 + 1, sourceHeight - 1);
+            final int weightY = sourceYFixed & 0xFF;
+            final int rowOffset0 = sourceY0 * sourceStride;
+            final int rowOffset1 = sourceY1 * sourceStride;
+            for (int x = 0; x < destinationWidth; x++) {
+                final int sourceXFixed = clampFixed(
+                        ((2L * x + 1) * sourceWidth << 8) / (2L * destinationWidth) - 128, sourceWidth);
+                final int sourceX0 = sourceXFixed >> 8;
+                final int sourceX1 = Math.min(sourceX0 + 1, sourceWidth - 1);
+                final int weightX = sourceXFixed & 0xFF;
+                final int top = ((source[rowOffset0 + sourceX0] + sourceBias) & 0xFF) * (256 - weightX)
+                        + ((source[rowOffset0 + sourceX1] + sourceBias) & 0xFF) * weightX;
+                final int bottom = ((source[rowOffset1 + sourceX0] + sourceBias) & 0xFF) * (256 - weightX)
+                        + ((source[rowOffset1 + sourceX1] + sourceBias) & 0xFF) * weightX;
+                destination[y * destinationWidth + x] =
+                        (byte) ((top * (256 - weightY) + bottom * weightY + (1 << 15)) >> 16);
+            }
+        }
+    }
+
+    private static int clampFixed(final long coordinate, final int size) {
+        return (int) Math.max(0, Math.min(coordinate, (long) (size - 1) << 8));
+    }
+
+    /**
+     * Convert the image to a BufferedImage. A luma only image is converted to a TYPE_BYTE_GRAY image, any other
+     * image to a TYPE_3BYTE_BGR image.
+     * @param destination The image to convert into, it must have the size of this image and the type above. If
+     *                    null, a new image is allocated.
+     * @return The converted image.
+     */
+    public BufferedImage toBufferedImage(final BufferedImage destination) {
+        final int imageType = lumaOnly ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+        final BufferedImage image = destination != null ? destination : new BufferedImage(width, height, imageType);
+        Validate.isTrue(image.getType() == imageType, "Destination image type should be %d", imageType);
+        Validate.isTrue(image.getWidth() == width && image.getHeight() == height,
+                "Destination image size should be %dx%d", width, height);
+        final byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        if (lumaOnly) {
+            System.arraycopy(yPlane, 0, pixels, 0, width * height);
+            return image;
+        }
+
+        final int chromaWidth = getChromaWidth();
+        for (int y = 0; y < height; y++) {
+            final int yOffset = y * width;
+            final int chromaOffset = (y >> 1) * chromaWidth;
+            for (int x = 0; x < width; x++) {
+                final int luma = ((yPlane[yOffset + x] & 0xFF) << SCALE_BITS) + ONE_HALF;
+                final int cb = (uPlane[chromaOffset + (x >> 1)] & 0xFF) - 128;
+                final int cr = (vPlane[chromaOffset + (x >> 1)] & 0xFF) - 128;
+                final int pixel = (yOffset + x) * 3;
+                pixels[pixel] = clip((luma + FIX_1_772 * cb) >> SCALE_BITS);
+                pixels[pixel + 1] = clip((luma - FIX_0_34414 * cb - FIX_0_71414 * cr) >> SCALE_BITS);
+                pixels[pixel + 2] = clip((luma + FIX_1_402 * cr) >> SCALE_BITS);
+            }
+        }
+        return image;
+    }
+
+    private static byte clip(final int value) {
+        return (byte) (value < 0 ? 0 : (value > 255 ? 255 : value));
+    }
+
+    private static int fix(final double value) {
+        return (int) (value * (1 << SCALE_BITS) + 0.5);
+    }
+}
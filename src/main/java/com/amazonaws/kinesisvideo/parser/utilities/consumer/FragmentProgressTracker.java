@@ -13,6 +13,7 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.utilities.consumer;
 
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
@@ -24,6 +25,10 @@ import com.amazonaws.kinesisvideo.parser.mkv.visitors.CountVisitor;
 import com.amazonaws.kinesisvideo.parser.utilities.FragmentMetadataVisitor;
 import lombok.RequiredArgsConstructor;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+
 /**
  * This class is used to track the progress in processing the output of a GetMedia call.
  *
@@ -69,6 +74,11 @@ public class FragmentProgressTracker extends CompositeMkvElementVisitor {
         private final FragmentMetadataVisitor metadataVisitor;
         private final FragmentMetadataCallback endOfFragmentCallback;
 
+        @Override
+        public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+            return Optional.of(Collections.singletonList(MkvTypeInfos.SEGMENT));
+        }
+
         @Override
         public void visit(MkvStartMasterElement startMasterElement) throws MkvElementVisitException {
 
@@ -76,7 +86,7 @@ public class FragmentProgressTracker extends CompositeMkvElementVisitor {
 
         @Override
         public void visit(MkvEndMasterElement endMasterElement) throws MkvElementVisitException {
-            if (MkvTypeInfos.SEGMENT.equals(endMasterElement.getElementMetaData().getTypeInfo())) {
+            if (endMasterElement.isType(MkvTypeInfos.SEGMENT)) {
                 metadataVisitor.getCurrentFragmentMetadata().ifPresent(endOfFragmentCallback::call);
             }
         }
@@ -0,0 +1,37 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser;
+
+import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.amazonaws.kinesisvideo.parser.utilities.FrameVisitor;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * Class used by the decoder test classes to pass the frames of test files to frame processors and compare images.
+ */
+public class TestFrameDecodingUtil {
+    public static void decode(String name, FrameVisitor.FrameProcessor frameProcessor) throws Exception {
+        StreamingMkvReader mkvStreamReader = StreamingMkvReader.createDefault(
+                new InputStreamParserByteSource(TestResourceUtil.getTestInputStream(name)));
+        mkvStreamReader.apply(FrameVisitor.create(frameProcessor));
+    }
+
+    public static int hash(BufferedImage image) {
+        return Arrays.hashCode(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+    }
+}
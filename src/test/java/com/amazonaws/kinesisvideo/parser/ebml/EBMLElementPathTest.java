@@ -0,0 +1,67 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for {@link EBMLElementPath}.
+ */
+public class EBMLElementPathTest {
+    private static final EBMLElementMetaData SEGMENT = new EBMLElementMetaData(MkvTypeInfos.SEGMENT, 1);
+    private static final EBMLElementMetaData CLUSTER = new EBMLElementMetaData(MkvTypeInfos.CLUSTER, 10);
+    private static final EBMLElementMetaData BLOCKGROUP = new EBMLElementMetaData(MkvTypeInfos.BLOCKGROUP, 12);
+
+    @Test
+    public void testSiblingPathsShareParent() {
+        EBMLElementPath segmentPath = EBMLElementPath.empty().append(SEGMENT);
+        EBMLElementPath clusterPath = segmentPath.append(CLUSTER);
+        EBMLElementPath blockGroupPath = clusterPath.append(BLOCKGROUP);
+
+        Assert.assertEquals(Collections.emptyList(), EBMLElementPath.empty());
+        Assert.assertEquals(Arrays.asList(SEGMENT, CLUSTER, BLOCKGROUP), blockGroupPath);
+        Assert.assertEquals(3, blockGroupPath.size());
+        Assert.assertSame(CLUSTER, blockGroupPath.get(1));
+        Assert.assertSame(BLOCKGROUP, blockGroupPath.getLast());
+        Assert.assertSame(clusterPath, blockGroupPath.getParent());
+        Assert.assertSame(segmentPath, segmentPath.append(CLUSTER).getParent());
+        Assert.assertSame(blockGroupPath, blockGroupPath.retain());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetBeyondPath() {
+        EBMLElementPath.empty().append(SEGMENT).get(1);
+    }
+
+    @Test
+    public void testRetainRecycledPath() {
+        EBMLElementMetaData recycledSegment = EBMLElementMetaData.createRecycled();
+        recycledSegment.reset(MkvTypeInfos.SEGMENT, 1);
+        EBMLElementMetaData recycledCluster = EBMLElementMetaData.createRecycled();
+        recycledCluster.reset(MkvTypeInfos.CLUSTER, 10);
+        EBMLElementPath segmentPath = EBMLElementPath.createRecycled(recycledSegment).relink(EBMLElementPath.empty());
+        EBMLElementPath clusterPath = EBMLElementPath.createRecycled(recycledCluster).relink(segmentPath);
+
+        EBMLElementPath retainedPath = clusterPath.retain();
+        recycledCluster.reset(MkvTypeInfos.TAGS, 20);
+
+        Assert.assertNotSame(clusterPath, retainedPath);
+        Assert.assertEquals(Arrays.asList(SEGMENT, CLUSTER), retainedPath);
+        Assert.assertEquals(MkvTypeInfos.TAGS, clusterPath.getLast().getTypeInfo());
+    }
+}
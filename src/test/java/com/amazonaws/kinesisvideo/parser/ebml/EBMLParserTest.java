@@ -13,6 +13,7 @@ See the License for the specific language governing permissions and limitations
 */
 package com.amazonaws.kinesisvideo.parser.ebml;
 
+import com.amazonaws.kinesisvideo.parser.mkv.MkvTypeInfoProvider;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,8 +22,13 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.OptionalLong;
+import java.util.stream.Collectors;
 
 import static com.amazonaws.kinesisvideo.parser.ebml.EBMLUtils.UNKNOWN_LENGTH_VALUE;
 
@@ -115,6 +121,118 @@ public class EBMLParserTest {
         callParser(outputStream, 3);
     }
 
+    @Test
+    public void testMasterElementOneChildElementSizeBasedTerminationByteBufferSource() throws IOException {
+        ByteArrayOutputStream outputStream = setupTestForMasterElementWithOneChildAndElementSizedBasedTermination();
+
+        callParserWithByteBufferSource(outputStream, outputStream.size());
+    }
+
+    @Test
+    public void testMasterElementOneChildElementUnknownLengthByteBufferSourceMultipleChunks() throws IOException {
+        ByteArrayOutputStream outputStream = setupTestForMasterElementWithOneChildAndUnknownlength();
+
+        callParserWithByteBufferSource(outputStream, 3);
+    }
+
+    @Test
+    public void testMasterElementOneChildElementUnknownLengthFeedMultipleChunks() throws IOException {
+        ByteArrayOutputStream outputStream = setupTestForMasterElementWithOneChildAndUnknownlength();
+        byte [] data = outputStream.toByteArray();
+
+        int count = 0;
+        while (count < data.length) {
+            int length = Math.min(3, data.length - count);
+            ByteBuffer chunk = ByteBuffer.wrap(data, count, length);
+            parser.feed(chunk);
+            Assert.assertFalse(chunk.hasRemaining());
+            count += length;
+        }
+        parser.endOfInput();
+
+        Assert.assertTrue(parser.isClosed());
+        Assert.assertArrayEquals(data, parserCallback.rawBytes());
+        parserCallback.validateEmptyCallback();
+    }
+
+    @Test
+    public void testElementsNotReadByCallbacksAreSkipped() throws IOException, IllegalAccessException {
+        parserCallback = new TestEBMLParserCallback() {
+            @Override
+            public boolean shouldReadElement(EBMLTypeInfo typeInfo) {
+                return !TestEBMLTypeInfoProvider.EBMLVersion.equals(typeInfo);
+            }
+        };
+        parser = new EBMLParser(new TestEBMLTypeInfoProvider(), parserCallback);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte [] EBML_element_rawbytes = writeElement(EBML_id_bytes, wrapByte(0x89), outputStream);
+        writeElement(EBMLVersion_id_bytes, wrapByte(0x81), outputStream);
+        outputStream.write(new byte [] { (byte) 0x4});
+        byte [] EBMLReadVersion_element_rawbytes = writeElement(EBMLReadVersion_id_bytes, wrapByte(0x82), outputStream);
+        byte [] EBMLReadVersion_data_bytes = new byte [] { 0x72, 0x1C };
+        outputStream.write(EBMLReadVersion_data_bytes);
+
+        parserCallback.setCheckExpectedCallbacks(true);
+        parserCallback.expectCallback(TestEBMLParserCallback.CallbackDescription.builder()
+                .callbackType(TestEBMLParserCallback.CallbackDescription.CallbackType.START)
+                .typeInfo(TestEBMLTypeInfoProvider.EBML)
+                .elementCount(0)
+                .numBytes(OptionalLong.of(9))
+                .bytes(EBML_element_rawbytes)
+                .build());
+        addExpectedCallbacksForBaseElement(TestEBMLTypeInfoProvider.EBMLReadVersion,
+                EBMLReadVersion_element_rawbytes,
+                EBMLReadVersion_data_bytes,
+                2,
+                EBMLReadVersion_data_bytes.length).expectCallback(createExpectedCallbackForEndEBML(0));
+
+        testRawBytesMatch = false;
+        callParser(outputStream, outputStream.size());
+    }
+
+    @Test
+    public void testWithMultipleMasterElementsAndChildElementsRecyclingElements()
+            throws IOException, IllegalAccessException {
+        parser = new EBMLParser(new TestEBMLTypeInfoProvider(), parserCallback, 8192, true);
+        testWithMultipleMasterElementsAndChildElements();
+    }
+
+    @Test
+    public void testRetainedMetadataOfRecycledElements() throws IOException, IllegalAccessException {
+        List<EBMLElementMetaData> retainedMetadata = new ArrayList<>();
+        List<EBMLElementMetaData> passedMetadata = new ArrayList<>();
+        parserCallback = new TestEBMLParserCallback() {
+            @Override
+            public void onEndElement(EBMLElementMetaData elementMetaData, ElementPathSupplier pathSupplier) {
+                super.onEndElement(elementMetaData, pathSupplier);
+                passedMetadata.add(elementMetaData);
+                retainedMetadata.add(elementMetaData.retain());
+            }
+        };
+        parser = new EBMLParser(new TestEBMLTypeInfoProvider(), parserCallback, 8192, true);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeElement(EBML_id_bytes, wrapByte(0x89), outputStream);
+        writeElement(EBMLVersion_id_bytes, wrapByte(0x81), outputStream);
+        outputStream.write(new byte [] { (byte) 0x4});
+        writeElement(EBMLReadVersion_id_bytes, wrapByte(0x82), outputStream);
+        outputStream.write(new byte [] { 0x72, 0x1C });
+        outputStream.write(EBML_ZERO_LENGTH_RAWBYTES);
+        callParser(outputStream, 1);
+
+        //The metadata passed to the callbacks is reused, but the retained copies keep their values.
+        Assert.assertSame(passedMetadata.get(0), passedMetadata.get(3));
+        Assert.assertEquals(Arrays.asList(TestEBMLTypeInfoProvider.EBMLVersion,
+                TestEBMLTypeInfoProvider.EBMLReadVersion,
+                TestEBMLTypeInfoProvider.EBML,
+                TestEBMLTypeInfoProvider.EBML),
+                retainedMetadata.stream().map(EBMLElementMetaData::getTypeInfo).collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 0L, 3L),
+                retainedMetadata.stream().map(EBMLElementMetaData::getElementNumber).collect(Collectors.toList()));
+        Assert.assertSame(retainedMetadata.get(0), retainedMetadata.get(0).retain());
+    }
+
     @Test
     public void testMasterElementWithUnknownLengthAndEndOfStream() throws IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -321,6 +439,74 @@ public class EBMLParserTest {
         callParser(outputStream, 1);
     }
 
+    @Test
+    public void testRecyclingParserDoesNotAllocatePerElement() throws IOException {
+        final int numElements = 10000;
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        //The type info provider used by the other tests boxes the ids it looks up, so use the mkv one.
+        //Parse a few times first so that all the code paths have been run before measuring.
+        for (int i = 0; i < 3; i++) {
+            allocatedBytesToParse(threadMXBean, 2 * numElements);
+        }
+        final long allocatedForN = allocatedBytesToParse(threadMXBean, numElements);
+        final long allocatedFor2N = allocatedBytesToParse(threadMXBean, 2 * numElements);
+
+        //The parser may allocate a constant amount per parse call, but doubling the elements should not add anything.
+        Assert.assertTrue("Allocated " + allocatedForN + " bytes for " + numElements + " elements and "
+                        + allocatedFor2N + " bytes for " + 2 * numElements + " elements",
+                allocatedFor2N - allocatedForN < numElements);
+    }
+
+    private static long allocatedBytesToParse(com.sun.management.ThreadMXBean threadMXBean, int numElements)
+            throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte [] ebmlWithVersion = new byte [] { (byte) 0x1A, (byte) 0x45, (byte) 0xDF, (byte) 0xA3, (byte) 0x84,
+                (byte) 0x42, (byte) 0x86, (byte) 0x81, (byte) 0x01 };
+        for (int i = 0; i < numElements; i++) {
+            outputStream.write(ebmlWithVersion);
+        }
+        CountingCallbacks callbacks = new CountingCallbacks();
+        EBMLParser recyclingParser = new EBMLParser(new MkvTypeInfoProvider(), callbacks, 8192, true);
+        ByteBufferParserByteSource byteSource =
+                new ByteBufferParserByteSource(ByteBuffer.wrap(outputStream.toByteArray()));
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        recyclingParser.parse(byteSource);
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        recyclingParser.closeParser();
+
+        Assert.assertEquals(2L * numElements, callbacks.elementCount);
+        return allocatedBytes;
+    }
+
+    private static class CountingCallbacks implements EBMLParserCallbacks {
+        private final ByteBuffer contentBuffer = ByteBuffer.allocate(8192);
+        private long elementCount;
+
+        @Override
+        public void onStartElement(EBMLElementMetaData elementMetaData,
+                long elementDataSize,
+                ByteBuffer idAndSizeRawBytes,
+                ElementPathSupplier pathSupplier) {
+            elementCount++;
+        }
+
+        @Override
+        public void onPartialContent(EBMLElementMetaData elementMetaData,
+                ParserBulkByteSource bulkByteSource,
+                int bytesToRead) {
+            contentBuffer.clear();
+            bulkByteSource.readBytes(contentBuffer, bytesToRead);
+        }
+
+        @Override
+        public void onEndElement(EBMLElementMetaData elementMetaData, ElementPathSupplier pathSupplier) {
+        }
+    }
+
     private ByteArrayOutputStream setupTestForMasterElementWithOneChildAndUnknownlength() throws IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         byte [] EBML_element_rawbytes = writeElement(EBML_id_bytes, UNKNOWN_LENGTH, outputStream);
@@ -484,4 +670,18 @@ public class EBMLParserTest {
         //TODO: enable later
         parserCallback.validateEmptyCallback();
     }
+
+    private void callParserWithByteBufferSource(ByteArrayOutputStream outputStream, int chunkSize) {
+        byte [] data = outputStream.toByteArray();
+        int count = 0;
+        while (count < data.length) {
+            int length = Math.min(chunkSize, data.length - count);
+            parser.parse(new ByteBufferParserByteSource(ByteBuffer.wrap(data, count, length)));
+            count += length;
+        }
+        parser.closeParser();
+
+        Assert.assertArrayEquals(data, parserCallback.rawBytes());
+        parserCallback.validateEmptyCallback();
+    }
 }
@@ -0,0 +1,93 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.ebml;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for {@link EBMLTypeInfoTable}.
+ */
+public class EBMLTypeInfoTableTest {
+
+    @Test
+    public void testAllMkvTypeInfosFound() throws IllegalAccessException {
+        List<EBMLTypeInfo> mkvTypeInfos = new ArrayList<>();
+        for (Field field : MkvTypeInfos.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType().equals(EBMLTypeInfo.class)) {
+                mkvTypeInfos.add((EBMLTypeInfo) field.get(null));
+            }
+        }
+
+        EBMLTypeInfoTable table = EBMLTypeInfoTable.of(mkvTypeInfos);
+
+        Assert.assertEquals(mkvTypeInfos.size(), table.size());
+        for (EBMLTypeInfo typeInfo : mkvTypeInfos) {
+            Assert.assertSame(typeInfo, table.getTypeOrNull(typeInfo.getId()));
+            Assert.assertSame(typeInfo, table.getType(typeInfo.getId()).get());
+        }
+        Assert.assertNull(table.getTypeOrNull(0x1234));
+        Assert.assertFalse(table.getType(0x1234).isPresent());
+    }
+
+    @Test
+    public void testTypeInfosHaveDenseIndexesPerTable() {
+        EBMLTypeInfoTable table = EBMLTypeInfoTable.of(Arrays.asList(MkvTypeInfos.SEGMENT, MkvTypeInfos.CLUSTER));
+        EBMLTypeInfoTable otherTable = EBMLTypeInfoTable.of(Arrays.asList(MkvTypeInfos.CLUSTER));
+
+        Assert.assertEquals(0, table.indexOf(MkvTypeInfos.SEGMENT));
+        Assert.assertEquals(1, table.indexOf(MkvTypeInfos.CLUSTER));
+        Assert.assertEquals(EBMLTypeInfoTable.NO_INDEX, table.indexOf(MkvTypeInfos.TIMECODE));
+        Assert.assertEquals(0, otherTable.indexOf(MkvTypeInfos.CLUSTER));
+        Assert.assertEquals(EBMLTypeInfoTable.NO_INDEX, otherTable.indexOf(MkvTypeInfos.SEGMENT));
+        Assert.assertSame(MkvTypeInfos.SEGMENT, table.getTypeOrNull(MkvTypeInfos.SEGMENT.getId()));
+    }
+
+    @Test
+    public void testUserConstructedTypeInfosKeepEquality() {
+        EBMLTypeInfoTable table = EBMLTypeInfoTable.of(Arrays.asList(MkvTypeInfos.SEGMENT, MkvTypeInfos.CLUSTER));
+        EBMLTypeInfo userCluster = new EBMLTypeInfo.EBMLTypeInfoBuilder().name(MkvTypeInfos.CLUSTER.getName())
+                .id(MkvTypeInfos.CLUSTER.getId()).level(MkvTypeInfos.CLUSTER.getLevel())
+                .type(MkvTypeInfos.CLUSTER.getType()).build();
+        EBMLTypeInfo otherCluster = new EBMLTypeInfo.EBMLTypeInfoBuilder().name("OtherCluster")
+                .id(MkvTypeInfos.CLUSTER.getId()).level(1).type(EBMLTypeInfo.TYPE.MASTER).build();
+
+        Assert.assertEquals(MkvTypeInfos.CLUSTER, userCluster);
+        Assert.assertEquals(MkvTypeInfos.CLUSTER.hashCode(), userCluster.hashCode());
+        Assert.assertEquals(table.indexOf(MkvTypeInfos.CLUSTER), table.indexOf(userCluster));
+        Assert.assertEquals(EBMLTypeInfoTable.NO_INDEX, table.indexOf(otherCluster));
+        Assert.assertSame(MkvTypeInfos.CLUSTER, table.canonical(userCluster));
+        Assert.assertSame(otherCluster, table.canonical(otherCluster));
+
+        EBMLTypeInfoSet typeInfoSet = table.newSet(Arrays.asList(userCluster, otherCluster));
+        Assert.assertTrue(typeInfoSet.contains(MkvTypeInfos.CLUSTER));
+        Assert.assertTrue(typeInfoSet.contains(userCluster));
+        Assert.assertTrue(typeInfoSet.contains(otherCluster));
+        Assert.assertFalse(typeInfoSet.contains(MkvTypeInfos.SEGMENT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateIdsRejected() {
+        EBMLTypeInfo duplicateSegment = new EBMLTypeInfo.EBMLTypeInfoBuilder().name("DuplicateSegment")
+                .id(MkvTypeInfos.SEGMENT.getId()).level(0).type(EBMLTypeInfo.TYPE.MASTER).build();
+
+        EBMLTypeInfoTable.of(Arrays.asList(MkvTypeInfos.SEGMENT, duplicateSegment));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for splitting the laced frames of a {@link Frame}.
+ */
+public class FrameTest {
+    private static final int TRACK_NUMBER_ONE = 0x81;
+    private static final int KEY_FRAME_FLAG = 0x80;
+
+    @Test
+    public void testFrameWithoutLacingHasOneLace() {
+        byte[] laceData = laceData(7);
+        Frame frame = Frame.withCopy(simpleBlock(0x00, new byte[0], laceData));
+
+        Assert.assertEquals(Frame.Lacing.NO, frame.getLacing());
+        Assert.assertEquals(Arrays.asList(ByteBuffer.wrap(laceData)), laces(frame));
+    }
+
+    @Test
+    public void testXiphLacing() {
+        //Three laces of 300, 2 and 5 bytes, the size 300 takes two bytes.
+        Frame frame = Frame.withCopy(simpleBlock(0x02, new byte[] {0x02, (byte) 0xFF, 0x2D, 0x02}, laceData(307)));
+
+        Assert.assertEquals(Frame.Lacing.XIPH, frame.getLacing());
+        assertLaceSizes(frame, 300, 2, 5);
+    }
+
+    @Test
+    public void testEbmlLacing() {
+        //Three laces of 300, 298 and 5 bytes, the second size is the difference -2 from the first.
+        Frame frame = Frame.withCopy(simpleBlock(0x06, new byte[] {0x02, 0x41, 0x2C, (byte) 0xBD}, laceData(603)));
+
+        Assert.assertEquals(Frame.Lacing.EBML, frame.getLacing());
+        assertLaceSizes(frame, 300, 298, 5);
+    }
+
+    @Test
+    public void testFixedSizeLacing() {
+        Frame frame = Frame.readOnlyView(simpleBlock(0x04, new byte[] {0x03}, laceData(40)));
+
+        Assert.assertEquals(Frame.Lacing.FIXED_SIZE, frame.getLacing());
+        assertLaceSizes(frame, 10, 10, 10, 10);
+        Assert.assertTrue(frame.laceIterator().next().isReadOnly());
+    }
+
+    private static void assertLaceSizes(Frame frame, int... laceSizes) {
+        List<ByteBuffer> laces = laces(frame);
+        Assert.assertEquals(laceSizes.length, frame.laceIterator().getNumLaces());
+        Assert.assertEquals(laceSizes.length, laces.size());
+        int offset = 0;
+        for (int i = 0; i < laceSizes.length; i++) {
+            Assert.assertEquals(ByteBuffer.wrap(laceData(offset + laceSizes[i]), offset, laceSizes[i]), laces.get(i));
+            offset += laceSizes[i];
+        }
+    }
+
+    private static List<ByteBuffer> laces(Frame frame) {
+        List<ByteBuffer> laces = new ArrayList<>();
+        frame.laceIterator().forEachRemaining(laces::add);
+        return laces;
+    }
+
+    private static byte[] laceData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static ByteBuffer simpleBlock(int lacingFlags, byte[] laceHeader, byte[] laceData) {
+        ByteArrayOutputStream simpleBlock = new ByteArrayOutputStream();
+        simpleBlock.write(TRACK_NUMBER_ONE);
+        simpleBlock.write(0x00);
+        simpleBlock.write(0x10);
+        simpleBlock.write(KEY_FRAME_FLAG | lacingFlags);
+        simpleBlock.write(laceHeader, 0, laceHeader.length);
+        simpleBlock.write(laceData, 0, laceData.length);
+        return ByteBuffer.wrap(simpleBlock.toByteArray());
+    }
+}
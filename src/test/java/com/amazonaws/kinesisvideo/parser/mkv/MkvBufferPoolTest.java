@@ -0,0 +1,100 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tests for {@link MkvBufferPool}.
+ */
+public class MkvBufferPoolTest {
+
+    @Test
+    public void testReleasedBuffersAreReused() {
+        MkvBufferPool bufferPool = new MkvBufferPool();
+        PooledByteBuffer first = bufferPool.acquire(100);
+        ByteBuffer firstBuffer = first.getBuffer();
+        Assert.assertEquals(100, firstBuffer.limit());
+        Assert.assertEquals(128, firstBuffer.capacity());
+        Assert.assertEquals(1, bufferPool.getBuffersInUse());
+        Assert.assertEquals(128, bufferPool.getBytesInUse());
+
+        Assert.assertTrue(first.release());
+        Assert.assertEquals(0, bufferPool.getBuffersInUse());
+        Assert.assertEquals(1, bufferPool.getPooledBuffers());
+        Assert.assertEquals(128, bufferPool.getPooledBytes());
+
+        PooledByteBuffer second = bufferPool.acquire(120);
+        Assert.assertSame(firstBuffer, second.getBuffer());
+        Assert.assertEquals(120, second.getBuffer().limit());
+        Assert.assertEquals(1, bufferPool.getAllocatedBuffers());
+        Assert.assertEquals(0, bufferPool.getPooledBuffers());
+
+        PooledByteBuffer larger = bufferPool.acquire(129);
+        Assert.assertEquals(256, larger.getBuffer().capacity());
+        Assert.assertEquals(2, bufferPool.getAllocatedBuffers());
+    }
+
+    @Test
+    public void testBufferIsReturnedWhenLastReferenceIsReleased() {
+        MkvBufferPool bufferPool = new MkvBufferPool();
+        PooledByteBuffer buffer = bufferPool.acquire(10);
+        buffer.retain();
+        Assert.assertEquals(2, buffer.refCount());
+        Assert.assertFalse(buffer.release());
+        Assert.assertEquals(1, bufferPool.getBuffersInUse());
+        Assert.assertTrue(buffer.release());
+        Assert.assertEquals(0, bufferPool.getBuffersInUse());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleasedBufferCannotBeRetained() {
+        PooledByteBuffer buffer = new MkvBufferPool().acquire(10);
+        buffer.release();
+        buffer.retain();
+    }
+
+    @Test
+    public void testFreeBuffersPerSizeClassAreBounded() {
+        MkvBufferPool bufferPool = new MkvBufferPool(1);
+        PooledByteBuffer first = bufferPool.acquire(1000);
+        PooledByteBuffer second = bufferPool.acquire(1000);
+        first.release();
+        second.release();
+        Assert.assertEquals(1, bufferPool.getPooledBuffers());
+        Assert.assertEquals(1024, bufferPool.getPooledBytes());
+    }
+
+    @Test
+    public void testLeakedBufferIsDetectedAndNotPooledAgain() throws InterruptedException {
+        MkvBufferPool bufferPool = new MkvBufferPool();
+        acquireWithoutRelease(bufferPool);
+        for (int i = 0; i < 50 && bufferPool.getLeakedBuffers() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, bufferPool.getLeakedBuffers());
+        Assert.assertEquals(0, bufferPool.getBuffersInUse());
+        Assert.assertEquals(0, bufferPool.getBytesInUse());
+        Assert.assertEquals(0, bufferPool.getPooledBuffers());
+        Assert.assertEquals(0, bufferPool.getPooledBytes());
+    }
+
+    private static void acquireWithoutRelease(MkvBufferPool bufferPool) {
+        bufferPool.acquire(500);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLElementMetaData;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+/**
+ * Tests for the typed value accessors of {@link MkvDataElement}.
+ */
+public class MkvDataElementTest {
+
+    @Test
+    public void testUnsignedLongMatchesValueCopy() {
+        for (byte[] data : new byte[][] {{}, {0x01}, {(byte) 0xFF}, {0x12, (byte) 0x80, 0x00},
+                {0x7F, -1, -1, -1, -1, -1, -1, -1}}) {
+            MkvDataElement dataElement = createDataElement(MkvTypeInfos.TIMECODE, data);
+            Assert.assertEquals(((BigInteger) dataElement.getValueCopy().getVal()).longValueExact(),
+                    dataElement.getUnsignedLong());
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testUnsignedLongRejectsValuesThatNeed64Bits() {
+        createDataElement(MkvTypeInfos.TIMECODE, new byte[] {-1, -1, -1, -1, -1, -1, -1, -1}).getUnsignedLong();
+    }
+
+    @Test
+    public void testSignedLongMatchesValueCopy() {
+        for (byte[] data : new byte[][] {{}, {0x01}, {(byte) 0xFF}, {(byte) 0x80, 0x00}, {0x12, 0x34, 0x56},
+                {-1, -1, -1, -1, -1, -1, -1, -2}}) {
+            MkvDataElement dataElement = createDataElement(MkvTypeInfos.REFERENCEBLOCK, data);
+            Assert.assertEquals(dataElement.getValueCopy().getVal(), dataElement.getSignedLong());
+        }
+    }
+
+    @Test
+    public void testDoubleMatchesValueCopy() {
+        ByteBuffer floatData = ByteBuffer.allocate(Float.BYTES).putFloat(0, 1.5f);
+        ByteBuffer doubleData = ByteBuffer.allocate(Double.BYTES).putDouble(0, -2.25);
+
+        Assert.assertEquals(1.5, createDataElement(MkvTypeInfos.DURATION, floatData.array()).getDouble(), 0.0);
+        Assert.assertEquals(-2.25, createDataElement(MkvTypeInfos.DURATION, doubleData.array()).getDouble(), 0.0);
+        Assert.assertEquals(0.0, createDataElement(MkvTypeInfos.DURATION, new byte[0]).getDouble(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDoubleOfInvalidSize() {
+        createDataElement(MkvTypeInfos.DURATION, new byte[3]).getDouble();
+    }
+
+    @Test
+    public void testStringsDecodedWithReusedDecoder() {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        MkvDataElement tagName = createDataElement(MkvTypeInfos.TAGNAME,
+                "AWS_KINESISVIDEO_FRAGMENT_NUMBER".getBytes(StandardCharsets.UTF_8));
+        MkvDataElement otherTagName = createDataElement(MkvTypeInfos.TAGNAME, "caf\u00e9".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals("AWS_KINESISVIDEO_FRAGMENT_NUMBER", tagName.getString(decoder));
+        Assert.assertEquals("caf\u00e9", otherTagName.getString(decoder));
+        Assert.assertEquals(tagName.getValueCopy().getVal(), tagName.getString(decoder));
+        Assert.assertEquals("V_MPEG4/ISO/AVC", createDataElement(MkvTypeInfos.CODECID,
+                "V_MPEG4/ISO/AVC".getBytes(StandardCharsets.US_ASCII)).getString(StandardCharsets.US_ASCII.newDecoder()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAccessorRejectsOtherTypes() {
+        createDataElement(MkvTypeInfos.TIMECODE, new byte[] {0x01}).getSignedLong();
+    }
+
+    private static MkvDataElement createDataElement(EBMLTypeInfo typeInfo, byte[] data) {
+        return MkvDataElement.builder()
+                .elementMetaData(EBMLElementMetaData.builder().typeInfo(typeInfo).elementNumber(0).build())
+                .elementPath(Collections.emptyList())
+                .idAndSizeRawBytes(ByteBuffer.allocate(0))
+                .dataSize(data.length)
+                .dataBuffer(ByteBuffer.wrap(data))
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv;
+
+import com.amazonaws.kinesisvideo.parser.TestResourceUtil;
+import com.amazonaws.kinesisvideo.parser.ebml.ByteBufferParserByteSource;
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link MkvEventParser}.
+ */
+public class MkvEventParserTest {
+
+    @Test
+    public void testEventsMatchStreamingMkvReader() throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        List<Frame> frames = new ArrayList<>();
+        StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data)))
+                .apply(new MkvElementVisitor() {
+                    @Override
+                    public void visit(MkvStartMasterElement startMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvEndMasterElement endMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvDataElement dataElement) {
+                        if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                            frames.add((Frame) dataElement.getValueCopy().getVal());
+                        }
+                    }
+                });
+
+        RecordingHandler handler = new RecordingHandler();
+        new MkvEventParser(handler).parseAll(new ByteBufferParserByteSource(ByteBuffer.wrap(data)));
+        assertRecordedEvents(handler, frames);
+
+        RecordingHandler feedHandler = new RecordingHandler();
+        MkvEventParser feedParser = new MkvEventParser(feedHandler);
+        int chunkSize = 777;
+        for (int count = 0; count < data.length; count += chunkSize) {
+            feedParser.feed(ByteBuffer.wrap(data, count, Math.min(chunkSize, data.length - count)));
+        }
+        feedParser.endOfInput();
+        assertRecordedEvents(feedHandler, frames);
+    }
+
+    @Test
+    public void testSkippedElementsAreNotPassedToTheHandler() throws IOException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        List<String> tagNames = new ArrayList<>();
+        new MkvEventParser(new MkvEventHandler() {
+            @Override
+            public boolean shouldRead(int id) {
+                return id == MkvTypeInfos.TAGNAME.getId();
+            }
+
+            @Override
+            public void onString(int id, ByteBuffer value) {
+                Assert.assertEquals(MkvTypeInfos.TAGNAME.getId(), id);
+                tagNames.add(StandardCharsets.UTF_8.decode(value).toString());
+            }
+
+            @Override
+            public void onSimpleBlock(long trackNumber, short timecode, int flags, ByteBuffer payload) {
+                Assert.fail("SimpleBlocks should be skipped");
+            }
+        }).parseAll(new ByteBufferParserByteSource(ByteBuffer.wrap(data)));
+
+        Assert.assertEquals(60, tagNames.size());
+        Assert.assertTrue(tagNames.contains("AWS_KINESISVIDEO_FRAGMENT_NUMBER"));
+    }
+
+    private static void assertRecordedEvents(RecordingHandler handler, List<Frame> frames) {
+        Assert.assertEquals(0, handler.depth);
+        Assert.assertEquals(5, handler.clusters);
+        Assert.assertEquals(1000000, handler.timecodeScale);
+        Assert.assertEquals(frames.size(), handler.frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            Frame expected = frames.get(i);
+            Frame actual = handler.frames.get(i);
+            Assert.assertEquals(expected.getTrackNumber(), actual.getTrackNumber());
+            Assert.assertEquals(expected.getTimeCode(), actual.getTimeCode());
+            Assert.assertEquals(expected.isKeyFrame(), actual.isKeyFrame());
+            Assert.assertEquals(expected.getFrameData(), actual.getFrameData());
+        }
+    }
+
+    private static class RecordingHandler implements MkvEventHandler {
+        private int depth;
+        private int clusters;
+        private long timecodeScale;
+        private final List<Frame> frames = new ArrayList<>();
+
+        @Override
+        public void onMasterStart(int id, long size, int depth) {
+            Assert.assertEquals(this.depth, depth);
+            this.depth++;
+            if (id == MkvTypeInfos.CLUSTER.getId()) {
+                clusters++;
+            }
+        }
+
+        @Override
+        public void onMasterEnd(int id, int depth) {
+            this.depth--;
+            Assert.assertEquals(this.depth, depth);
+        }
+
+        @Override
+        public void onUnsigned(int id, long value) {
+            if (id == MkvTypeInfos.TIMECODESCALE.getId()) {
+                timecodeScale = value;
+            }
+        }
+
+        @Override
+        public void onSimpleBlock(long trackNumber, short timecode, int flags, ByteBuffer payload) {
+            ByteBuffer frameData = ByteBuffer.allocate(payload.remaining());
+            frameData.put(payload);
+            frameData.flip();
+            frames.add(Frame.builder()
+                    .trackNumber(trackNumber)
+                    .timeCode(timecode)
+                    .keyFrame((flags & 0x80) != 0)
+                    .frameData(frameData)
+                    .build());
+        }
+    }
+}
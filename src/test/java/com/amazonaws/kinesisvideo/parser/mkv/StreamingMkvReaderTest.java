@@ -16,11 +16,16 @@ package com.amazonaws.kinesisvideo.parser.mkv;
 
 
 import com.amazonaws.kinesisvideo.parser.TestResourceUtil;
+import com.amazonaws.kinesisvideo.parser.ebml.ByteBufferParserByteSource;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLParserCheckpoint;
 import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
 import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
+import com.amazonaws.kinesisvideo.parser.ebml.MappedFileParserByteSource;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.ebml.ParserByteSource;
 
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.mkv.visitors.CopyVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CountVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.ElementSizeAndOffsetVisitor;
 import org.junit.Assert;
@@ -28,9 +33,18 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -39,6 +53,7 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 
 /**
  * Tests for {@link StreamingMkvReader}.
@@ -67,6 +82,546 @@ public class StreamingMkvReaderTest {
         assertCountsOfTypes(visitor, 1, 8, 444, 1);
     }
 
+    @Test
+    public void testClustersMkvAllElementsWithByteBufferSource() throws IOException, MkvElementVisitException {
+        ByteBufferParserByteSource parserByteSource =
+                new ByteBufferParserByteSource(TestResourceUtil.getTestInputStream("clusters.mkv"));
+
+        StreamingMkvReader streamReader = StreamingMkvReader.createDefault(parserByteSource);
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        assertCountsOfTypes(visitor, 1, 8, 444, 1);
+    }
+
+    @Test
+    public void testGetDataOutputMkvAllElementsWithSmallByteBufferWindow() throws IOException, MkvElementVisitException {
+        //A small window makes ids and sizes cross the window boundary often.
+        ByteBufferParserByteSource parserByteSource = new ByteBufferParserByteSource(
+                Channels.newChannel(TestResourceUtil.getTestInputStream("output_get_media.mkv")), 97, true);
+
+        StreamingMkvReader streamReader = StreamingMkvReader.createDefault(parserByteSource);
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        assertCountsOfTypes(visitor, 5, 5, 300, 5);
+    }
+
+    @Test
+    public void testClustersMkvAllElementsWithChannelReadingZeroBytes() throws IOException, MkvElementVisitException {
+        //Every other read of the channel reads nothing, like a non blocking channel without data.
+        ReadableByteChannel inputChannel = Channels.newChannel(TestResourceUtil.getTestInputStream("clusters.mkv"));
+        ReadableByteChannel channel = new ReadableByteChannel() {
+            private boolean readNothing = true;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                readNothing = !readNothing;
+                if (!readNothing) {
+                    return 0;
+                }
+                ByteBuffer smallDst = dst.duplicate();
+                smallDst.limit(Math.min(dst.limit(), dst.position() + 50));
+                int numBytesRead = inputChannel.read(smallDst);
+                dst.position(smallDst.position());
+                return numBytesRead;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return inputChannel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                inputChannel.close();
+            }
+        };
+
+        StreamingMkvReader streamReader =
+                StreamingMkvReader.createDefault(new ByteBufferParserByteSource(channel, 97, false));
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        assertCountsOfTypes(visitor, 1, 8, 444, 1);
+    }
+
+    @Test
+    public void testByteBufferSourceAvailableDoesNotRead() throws IOException {
+        InputStream inputStream = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("available should not read from the input stream");
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+        ByteBufferParserByteSource parserByteSource = new ByteBufferParserByteSource(inputStream);
+
+        Assert.assertEquals(0, parserByteSource.available());
+        Assert.assertFalse(streamReaderHasElementAvailable(parserByteSource));
+    }
+
+    private static boolean streamReaderHasElementAvailable(ParserByteSource parserByteSource) {
+        return StreamingMkvReader.createDefault(parserByteSource).nextIfAvailable().isPresent();
+    }
+
+    @Test
+    public void testClustersMkvAllElementsWithMappedFile() throws Exception {
+        StreamingMkvReader streamReader = StreamingMkvReader.createForFile(getTestFilePath("clusters.mkv"));
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        assertCountsOfTypes(visitor, 1, 8, 444, 1);
+    }
+
+    @Test
+    public void testGetDataOutputMkvAllElementsWithRollingMappedWindows() throws Exception {
+        FileChannel fileChannel = FileChannel.open(getTestFilePath("output_get_media.mkv"), StandardOpenOption.READ);
+        MappedFileParserByteSource parserByteSource = new MappedFileParserByteSource(fileChannel, 1000);
+
+        StreamingMkvReader streamReader = StreamingMkvReader.createDefault(parserByteSource);
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        assertCountsOfTypes(visitor, 5, 5, 300, 5);
+        Assert.assertFalse(fileChannel.isOpen());
+    }
+
+    @Test
+    public void testGetDataOutputMkvTagNamesWithSeekingMappedFile() throws Exception {
+        FileChannel fileChannel = FileChannel.open(getTestFilePath("output_get_media.mkv"), StandardOpenOption.READ);
+        //The frames skipped by the parser span many windows, which are never mapped.
+        MappedFileParserByteSource parserByteSource = new MappedFileParserByteSource(fileChannel, 1000);
+
+        Assert.assertEquals(5 * 12, countTagNames(parserByteSource));
+        Assert.assertTrue(parserByteSource.eof());
+    }
+
+    @Test
+    public void testGetDataOutputMkvTagNamesWithSeekingFileChannel() throws Exception {
+        FileChannel fileChannel = FileChannel.open(getTestFilePath("output_get_media.mkv"), StandardOpenOption.READ);
+        ByteBufferParserByteSource parserByteSource = new ByteBufferParserByteSource(fileChannel, 97, false);
+
+        Assert.assertEquals(5 * 12, countTagNames(parserByteSource));
+        Assert.assertEquals(fileChannel.size(), parserByteSource.position());
+        fileChannel.close();
+    }
+
+    @Test
+    public void testGetDataOutputMkvTagNamesWithNonSeekableChannel() throws Exception {
+        ByteBufferParserByteSource parserByteSource = new ByteBufferParserByteSource(
+                Channels.newChannel(TestResourceUtil.getTestInputStream("output_get_media.mkv")), 97, false);
+        Assert.assertFalse(parserByteSource.isSeekable());
+
+        Assert.assertEquals(5 * 12, countTagNames(parserByteSource));
+    }
+
+    @Test
+    public void testNonSeekableChannelMovesForwardByReading() throws Exception {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteBufferParserByteSource parserByteSource =
+                new ByteBufferParserByteSource(Channels.newChannel(new ByteArrayInputStream(data)), 16, false);
+
+        parserByteSource.position(500);
+        Assert.assertEquals(500, parserByteSource.position());
+        Assert.assertEquals(500 & 0xFF, parserByteSource.readByte());
+        parserByteSource.position(498);
+        Assert.assertEquals(498 & 0xFF, parserByteSource.readByte());
+        try {
+            parserByteSource.position(10);
+            Assert.fail("Moved back before the window of a non seekable channel");
+        } catch (UnsupportedOperationException e) {
+            //Expected
+        }
+    }
+
+    private int countTagNames(ParserByteSource parserByteSource) {
+        List<EBMLTypeInfo> mkvTypeInfosToRead = new ArrayList<>();
+        mkvTypeInfosToRead.add(MkvTypeInfos.TAGNAME);
+        StreamingMkvReader streamReader = new StreamingMkvReader(true, mkvTypeInfosToRead, parserByteSource);
+
+        int count = 0;
+        while (streamReader.mightHaveNext()) {
+            Optional<MkvElement> mkvElement = streamReader.nextIfAvailable();
+            if (mkvElement.isPresent() && mkvElement.get().getClass().equals(MkvDataElement.class)) {
+                Assert.assertEquals(MkvTypeInfos.TAGNAME, mkvElement.get().getElementMetaData().getTypeInfo());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testGetDataOutputMkvAllElementsZeroCopyWithRollingMappedWindows() throws Exception {
+        FileChannel fileChannel = FileChannel.open(getTestFilePath("output_get_media.mkv"), StandardOpenOption.READ);
+        StreamingMkvReader streamReader =
+                StreamingMkvReader.create(new MappedFileParserByteSource(fileChannel, 10000),
+                        StreamingMkvReader.Configuration.builder().zeroCopy(true).build());
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        assertCountsOfTypes(visitor, 5, 5, 300, 5);
+    }
+
+    @Test
+    public void testRetainedZeroCopyFramesMatchCopiedFrames() throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        List<ByteBuffer> copiedFrames = new ArrayList<>();
+        StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data)))
+                .apply(new MkvElementVisitor() {
+                    @Override
+                    public void visit(MkvStartMasterElement startMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvEndMasterElement endMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvDataElement dataElement) {
+                        if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                            ByteBuffer copy = ByteBuffer.allocate(dataElement.getDataBuffer().limit());
+                            copy.put(dataElement.getDataBuffer());
+                            copy.flip();
+                            copiedFrames.add(copy);
+                        }
+                    }
+                });
+
+        List<MkvDataElement> retainedFrameElements = new ArrayList<>();
+        StreamingMkvReader.create(new ByteBufferParserByteSource(ByteBuffer.wrap(data)),
+                StreamingMkvReader.Configuration.builder().zeroCopy(true).build())
+                .apply(new MkvElementVisitor() {
+                    @Override
+                    public void visit(MkvStartMasterElement startMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvEndMasterElement endMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvDataElement dataElement) {
+                        if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                            //The whole file is resident, so the frames are views of it.
+                            Assert.assertTrue(dataElement.getDataBuffer().isReadOnly());
+                            retainedFrameElements.add(dataElement.retain());
+                        }
+                    }
+                });
+
+        Assert.assertEquals(300, copiedFrames.size());
+        Assert.assertEquals(copiedFrames.size(), retainedFrameElements.size());
+        for (int i = 0; i < copiedFrames.size(); i++) {
+            Assert.assertEquals(copiedFrames.get(i), retainedFrameElements.get(i).getDataBuffer());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCopyReaderCannotUseBufferPool() {
+        StreamingMkvReader.create(new ByteBufferParserByteSource(ByteBuffer.allocate(0)),
+                StreamingMkvReader.Configuration.builder().zeroCopy(true).bufferPool(new MkvBufferPool()).build());
+    }
+
+    @Test
+    public void testRetainedPooledFramesOutliveTheReader() throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        MkvBufferPool bufferPool = new MkvBufferPool();
+        List<ByteBuffer> copiedFrames = new ArrayList<>();
+        List<MkvDataElement> retainedFrameElements = new ArrayList<>();
+        StreamingMkvReader.create(new ByteBufferParserByteSource(ByteBuffer.wrap(data)),
+                StreamingMkvReader.Configuration.builder().bufferPool(bufferPool).build())
+                .apply(new MkvElementVisitor() {
+                    @Override
+                    public void visit(MkvStartMasterElement startMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvEndMasterElement endMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvDataElement dataElement) {
+                        if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                            ByteBuffer copy = ByteBuffer.allocate(dataElement.getDataBuffer().limit());
+                            copy.put(dataElement.getDataBuffer());
+                            copy.flip();
+                            dataElement.getDataBuffer().rewind();
+                            copiedFrames.add(copy);
+                            retainedFrameElements.add(dataElement.retain());
+                        }
+                    }
+                });
+
+        Assert.assertEquals(300, retainedFrameElements.size());
+        //Only the retained frames are still in use, the buffers of the other elements went back to the pool.
+        Assert.assertEquals(retainedFrameElements.size(), bufferPool.getBuffersInUse());
+        Assert.assertTrue(bufferPool.getAllocatedBuffers() < 862);
+        for (int i = 0; i < copiedFrames.size(); i++) {
+            Assert.assertEquals(copiedFrames.get(i), retainedFrameElements.get(i).getDataBuffer());
+        }
+
+        retainedFrameElements.forEach(MkvDataElement::release);
+        Assert.assertEquals(0, bufferPool.getBuffersInUse());
+        Assert.assertEquals(0, bufferPool.getBytesInUse());
+        Assert.assertEquals(0, bufferPool.getLeakedBuffers());
+        Assert.assertNull(retainedFrameElements.get(0).getDataBuffer());
+    }
+
+    @Test
+    public void testChunkedDeliveryOfLargeFrames() throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        List<ByteBuffer> copiedFrames = new ArrayList<>();
+        StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data)))
+                .apply(new MkvElementVisitor() {
+                    @Override
+                    public void visit(MkvStartMasterElement startMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvEndMasterElement endMasterElement) {
+                    }
+
+                    @Override
+                    public void visit(MkvDataElement dataElement) {
+                        if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                            copiedFrames.add(copyOf(dataElement.getDataBuffer()));
+                        }
+                    }
+                });
+
+        int chunkThreshold = 2000;
+        List<ByteBuffer> assembledFrames = new ArrayList<>();
+        ByteArrayOutputStream copyOutputStream = new ByteArrayOutputStream();
+        CopyVisitor copyVisitor = new CopyVisitor(copyOutputStream);
+        MkvElementVisitor frameVisitor = new MkvElementVisitor() {
+            private ByteArrayOutputStream currentFrame;
+
+            @Override
+            public void visit(MkvStartMasterElement startMasterElement) {
+            }
+
+            @Override
+            public void visit(MkvEndMasterElement endMasterElement) {
+            }
+
+            @Override
+            public void visit(MkvDataElement dataElement) {
+                if (MkvTypeInfos.SIMPLEBLOCK.equals(dataElement.getElementMetaData().getTypeInfo())) {
+                    Assert.assertTrue(dataElement.getDataSize() <= chunkThreshold);
+                    assembledFrames.add(copyOf(dataElement.getDataBuffer()));
+                }
+            }
+
+            @Override
+            public void visit(MkvDataChunk dataChunk) {
+                Assert.assertEquals(MkvTypeInfos.SIMPLEBLOCK, dataChunk.getElementMetaData().getTypeInfo());
+                Assert.assertTrue(dataChunk.getDataSize() > chunkThreshold);
+                if (dataChunk.isFirst()) {
+                    currentFrame = new ByteArrayOutputStream();
+                }
+                Assert.assertEquals(currentFrame.size(), dataChunk.getChunkOffset());
+                ByteBuffer chunk = copyOf(dataChunk.getChunkBuffer());
+                currentFrame.write(chunk.array(), 0, chunk.limit());
+                if (dataChunk.isLast()) {
+                    assembledFrames.add(ByteBuffer.wrap(currentFrame.toByteArray()));
+                }
+            }
+        };
+        StreamingMkvReader.create(new ByteBufferParserByteSource(ByteBuffer.wrap(data)),
+                StreamingMkvReader.Configuration.builder().chunkThreshold(OptionalInt.of(chunkThreshold)).build()).apply(new CompositeMkvElementVisitor(frameVisitor, copyVisitor));
+
+        Assert.assertEquals(300, copiedFrames.size());
+        Assert.assertEquals(copiedFrames, assembledFrames);
+        Assert.assertArrayEquals(data, copyOutputStream.toByteArray());
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.limit());
+        buffer.rewind();
+        copy.put(buffer);
+        copy.flip();
+        buffer.rewind();
+        return copy;
+    }
+
+    @Test
+    public void testFrameHeaderFilterSkipsRejectedFramesOfSeekableSource() throws Exception {
+        FileChannel fileChannel = FileChannel.open(getTestFilePath("output_get_media.mkv"), StandardOpenOption.READ);
+        List<Frame> frameHeaders = new ArrayList<>();
+        StreamingMkvReader streamReader = StreamingMkvReader.create(
+                new MappedFileParserByteSource(fileChannel, 10000),
+                StreamingMkvReader.Configuration.builder()
+                        .frameHeaderFilter(frameHeader -> frameHeaders.add(frameHeader) && frameHeader.isKeyFrame())
+                        .build());
+
+        CountVisitor visitor = readAllReturnedElements(streamReader);
+
+        Assert.assertEquals(300, frameHeaders.size());
+        long keyFrames = frameHeaders.stream().filter(Frame::isKeyFrame).count();
+        Assert.assertTrue(keyFrames > 0);
+        assertCountsOfTypes(visitor, 5, 5, (int) keyFrames, 5);
+    }
+
+    @Test
+    public void testNextBatchReturnsTheSameElementsAsNextIfAvailable() throws IOException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        List<String> expectedElements = new ArrayList<>();
+        StreamingMkvReader reader =
+                StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data)));
+        while (reader.mightHaveNext()) {
+            reader.nextIfAvailable().ifPresent(e -> expectedElements.add(describe(e)));
+        }
+
+        Assert.assertEquals(expectedElements, readInBatches(
+                StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data))), 1));
+
+        MkvBufferPool bufferPool = new MkvBufferPool();
+        StreamingMkvReader pooledReader =
+                StreamingMkvReader.create(new ByteBufferParserByteSource(ByteBuffer.wrap(data)),
+                        StreamingMkvReader.Configuration.builder().bufferPool(bufferPool).build());
+        Assert.assertEquals(expectedElements, readInBatches(pooledReader, 2));
+        Assert.assertEquals(0, bufferPool.getBuffersInUse());
+    }
+
+    private static List<String> readInBatches(StreamingMkvReader reader, int minDataElementsInLargestBatch) {
+        List<String> elements = new ArrayList<>();
+        List<MkvElement> batch = new ArrayList<>();
+        int maxDataElementsInBatch = 0;
+        while (reader.mightHaveNext()) {
+            batch.clear();
+            int numElements = reader.nextBatch(batch, 16);
+            Assert.assertEquals(batch.size(), numElements);
+            Assert.assertTrue(numElements <= 16);
+            batch.forEach(e -> elements.add(describe(e)));
+            maxDataElementsInBatch = Math.max(maxDataElementsInBatch,
+                    (int) batch.stream().filter(e -> e instanceof MkvDataElement).count());
+        }
+        Assert.assertTrue(maxDataElementsInBatch >= minDataElementsInLargestBatch);
+        return elements;
+    }
+
+    private static String describe(MkvElement element) {
+        String description = element.getClass().getSimpleName() + " " + element.getElementMetaData().getTypeInfo();
+        if (element instanceof MkvDataElement) {
+            description += " " + ((MkvDataElement) element).getDataBuffer().hashCode();
+        }
+        return description;
+    }
+
+    @Test
+    public void testResumeFromSerializedCheckpoint() throws Exception {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        List<String> expectedElements = new ArrayList<>();
+        List<String> elementsBeforeCheckpoint = new ArrayList<>();
+        StreamingMkvReader reader =
+                StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data)));
+        EBMLParserCheckpoint checkpoint = null;
+        while (reader.mightHaveNext()) {
+            Optional<MkvElement> element = reader.nextIfAvailable();
+            if (element.isPresent()) {
+                expectedElements.add(describeWithPosition(element.get()));
+                if (checkpoint == null && expectedElements.size() == 500) {
+                    elementsBeforeCheckpoint.addAll(expectedElements);
+                    checkpoint = reader.checkpoint().get();
+                }
+            }
+        }
+        Assert.assertNotNull(checkpoint);
+        Assert.assertTrue(checkpoint.getOffset() > 0 && checkpoint.getOffset() < data.length);
+
+        ByteArrayOutputStream serializedCheckpoint = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(serializedCheckpoint)) {
+            objectOutputStream.writeObject(checkpoint);
+        }
+        EBMLParserCheckpoint restoredCheckpoint;
+        try (ObjectInputStream objectInputStream =
+                new ObjectInputStream(new ByteArrayInputStream(serializedCheckpoint.toByteArray()))) {
+            restoredCheckpoint = (EBMLParserCheckpoint) objectInputStream.readObject();
+        }
+
+        ByteBuffer remainingData = ByteBuffer.wrap(data, (int) restoredCheckpoint.getOffset(),
+                data.length - (int) restoredCheckpoint.getOffset()).slice();
+        StreamingMkvReader resumedReader =
+                StreamingMkvReader.createDefault(new ByteBufferParserByteSource(remainingData))
+                        .resumeFrom(restoredCheckpoint);
+        List<String> resumedElements = new ArrayList<>(elementsBeforeCheckpoint);
+        while (resumedReader.mightHaveNext()) {
+            resumedReader.nextIfAvailable().ifPresent(e -> resumedElements.add(describeWithPosition(e)));
+        }
+
+        Assert.assertEquals(expectedElements, resumedElements);
+    }
+
+    private static String describeWithPosition(MkvElement element) {
+        return describe(element) + " " + element.getElementMetaData().getElementNumber() + " "
+                + element.getElementPath();
+    }
+
+    @Test
+    public void testGetDataOutputMkvAllElementsWithFeed() throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        StreamingMkvReader streamReader = StreamingMkvReader.createForFeeding();
+        CountVisitor countVisitor = createCountVisitor();
+        CompositeMkvElementVisitor compositeTestVisitor =
+                new CompositeMkvElementVisitor(countVisitor, new TestDataElementVisitor());
+
+        int chunkSize = 1234;
+        for (int count = 0; count < data.length; count += chunkSize) {
+            ByteBuffer chunk = ByteBuffer.wrap(data, count, Math.min(chunkSize, data.length - count));
+            streamReader.feed(chunk, compositeTestVisitor);
+            Assert.assertFalse(chunk.hasRemaining());
+        }
+        streamReader.endOfInput(compositeTestVisitor);
+
+        assertCountsOfTypes(countVisitor, 5, 5, 300, 5);
+        Assert.assertTrue(countVisitor.doEndAndStartMasterElementsMatch());
+    }
+
+    @Test
+    public void testFeedStopsOnceVisitorIsDone() throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        StreamingMkvReader streamReader = StreamingMkvReader.createForFeeding();
+        List<MkvDataElement> visitedFrames = new ArrayList<>();
+        MkvElementVisitor doneAfterTenFrames = new MkvElementVisitor() {
+            @Override
+            public void visit(MkvStartMasterElement startMasterElement) {
+            }
+
+            @Override
+            public void visit(MkvEndMasterElement endMasterElement) {
+            }
+
+            @Override
+            public void visit(MkvDataElement dataElement) {
+                if (dataElement.getElementMetaData().getTypeInfo().equals(MkvTypeInfos.SIMPLEBLOCK)) {
+                    visitedFrames.add(dataElement);
+                }
+            }
+
+            @Override
+            public boolean isDone() {
+                return visitedFrames.size() >= 10;
+            }
+        };
+
+        ByteBuffer chunk = ByteBuffer.wrap(data);
+        streamReader.feed(chunk, doneAfterTenFrames);
+        Assert.assertEquals(10, visitedFrames.size());
+        Assert.assertTrue(chunk.hasRemaining());
+
+        streamReader.feed(chunk, doneAfterTenFrames);
+        streamReader.endOfInput(doneAfterTenFrames);
+        Assert.assertEquals(10, visitedFrames.size());
+    }
+
     private void assertCountsOfTypes(CountVisitor visitor,
             int numSegments,
             int numClusters,
@@ -191,6 +746,20 @@ public class StreamingMkvReaderTest {
 
     private CountVisitor readAllReturnedElements(StreamingMkvReader streamReader)
             throws MkvElementVisitException {
+        CountVisitor countVisitor = createCountVisitor();
+        CompositeMkvElementVisitor compositeTestVisitor =
+                new CompositeMkvElementVisitor(countVisitor, new TestDataElementVisitor());
+
+        while(streamReader.mightHaveNext()) {
+            Optional<MkvElement> mkvElement = streamReader.nextIfAvailable();
+            if(mkvElement.isPresent()) {
+                mkvElement.get().accept(compositeTestVisitor);
+            }
+        }
+        return countVisitor;
+    }
+
+    private CountVisitor createCountVisitor() {
         List<EBMLTypeInfo> typeInfosToRead = new ArrayList<>();
         typeInfosToRead.add(MkvTypeInfos.EBML);
         typeInfosToRead.add(MkvTypeInfos.SEGMENT);
@@ -203,17 +772,7 @@ public class StreamingMkvReaderTest {
         typeInfosToRead.add(MkvTypeInfos.TRACKS);
         typeInfosToRead.add(MkvTypeInfos.TRACKNUMBER);
 
-        CountVisitor countVisitor = new CountVisitor(typeInfosToRead);
-        CompositeMkvElementVisitor compositeTestVisitor =
-                new CompositeMkvElementVisitor(countVisitor, new TestDataElementVisitor());
-
-        while(streamReader.mightHaveNext()) {
-            Optional<MkvElement> mkvElement = streamReader.nextIfAvailable();
-            if(mkvElement.isPresent()) {
-                mkvElement.get().accept(compositeTestVisitor);
-            }
-        }
-        return countVisitor;
+        return new CountVisitor(typeInfosToRead);
     }
 
     private static class TestDataElementVisitor extends MkvElementVisitor {
@@ -248,6 +807,10 @@ public class StreamingMkvReaderTest {
 
     }
 
+    private Path getTestFilePath(String fileName) throws URISyntaxException {
+        return Paths.get(ClassLoader.getSystemResource(fileName).toURI());
+    }
+
     private InputStreamParserByteSource getClustersByteSource() throws IOException {
         final String fileName = "clusters.mkv";
         return getInputStreamParserByteSource(fileName);
@@ -0,0 +1,180 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.mkv.visitors;
+
+import com.amazonaws.kinesisvideo.parser.TestResourceUtil;
+import com.amazonaws.kinesisvideo.parser.ebml.ByteBufferParserByteSource;
+import com.amazonaws.kinesisvideo.parser.ebml.EBMLTypeInfo;
+import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvDataElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitor;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvEndMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.MkvStartMasterElement;
+import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Tests for {@link CompositeMkvElementVisitor}.
+ */
+public class CompositeMkvElementVisitorTest {
+
+    @Test
+    public void testChildVisitorsOnlyVisitDeclaredTypesInOrder() throws IOException, MkvElementVisitException {
+        List<String> visits = new ArrayList<>();
+        RecordingVisitor clusterVisitor = new RecordingVisitor("cluster", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.CLUSTER, MkvTypeInfos.TIMECODE)));
+        RecordingVisitor allVisitor = new RecordingVisitor("all", visits, Optional.empty());
+        RecordingVisitor blockVisitor = new RecordingVisitor("block", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.SIMPLEBLOCK, MkvTypeInfos.TIMECODE)));
+        CompositeMkvElementVisitor compositeVisitor =
+                new CompositeMkvElementVisitor(clusterVisitor, allVisitor, blockVisitor);
+        Assert.assertFalse(compositeVisitor.getElementTypesToVisit().isPresent());
+
+        readAll(compositeVisitor);
+
+        Assert.assertEquals(15, clusterVisitor.visited.size());
+        Assert.assertTrue(clusterVisitor.visited.stream()
+                .allMatch(e -> e.isType(MkvTypeInfos.CLUSTER) || e.isType(MkvTypeInfos.TIMECODE)));
+        Assert.assertEquals(305, blockVisitor.visited.size());
+        Assert.assertTrue(allVisitor.visited.size() > clusterVisitor.visited.size() + blockVisitor.visited.size());
+
+        //Children are called in the order in which they were added.
+        int timecodeVisit = visits.indexOf("cluster:" + MkvTypeInfos.TIMECODE.getName());
+        Assert.assertEquals("all:" + MkvTypeInfos.TIMECODE.getName(), visits.get(timecodeVisit + 1));
+        Assert.assertEquals("block:" + MkvTypeInfos.TIMECODE.getName(), visits.get(timecodeVisit + 2));
+    }
+
+    @Test
+    public void testCompositeDeclaresTypesOfItsChildren() throws IOException, MkvElementVisitException {
+        List<String> visits = new ArrayList<>();
+        RecordingVisitor blockVisitor = new RecordingVisitor("block", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.SIMPLEBLOCK)));
+        CountVisitor countVisitor = CountVisitor.create(MkvTypeInfos.CLUSTER);
+        CompositeMkvElementVisitor innerVisitor = new CompositeMkvElementVisitor(blockVisitor, countVisitor);
+        Assert.assertEquals(2, innerVisitor.getElementTypesToVisit().get().size());
+
+        readAll(new CompositeMkvElementVisitor(innerVisitor));
+
+        Assert.assertEquals(300, blockVisitor.visited.size());
+        Assert.assertEquals(5, countVisitor.getCount(MkvTypeInfos.CLUSTER));
+    }
+
+    @Test
+    public void testDoneIsUpdatedAfterVisits() throws IOException, MkvElementVisitException {
+        List<String> visits = new ArrayList<>();
+        RecordingVisitor blockVisitor = new RecordingVisitor("block", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.SIMPLEBLOCK)));
+        blockVisitor.doneAfter = 10;
+        CompositeMkvElementVisitor compositeVisitor = new CompositeMkvElementVisitor(blockVisitor);
+        Assert.assertFalse(compositeVisitor.isDone());
+
+        readAll(compositeVisitor);
+
+        Assert.assertTrue(compositeVisitor.isDone());
+        Assert.assertEquals(10, blockVisitor.visited.size());
+    }
+
+    @Test
+    public void testDoneSeesExternalStateWithoutVisits() throws IOException, MkvElementVisitException {
+        List<String> visits = new ArrayList<>();
+        RecordingVisitor blockVisitor = new RecordingVisitor("block", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.SIMPLEBLOCK)));
+        CompositeMkvElementVisitor compositeVisitor = new CompositeMkvElementVisitor(blockVisitor);
+        Assert.assertFalse(compositeVisitor.isDone());
+
+        blockVisitor.stopped = true;
+        Assert.assertTrue(compositeVisitor.isDone());
+        readAll(compositeVisitor);
+        Assert.assertEquals(0, blockVisitor.visited.size());
+    }
+
+    @Test
+    public void testReplacedChildVisitorIsCalled() throws IOException, MkvElementVisitException {
+        List<String> visits = new ArrayList<>();
+        RecordingVisitor firstVisitor = new RecordingVisitor("first", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.SIMPLEBLOCK)));
+        RecordingVisitor secondVisitor = new RecordingVisitor("second", visits, Optional.of(
+                ImmutableList.of(MkvTypeInfos.SIMPLEBLOCK)));
+        CompositeMkvElementVisitor compositeVisitor = new CompositeMkvElementVisitor(firstVisitor);
+        readAll(compositeVisitor);
+
+        Assert.assertTrue(compositeVisitor.removeChildVisitor(firstVisitor));
+        compositeVisitor.addChildVisitor(secondVisitor);
+        readAll(compositeVisitor);
+
+        Assert.assertEquals(300, firstVisitor.visited.size());
+        Assert.assertEquals(300, secondVisitor.visited.size());
+    }
+
+    private static void readAll(MkvElementVisitor visitor) throws IOException, MkvElementVisitException {
+        byte [] data = TestResourceUtil.getTestInputByteArray("output_get_media.mkv");
+        StreamingMkvReader.createDefault(new ByteBufferParserByteSource(ByteBuffer.wrap(data))).apply(visitor);
+    }
+
+    private static class RecordingVisitor extends MkvElementVisitor {
+        private final String name;
+        private final List<String> visits;
+        private final Optional<Collection<EBMLTypeInfo>> typesToVisit;
+        private final List<MkvElement> visited = new ArrayList<>();
+        private int doneAfter = Integer.MAX_VALUE;
+        private boolean stopped;
+
+        RecordingVisitor(String name, List<String> visits, Optional<Collection<EBMLTypeInfo>> typesToVisit) {
+            this.name = name;
+            this.visits = visits;
+            this.typesToVisit = typesToVisit;
+        }
+
+        @Override
+        public void visit(MkvStartMasterElement startMasterElement) {
+            record(startMasterElement);
+        }
+
+        @Override
+        public void visit(MkvEndMasterElement endMasterElement) {
+            record(endMasterElement);
+        }
+
+        @Override
+        public void visit(MkvDataElement dataElement) {
+            record(dataElement);
+        }
+
+        @Override
+        public boolean isDone() {
+            return stopped || visited.size() >= doneAfter;
+        }
+
+        @Override
+        public Optional<Collection<EBMLTypeInfo>> getElementTypesToVisit() {
+            return typesToVisit;
+        }
+
+        private void record(MkvElement element) {
+            visited.add(element);
+            visits.add(name + ":" + element.getElementMetaData().getTypeInfo().getName());
+        }
+    }
+}
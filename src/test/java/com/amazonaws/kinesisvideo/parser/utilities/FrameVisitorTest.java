@@ -26,6 +26,8 @@ import org.junit.Test;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public class FrameVisitorTest {
@@ -93,6 +95,88 @@ public class FrameVisitorTest {
         Assert.assertEquals(LAST_FRAGMENT_TIMECODE, frameProcessor.getFragmentTimecode());
     }
 
+    @Test
+    public void testFrameHeaderFilterSkipsRejectedFrames() throws Exception {
+        final KeyFrameProcessor allFramesProcessor = new KeyFrameProcessor(false);
+        StreamingMkvReader.createDefault(getClustersByteSource("vogels_480.mkv"))
+                .apply(FrameVisitor.create(allFramesProcessor, Optional.empty(), Optional.of(1L)));
+
+        final KeyFrameProcessor keyFramesProcessor = new KeyFrameProcessor(true);
+        frameVisitor = FrameVisitor.create(keyFramesProcessor, Optional.empty(), Optional.of(1L));
+        streamingMkvReader = StreamingMkvReader.create(getClustersByteSource("vogels_480.mkv"),
+                StreamingMkvReader.Configuration.builder()
+                        .frameHeaderFilter(frameVisitor.getFrameHeaderFilter())
+                        .build());
+        streamingMkvReader.apply(frameVisitor);
+
+        Assert.assertEquals(VIDEO_FRAMES_COUNT, allFramesProcessor.getFramesCount());
+        Assert.assertTrue(allFramesProcessor.getKeyFramesCount() > 0);
+        Assert.assertEquals(allFramesProcessor.getKeyFramesCount(), keyFramesProcessor.getKeyFramesCount());
+        Assert.assertEquals(keyFramesProcessor.getKeyFramesCount(), keyFramesProcessor.getFramesCount());
+    }
+
+    @Test
+    public void testZeroCopyFramesMatchCopiedFrames() throws Exception {
+        final List<Frame> copiedFrames = new ArrayList<>();
+        StreamingMkvReader.createDefault(getClustersByteSource("vogels_480.mkv"))
+                .apply(FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                            final Optional<FragmentMetadata> fragmentMetadata) {
+                        Assert.assertSame(frame, frame.retain());
+                        copiedFrames.add(frame);
+                    }
+                }, Optional.empty(), Optional.of(1L)));
+
+        final List<Frame> retainedFrames = new ArrayList<>();
+        StreamingMkvReader.createDefault(getClustersByteSource("vogels_480.mkv"))
+                .apply(FrameVisitor.createZeroCopy(new FrameVisitor.FrameProcessor() {
+                    @Override
+                    public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                            final Optional<FragmentMetadata> fragmentMetadata) {
+                        Assert.assertTrue(frame.getFrameData().isReadOnly());
+                        retainedFrames.add(frame.retain());
+                    }
+                }, Optional.empty(), Optional.of(1L)));
+
+        Assert.assertEquals(VIDEO_FRAMES_COUNT, copiedFrames.size());
+        Assert.assertEquals(copiedFrames.size(), retainedFrames.size());
+        for (int i = 0; i < copiedFrames.size(); i++) {
+            Assert.assertEquals(copiedFrames.get(i).getTimeCode(), retainedFrames.get(i).getTimeCode());
+            Assert.assertEquals(copiedFrames.get(i).isKeyFrame(), retainedFrames.get(i).isKeyFrame());
+            Assert.assertEquals(copiedFrames.get(i).getFrameData(), retainedFrames.get(i).getFrameData());
+            Assert.assertFalse(retainedFrames.get(i).getFrameData().isReadOnly());
+        }
+    }
+
+    @Getter
+    private static final class KeyFrameProcessor implements FrameVisitor.FrameProcessor {
+        private final boolean onlyKeyFrames;
+        private long framesCount = 0L;
+        private long keyFramesCount = 0L;
+
+        KeyFrameProcessor(final boolean onlyKeyFrames) {
+            this.onlyKeyFrames = onlyKeyFrames;
+        }
+
+        @Override
+        public boolean shouldProcess(final Frame frameHeader) {
+            Assert.assertNull(frameHeader.getFrameData());
+            Assert.assertEquals(1L, frameHeader.getTrackNumber());
+            return !onlyKeyFrames || frameHeader.isKeyFrame();
+        }
+
+        @Override
+        public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                final Optional<FragmentMetadata> fragmentMetadata) {
+            Assert.assertTrue(frame.getFrameData().remaining() > 0);
+            framesCount++;
+            if (frame.isKeyFrame()) {
+                keyFramesCount++;
+            }
+        }
+    }
+
     private InputStreamParserByteSource getClustersByteSource(final String name) throws IOException {
         return getInputStreamParserByteSource(name);
     }
@@ -14,19 +14,29 @@ See the License for the specific language governing permissions and limitations
 package com.amazonaws.kinesisvideo.parser.utilities;
 
 import com.amazonaws.kinesisvideo.parser.TestResourceUtil;
+import com.amazonaws.kinesisvideo.parser.ebml.ByteBufferParserByteSource;
 import com.amazonaws.kinesisvideo.parser.ebml.InputStreamParserByteSource;
 import com.amazonaws.kinesisvideo.parser.ebml.MkvTypeInfos;
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
 import com.amazonaws.kinesisvideo.parser.mkv.MkvElementVisitException;
 import com.amazonaws.kinesisvideo.parser.mkv.StreamingMkvReader;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CompositeMkvElementVisitor;
 import com.amazonaws.kinesisvideo.parser.mkv.visitors.CountVisitor;
+import org.jcodec.scale.Yuv420jToRgb;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 public class H264FrameDecoderTest {
 
@@ -79,4 +89,162 @@ public class H264FrameDecoderTest {
         Assert.assertEquals(909, frameDecoder.getFrameCount()); // Video frames
         Assert.assertEquals(1425, frameProcessor.getFramesCount()); // Audio frames
     }
+
+    @Test
+    public void frameDecodeReusesOutputBuffersWhenConfigured() throws Exception {
+        final List<BufferedImage> newImages = decodeImages(new H264FrameDecoder());
+        Assert.assertEquals(444, newImages.size());
+        Assert.assertEquals(444, distinctImages(newImages));
+
+        final List<BufferedImage> singleBuffered = decodeImages(new H264FrameDecoder(
+                H264FrameDecoder.Configuration.builder().reuseOutputBuffers(true).build()));
+        Assert.assertEquals(444, singleBuffered.size());
+        Assert.assertEquals(1, distinctImages(singleBuffered));
+
+        final List<BufferedImage> doubleBuffered = decodeImages(new H264FrameDecoder(
+                H264FrameDecoder.Configuration.builder().reuseOutputBuffers(true).doubleBuffered(true).build()));
+        Assert.assertEquals(444, doubleBuffered.size());
+        Assert.assertEquals(2, distinctImages(doubleBuffered));
+        for (int i = 1; i < doubleBuffered.size(); i++) {
+            Assert.assertNotSame(doubleBuffered.get(i - 1), doubleBuffered.get(i));
+        }
+    }
+
+    @Test
+    public void frameDecodeToYuv() throws Exception {
+        final H264FrameDecoder yuvDecoder = new H264FrameDecoder();
+        final H264FrameDecoder lumaDecoder = new H264FrameDecoder();
+        final Yuv420Image yuvImage = Yuv420Image.create();
+        final Yuv420Image lumaImage = Yuv420Image.createLumaOnly();
+        final InputStream in = TestResourceUtil.getTestInputStream("kinesis_video_renderer_example_output.mkv");
+        final StreamingMkvReader mkvStreamReader =
+                StreamingMkvReader.createDefault(new InputStreamParserByteSource(in));
+        mkvStreamReader.apply(FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata) {
+                // JCodec modifies the frame data while decoding, so each decoder gets its own copy.
+                final ByteBuffer frameDataCopy = ByteBuffer.allocate(frame.getFrameData().remaining());
+                frameDataCopy.put(frame.getFrameData().duplicate());
+                frameDataCopy.flip();
+                Assert.assertTrue(yuvDecoder.decodeH264FrameToYuv(frame, trackMetadata, yuvImage));
+                Assert.assertTrue(lumaDecoder.decodeH264FrameToYuv(frame.toBuilder().frameData(frameDataCopy).build(),
+                        trackMetadata, lumaImage));
+                Assert.assertArrayEquals(yuvImage.getYPlane(), lumaImage.getYPlane());
+            }
+        }));
+
+        Assert.assertEquals(444, yuvDecoder.getFrameCount());
+        Assert.assertEquals(640, yuvImage.getWidth());
+        Assert.assertEquals(480, yuvImage.getHeight());
+
+        final BufferedImage rgbImage = yuvImage.toBufferedImage(null);
+        final byte[] expectedRgb = new byte[3];
+        for (int y = 0; y < yuvImage.getHeight(); y += 7) {
+            for (int x = 0; x < yuvImage.getWidth(); x += 5) {
+                final int chroma = (y / 2) * yuvImage.getChromaWidth() + x / 2;
+                Yuv420jToRgb.YUVJtoRGB((byte) (yuvImage.getYPlane()[y * yuvImage.getWidth() + x] - 128),
+                        (byte) (yuvImage.getUPlane()[chroma] - 128), (byte) (yuvImage.getVPlane()[chroma] - 128),
+                        expectedRgb, 0);
+                final int rgb = rgbImage.getRGB(x, y);
+                Assert.assertEquals(expectedRgb[0] + 128, (rgb >> 16) & 0xFF);
+                Assert.assertEquals(expectedRgb[1] + 128, (rgb >> 8) & 0xFF);
+                Assert.assertEquals(expectedRgb[2] + 128, rgb & 0xFF);
+            }
+        }
+
+        final BufferedImage grayImage = lumaImage.toBufferedImage(null);
+        Assert.assertEquals(BufferedImage.TYPE_BYTE_GRAY, grayImage.getType());
+        Assert.assertEquals(lumaImage.getYPlane()[640 * 240 + 320] & 0xFF,
+                grayImage.getRaster().getSample(320, 240, 0));
+    }
+
+    @Test
+    public void frameDecodeWithTargetSize() throws Exception {
+        final H264FrameDecoder scalingDecoder = new H264FrameDecoder(H264FrameDecoder.Configuration.builder()
+                .targetWidth(320)
+                .scaling(Yuv420Image.Scaling.BILINEAR)
+                .build());
+        final H264FrameDecoder yuvDecoder = new H264FrameDecoder();
+        final Yuv420Image yuvImage = Yuv420Image.create();
+        final Yuv420Image scaledYuvImage = Yuv420Image.create();
+        final BufferedImage expectedImage = new BufferedImage(320, 240, BufferedImage.TYPE_3BYTE_BGR);
+        final InputStream in = TestResourceUtil.getTestInputStream("kinesis_video_renderer_example_output.mkv");
+        final StreamingMkvReader mkvStreamReader =
+                StreamingMkvReader.createDefault(new InputStreamParserByteSource(in));
+        mkvStreamReader.apply(FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata) {
+                final ByteBuffer frameDataCopy = ByteBuffer.allocate(frame.getFrameData().remaining());
+                frameDataCopy.put(frame.getFrameData().duplicate());
+                frameDataCopy.flip();
+                final BufferedImage image = scalingDecoder.decodeH264Frame(frame, trackMetadata);
+                Assert.assertTrue(yuvDecoder.decodeH264FrameToYuv(frame.toBuilder().frameData(frameDataCopy).build(),
+                        trackMetadata, yuvImage));
+
+                yuvImage.scaleTo(scaledYuvImage, 320, 240, Yuv420Image.Scaling.BILINEAR);
+                scaledYuvImage.toBufferedImage(expectedImage);
+                Assert.assertEquals(320, image.getWidth());
+                Assert.assertEquals(240, image.getHeight());
+                Assert.assertArrayEquals(((DataBufferByte) expectedImage.getRaster().getDataBuffer()).getData(),
+                        ((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+            }
+        }));
+
+        Assert.assertEquals(444, scalingDecoder.getFrameCount());
+        Assert.assertEquals(320, scalingDecoder.getOutputWidth());
+        Assert.assertEquals(240, scalingDecoder.getOutputHeight());
+    }
+
+    @Test
+    public void frameDecodeOfZeroCopyFrames() throws Exception {
+        final H264FrameDecoder frameDecoder = new H264FrameDecoder();
+        final H264FrameDecoder zeroCopyFrameDecoder = new H264FrameDecoder();
+        final byte[] data = TestResourceUtil.getTestInputByteArray("kinesis_video_renderer_example_output.mkv");
+        final StreamingMkvReader mkvStreamReader = StreamingMkvReader.create(
+                new ByteBufferParserByteSource(ByteBuffer.wrap(data)),
+                StreamingMkvReader.Configuration.builder().zeroCopy(true).build());
+        mkvStreamReader.apply(FrameVisitor.createZeroCopy(new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata) {
+                Assert.assertTrue(frame.getFrameData().isReadOnly());
+                final ByteBuffer frameDataCopy = ByteBuffer.allocate(frame.getFrameData().remaining());
+                frameDataCopy.put(frame.getFrameData().duplicate());
+                frameDataCopy.flip();
+                final BufferedImage zeroCopyImage = zeroCopyFrameDecoder.decodeH264Frame(frame, trackMetadata);
+                // The read only frame data is left as it was.
+                Assert.assertEquals(frameDataCopy, frame.getFrameData());
+                final BufferedImage image = frameDecoder.decodeH264Frame(
+                        frame.toBuilder().frameData(frameDataCopy).build(), trackMetadata);
+                Assert.assertArrayEquals(((DataBufferByte) image.getRaster().getDataBuffer()).getData(),
+                        ((DataBufferByte) zeroCopyImage.getRaster().getDataBuffer()).getData());
+            }
+        }, Optional.empty(), Optional.empty()));
+
+        Assert.assertEquals(444, zeroCopyFrameDecoder.getFrameCount());
+        Assert.assertEquals(444, frameDecoder.getFrameCount());
+    }
+
+    private static List<BufferedImage> decodeImages(final H264FrameDecoder frameDecoder) throws Exception {
+        final InputStream in = TestResourceUtil.getTestInputStream("kinesis_video_renderer_example_output.mkv");
+        final StreamingMkvReader mkvStreamReader =
+                StreamingMkvReader.createDefault(new InputStreamParserByteSource(in));
+        final List<BufferedImage> images = new ArrayList<>();
+        mkvStreamReader.apply(FrameVisitor.create(new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata) {
+                images.add(frameDecoder.decodeH264Frame(frame, trackMetadata));
+            }
+        }));
+        return images;
+    }
+
+    private static long distinctImages(final List<BufferedImage> images) {
+        final Set<BufferedImage> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(images);
+        return distinct.size();
+    }
 }
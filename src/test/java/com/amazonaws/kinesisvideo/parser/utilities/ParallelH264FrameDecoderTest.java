@@ -0,0 +1,190 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.amazonaws.kinesisvideo.parser.mkv.FrameProcessException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.amazonaws.kinesisvideo.parser.TestFrameDecodingUtil.decode;
+import static com.amazonaws.kinesisvideo.parser.TestFrameDecodingUtil.hash;
+
+public class ParallelH264FrameDecoderTest {
+    private static final String TEST_FILE = "kinesis_video_renderer_example_output.mkv";
+
+    @Test
+    public void parallelDecodeMatchesSequentialDecode() throws Exception {
+        final List<String> sequentialTimecodes = new ArrayList<>();
+        final List<Integer> sequentialHashes = new ArrayList<>();
+        final H264FrameDecoder sequentialDecoder = new H264FrameDecoder();
+        decode(TEST_FILE, new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata) {
+                sequentialHashes.add(hash(sequentialDecoder.decodeH264Frame(frame, trackMetadata)));
+                sequentialTimecodes.add(describe(frame, fragmentMetadata));
+            }
+        });
+
+        final List<String> parallelTimecodes = new ArrayList<>();
+        final List<Integer> parallelHashes = new ArrayList<>();
+        final List<Thread> processingThreads = new ArrayList<>();
+        final ParallelH264FrameDecoder parallelDecoder =
+                ParallelH264FrameDecoder.create((frame, trackMetadata, fragmentMetadata, image) -> {
+                    parallelHashes.add(hash(image));
+                    parallelTimecodes.add(describe(frame, fragmentMetadata));
+                    processingThreads.add(Thread.currentThread());
+                }, 3, 4);
+        decode(TEST_FILE, parallelDecoder);
+        parallelDecoder.flush();
+        parallelDecoder.close();
+
+        Assert.assertEquals(444, sequentialHashes.size());
+        Assert.assertEquals(sequentialTimecodes, parallelTimecodes);
+        Assert.assertEquals(sequentialHashes, parallelHashes);
+        processingThreads.forEach(thread -> Assert.assertSame(Thread.currentThread(), thread));
+    }
+
+    @Test
+    public void parallelDecodeDeliversFramesInPresentationOrder() throws Exception {
+        final Map<String, Integer> sequentialHashes = new HashMap<>();
+        final H264FrameDecoder sequentialDecoder = new H264FrameDecoder();
+        final SwappingTimecodes sequentialFrames = new SwappingTimecodes(new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata) {
+                sequentialHashes.put(describe(frame, fragmentMetadata),
+                        hash(sequentialDecoder.decodeH264Frame(frame, trackMetadata)));
+            }
+        });
+        decode(TEST_FILE, sequentialFrames);
+        sequentialFrames.finish();
+
+        final List<Frame> parallelFrames = new ArrayList<>();
+        final ParallelH264FrameDecoder parallelDecoder =
+                ParallelH264FrameDecoder.create((frame, trackMetadata, fragmentMetadata, image) -> {
+                    parallelFrames.add(frame);
+                    Assert.assertEquals(sequentialHashes.get(describe(frame, fragmentMetadata)),
+                            Integer.valueOf(hash(image)));
+                }, 2, 2);
+        final SwappingTimecodes swappingFrames = new SwappingTimecodes(parallelDecoder);
+        decode(TEST_FILE, swappingFrames);
+        swappingFrames.finish();
+        parallelDecoder.flush();
+        parallelDecoder.close();
+
+        Assert.assertEquals(444, parallelFrames.size());
+        Assert.assertTrue(swappingFrames.numSwaps > 0);
+        for (int i = 1; i < parallelFrames.size(); i++) {
+            if (!parallelFrames.get(i).isKeyFrame()) {
+                Assert.assertTrue(parallelFrames.get(i - 1).getTimeCode() < parallelFrames.get(i).getTimeCode());
+            }
+        }
+    }
+
+    @Test
+    public void flushReportsFailuresAndCloseOnlyShutsDown() throws Exception {
+        final AtomicBoolean failing = new AtomicBoolean();
+        final ParallelH264FrameDecoder parallelDecoder =
+                ParallelH264FrameDecoder.create((frame, trackMetadata, fragmentMetadata, image) -> {
+                    if (failing.get()) {
+                        throw new FrameProcessException("Failed to process a decoded frame", null);
+                    }
+                }, 2, 2);
+        decode(TEST_FILE, parallelDecoder);
+        failing.set(true);
+        try {
+            parallelDecoder.flush();
+            Assert.fail("flush should report the failure of the decoded frame processor");
+        } catch (final FrameProcessException e) {
+            Assert.assertEquals("Failed to process a decoded frame", e.getMessage());
+        }
+        parallelDecoder.close();
+    }
+
+    @Test
+    public void closeWithoutFlushDropsPendingFrames() throws Exception {
+        final List<Frame> processedFrames = new ArrayList<>();
+        final ParallelH264FrameDecoder parallelDecoder =
+                ParallelH264FrameDecoder.create((frame, trackMetadata, fragmentMetadata, image) ->
+                        processedFrames.add(frame), 2, 2);
+        decode(TEST_FILE, parallelDecoder);
+        final int numProcessedFrames = processedFrames.size();
+        parallelDecoder.close();
+
+        Assert.assertTrue(numProcessedFrames < 444);
+        Assert.assertEquals(numProcessedFrames, processedFrames.size());
+    }
+
+    private static String describe(final Frame frame, final Optional<FragmentMetadata> fragmentMetadata) {
+        return fragmentMetadata.get().getFragmentNumberString() + ":" + frame.getTimeCode();
+    }
+
+    /**
+     * Swaps the timecodes of consecutive pairs of non key frames, so that the frames are in decode order instead of
+     * presentation order as with B-frames.
+     */
+    private static class SwappingTimecodes implements FrameVisitor.FrameProcessor {
+        private final FrameVisitor.FrameProcessor frameProcessor;
+        private Object[] pendingFrame;
+        private int numSwaps;
+
+        SwappingTimecodes(final FrameVisitor.FrameProcessor frameProcessor) {
+            this.frameProcessor = frameProcessor;
+        }
+
+        @Override
+        public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                            final Optional<FragmentMetadata> fragmentMetadata,
+                            final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                            final Optional<BigInteger> timescale, final Optional<BigInteger> fragmentTimecode)
+                throws FrameProcessException {
+            final Object[] currentFrame = {frame.retain(), trackMetadata, fragmentMetadata, fragmentTimecode};
+            if (frame.isKeyFrame()) {
+                finish();
+                processFrame(currentFrame, frame.getTimeCode());
+            } else if (pendingFrame == null) {
+                pendingFrame = currentFrame;
+            } else {
+                processFrame(pendingFrame, frame.getTimeCode());
+                processFrame(currentFrame, ((Frame) pendingFrame[0]).getTimeCode());
+                pendingFrame = null;
+                numSwaps++;
+            }
+        }
+
+        void finish() throws FrameProcessException {
+            if (pendingFrame != null) {
+                processFrame(pendingFrame, ((Frame) pendingFrame[0]).getTimeCode());
+                pendingFrame = null;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void processFrame(final Object[] frame, final int timeCode) throws FrameProcessException {
+            frameProcessor.process(((Frame) frame[0]).toBuilder().timeCode(timeCode).build(),
+                    (MkvTrackMetadata) frame[1], (Optional<FragmentMetadata>) frame[2], Optional.empty(),
+                    Optional.empty(), (Optional<BigInteger>) frame[3]);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import com.amazonaws.kinesisvideo.parser.mkv.Frame;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static com.amazonaws.kinesisvideo.parser.TestFrameDecodingUtil.decode;
+import static com.amazonaws.kinesisvideo.parser.TestFrameDecodingUtil.hash;
+
+public class SampledH264FrameDecoderTest {
+    private static final String TEST_FILE = "kinesis_video_renderer_example_output.mkv";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long SAMPLE_PERIOD_NANOS = NANOS_PER_SECOND;
+
+    private static List<DecodedFrame> allFrames;
+
+    @BeforeClass
+    public static void decodeAllFrames() throws Exception {
+        final H264FrameDecoder decoder = new H264FrameDecoder();
+        final ImmutableList.Builder<DecodedFrame> frames = ImmutableList.builder();
+        decode(TEST_FILE, new FrameVisitor.FrameProcessor() {
+            @Override
+            public void process(final Frame frame, final MkvTrackMetadata trackMetadata,
+                                final Optional<FragmentMetadata> fragmentMetadata,
+                                final Optional<FragmentMetadataVisitor.MkvTagProcessor> tagProcessor,
+                                final Optional<BigInteger> timescale, final Optional<BigInteger> fragmentTimecode) {
+                final long frameNanos = (fragmentTimecode.get().longValue() + frame.getTimeCode())
+                        * timescale.get().longValue();
+                frames.add(new DecodedFrame(frameNanos, frame.isKeyFrame(),
+                        hash(decoder.decodeH264Frame(frame, trackMetadata))));
+            }
+        });
+        allFrames = frames.build();
+        Assert.assertEquals(444, allFrames.size());
+    }
+
+    @Test
+    public void keyFramesOnly() throws Exception {
+        final List<Integer> expected = new ArrayList<>();
+        allFrames.stream().filter(frame -> frame.keyFrame).forEach(frame -> expected.add(frame.hash));
+
+        final List<Integer> sampled = new ArrayList<>();
+        decode(TEST_FILE, SampledH264FrameDecoder.keyFrames((frame, trackMetadata, fragmentMetadata, image) -> {
+            Assert.assertTrue(frame.isKeyFrame());
+            sampled.add(hash(image));
+        }));
+        Assert.assertEquals(8, expected.size());
+        Assert.assertEquals(expected, sampled);
+    }
+
+    @Test
+    public void fixedRate() throws Exception {
+        final List<Integer> expected = new ArrayList<>();
+        long nextSampleNanos = allFrames.get(0).frameNanos;
+        for (final DecodedFrame frame : allFrames) {
+            if (frame.frameNanos >= nextSampleNanos) {
+                expected.add(frame.hash);
+                while (nextSampleNanos <= frame.frameNanos) {
+                    nextSampleNanos += SAMPLE_PERIOD_NANOS;
+                }
+            }
+        }
+        assertSampledImages(expected, SampledH264FrameDecoder.Mode.FIXED_RATE);
+    }
+
+    @Test
+    public void nearest() throws Exception {
+        final List<Integer> expected = new ArrayList<>();
+        final long lastFrameNanos = allFrames.get(allFrames.size() - 1).frameNanos;
+        for (long sampleNanos = allFrames.get(0).frameNanos; sampleNanos <= lastFrameNanos;
+             sampleNanos += SAMPLE_PERIOD_NANOS) {
+            DecodedFrame nearest = allFrames.get(0);
+            for (final DecodedFrame frame : allFrames) {
+                if (Math.abs(frame.frameNanos - sampleNanos) < Math.abs(nearest.frameNanos - sampleNanos)) {
+                    nearest = frame;
+                }
+            }
+            expected.add(nearest.hash);
+        }
+        assertSampledImages(expected, SampledH264FrameDecoder.Mode.NEAREST);
+    }
+
+    @Test
+    public void nearestPassesTheLastSampleAtTheEndOfTheStream() throws Exception {
+        final DecodedFrame firstFrame = allFrames.get(0);
+        final DecodedFrame lastFrame = allFrames.get(allFrames.size() - 1);
+        final long frameIntervalNanos = lastFrame.frameNanos - allFrames.get(allFrames.size() - 2).frameNanos;
+        // The second sample instant is just after the last frame, so only the end of the stream tells that the last
+        // frame is the nearest one.
+        final long samplePeriodNanos = lastFrame.frameNanos - firstFrame.frameNanos + frameIntervalNanos / 4;
+
+        final List<Integer> sampled = new ArrayList<>();
+        final SampledH264FrameDecoder sampledDecoder = SampledH264FrameDecoder.atRate(
+                (frame, trackMetadata, fragmentMetadata, image) -> sampled.add(hash(image)),
+                SampledH264FrameDecoder.Mode.NEAREST, (double) NANOS_PER_SECOND / samplePeriodNanos);
+        decode(TEST_FILE, sampledDecoder);
+        Assert.assertEquals(Arrays.asList(firstFrame.hash), sampled);
+
+        sampledDecoder.flush();
+        Assert.assertEquals(Arrays.asList(firstFrame.hash, lastFrame.hash), sampled);
+        sampledDecoder.flush();
+        sampledDecoder.close();
+        Assert.assertEquals(2, sampled.size());
+    }
+
+    @Test
+    public void closeDropsTheLastSampleThatWasNotFlushed() throws Exception {
+        final DecodedFrame firstFrame = allFrames.get(0);
+        final DecodedFrame lastFrame = allFrames.get(allFrames.size() - 1);
+        final long frameIntervalNanos = lastFrame.frameNanos - allFrames.get(allFrames.size() - 2).frameNanos;
+        final long samplePeriodNanos = lastFrame.frameNanos - firstFrame.frameNanos + frameIntervalNanos / 4;
+
+        final List<Integer> sampled = new ArrayList<>();
+        final SampledH264FrameDecoder sampledDecoder = SampledH264FrameDecoder.atRate(
+                (frame, trackMetadata, fragmentMetadata, image) -> sampled.add(hash(image)),
+                SampledH264FrameDecoder.Mode.NEAREST, (double) NANOS_PER_SECOND / samplePeriodNanos);
+        decode(TEST_FILE, sampledDecoder);
+        sampledDecoder.close();
+        sampledDecoder.flush();
+        Assert.assertEquals(Arrays.asList(firstFrame.hash), sampled);
+    }
+
+    private static void assertSampledImages(final List<Integer> expected, final SampledH264FrameDecoder.Mode mode)
+            throws Exception {
+        final List<Integer> sampled = new ArrayList<>();
+        decode(TEST_FILE, SampledH264FrameDecoder.atRate((frame, trackMetadata, fragmentMetadata, image) ->
+                sampled.add(hash(image)), mode, 1.0));
+        Assert.assertTrue(expected.size() > 1);
+        Assert.assertEquals(expected, sampled);
+    }
+
+    private static class DecodedFrame {
+        private final long frameNanos;
+        private final boolean keyFrame;
+        private final int hash;
+
+        DecodedFrame(final long frameNanos, final boolean keyFrame, final int hash) {
+            this.frameNanos = frameNanos;
+            this.keyFrame = keyFrame;
+            this.hash = hash;
+        }
+    }
+}
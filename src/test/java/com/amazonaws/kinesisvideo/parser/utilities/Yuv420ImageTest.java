@@ -0,0 +1,98 @@
+/*
+Copyright 2017-2017 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License"). 
+You may not use this file except in compliance with the License. 
+A copy of the License is located at
+
+   http://aws.amazon.com/apache2.0/
+
+or in the "license" file accompanying this file. 
+This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and limitations under the License.
+*/
+package com.amazonaws.kinesisvideo.parser.utilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+public class Yuv420ImageTest {
+    private static final byte[] LUMA_4X4 = new byte[] {
+            10, 20, 30, 40,
+            30, 40, 50, 60,
+            (byte) 200, (byte) 200, 0, 0,
+            (byte) 100, (byte) 100, 0, 100
+    };
+
+    @Test
+    public void halveWithBox() {
+        Assert.assertArrayEquals(new byte[] {25, 45, (byte) 150, 25}, halveLuma(Yuv420Image.Scaling.BOX));
+    }
+
+    @Test
+    public void halveWithBilinear() {
+        // The centers of the destination pixels are in between four source pixels, so both kernels average them.
+        Assert.assertArrayEquals(new byte[] {25, 45, (byte) 150, 25}, halveLuma(Yuv420Image.Scaling.BILINEAR));
+    }
+
+    @Test
+    public void scaleKeepsUniformColor() {
+        for (final Yuv420Image.Scaling scaling : Yuv420Image.Scaling.values()) {
+            final Yuv420Image source = Yuv420Image.create();
+            source.resize(33, 17);
+            fill(source.getYPlane(), (byte) 180);
+            fill(source.getUPlane(), (byte) 90);
+            fill(source.getVPlane(), (byte) 160);
+
+            final Yuv420Image destination = Yuv420Image.create();
+            source.scaleTo(destination, 10, 7, scaling);
+            Assert.assertEquals(10, destination.getWidth());
+            Assert.assertEquals(7, destination.getHeight());
+            for (int i = 0; i < 10 * 7; i++) {
+                Assert.assertEquals(180, destination.getYPlane()[i] & 0xFF);
+            }
+            for (int i = 0; i < 5 * 4; i++) {
+                Assert.assertEquals(90, destination.getUPlane()[i] & 0xFF);
+                Assert.assertEquals(160, destination.getVPlane()[i] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void grayToBufferedImage() {
+        final Yuv420Image image = Yuv420Image.create();
+        image.resize(3, 3);
+        fill(image.getYPlane(), (byte) 77);
+        fill(image.getUPlane(), (byte) 128);
+        fill(image.getVPlane(), (byte) 128);
+        final BufferedImage bufferedImage = image.toBufferedImage(null);
+        Assert.assertEquals(BufferedImage.TYPE_3BYTE_BGR, bufferedImage.getType());
+        Assert.assertEquals(0x4D4D4D, bufferedImage.getRGB(2, 2) & 0xFFFFFF);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lumaOnlyImageHasNoChroma() {
+        final Yuv420Image image = Yuv420Image.createLumaOnly();
+        image.resize(2, 2);
+        image.getUPlane();
+    }
+
+    private static byte[] halveLuma(final Yuv420Image.Scaling scaling) {
+        final Yuv420Image source = Yuv420Image.createLumaOnly();
+        source.resize(4, 4);
+        System.arraycopy(LUMA_4X4, 0, source.getYPlane(), 0, LUMA_4X4.length);
+        final Yuv420Image destination = Yuv420Image.createLumaOnly();
+        source.scaleTo(destination, 2, 2, scaling);
+        final byte[] luma = new byte[4];
+        System.arraycopy(destination.getYPlane(), 0, luma, 0, luma.length);
+        return luma;
+    }
+
+    private static void fill(final byte[] plane, final byte value) {
+        for (int i = 0; i < plane.length; i++) {
+            plane[i] = value;
+        }
+    }
+}